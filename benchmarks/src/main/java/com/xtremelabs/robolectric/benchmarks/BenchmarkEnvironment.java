@@ -0,0 +1,83 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import android.app.Application;
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.bytecode.RobolectricAgent;
+import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
+import com.xtremelabs.robolectric.res.ResourceLoader;
+import com.xtremelabs.robolectric.shadows.ShadowApplication;
+
+import java.io.File;
+
+/**
+ * Sets up Robolectric in a benchmark's JVM the way {@link com.xtremelabs.robolectric.RobolectricTestRunner} sets it
+ * up before each test, using the fixture resources in {@code src/main/fixtures/res} and their {@link R} class.
+ */
+class BenchmarkEnvironment {
+    /**
+     * System property giving the fixture resource directory; {@link RobolectricBenchmarks} passes it to each fork.
+     */
+    static final String RESOURCE_DIR_PROPERTY = "robolectric.benchmarks.resourceDir";
+
+    /**
+     * System property giving the Android SDK's {@code data/res} directory, when it isn't under {@code ANDROID_HOME}.
+     */
+    static final String SDK_RESOURCE_DIR_PROPERTY = "robolectric.benchmarks.sdkResourceDir";
+
+    static final int SDK_VERSION = 10;
+
+    private static final String[] RESOURCE_DIR_CANDIDATES = {"src/main/fixtures/res", "benchmarks/src/main/fixtures/res"};
+
+    static File getResourceDir() {
+        String resourceDir = System.getProperty(RESOURCE_DIR_PROPERTY);
+        if (resourceDir != null) {
+            return new File(resourceDir);
+        }
+
+        for (String candidate : RESOURCE_DIR_CANDIDATES) {
+            File dir = new File(candidate);
+            if (dir.isDirectory()) {
+                return dir.getAbsoluteFile();
+            }
+        }
+        throw new IllegalStateException("couldn't find the fixture resources; run from the benchmarks directory or set -D" + RESOURCE_DIR_PROPERTY);
+    }
+
+    /**
+     * @return the resources of the Android SDK the fixtures are built against, or null if they can't be found
+     */
+    static File getSdkResourceDir() {
+        String sdkResourceDir = System.getProperty(SDK_RESOURCE_DIR_PROPERTY);
+        if (sdkResourceDir != null) {
+            return new File(sdkResourceDir);
+        }
+
+        String androidHome = System.getenv("ANDROID_HOME");
+        if (androidHome != null) {
+            File dir = new File(androidHome, "platforms/android-" + SDK_VERSION + "/data/res");
+            if (dir.isDirectory()) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a new ResourceLoader for the fixtures, which won't read them until it's first used
+     */
+    static ResourceLoader newResourceLoader() throws Exception {
+        return new ResourceLoader(SDK_VERSION, R.class, getResourceDir(), null);
+    }
+
+    static Application setUp(ResourceLoader resourceLoader) {
+        if (!RobolectricAgent.isInstalled()) {
+            throw new IllegalStateException("the benchmarks need Android classes instrumented by the Robolectric java agent; run them with " + RobolectricBenchmarks.class.getName());
+        }
+
+        ShadowWrangler.getInstance().beforeTest(Robolectric.class.getClassLoader());
+        Robolectric.bindDefaultShadowClasses();
+        Robolectric.resetStaticState();
+        Robolectric.application = ShadowApplication.bind(new Application(), resourceLoader);
+        return Robolectric.application;
+    }
+}
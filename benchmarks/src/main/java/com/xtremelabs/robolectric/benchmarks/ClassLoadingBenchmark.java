@@ -0,0 +1,79 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import com.xtremelabs.robolectric.bytecode.RobolectricClassLoader;
+import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading Android classes through a {@link RobolectricClassLoader}: {@link #cold} into a new loader, the way the
+ * first test of a run does (the instrumented classes come from the class cache once the first iteration has put them
+ * there), and {@link #warm} from a loader that has already loaded them.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Drobolectric.preInstrumentThreads=0")
+public class ClassLoadingBenchmark {
+    // the classes behind a typical activity and its layout; loading them loads their superclasses too
+    static final String[] CLASS_NAMES = {
+            "android.app.Activity",
+            "android.widget.LinearLayout",
+            "android.widget.FrameLayout",
+            "android.widget.TextView",
+            "android.widget.EditText",
+            "android.widget.Button",
+            "android.widget.CheckBox",
+            "android.widget.ImageView",
+            "android.widget.ListView",
+            "android.widget.ArrayAdapter",
+            "android.os.Handler",
+            "android.content.Intent",
+    };
+
+    private RobolectricClassLoader coldLoader;
+    private RobolectricClassLoader warmLoader;
+
+    @Setup(Level.Trial) public void setUpWarmLoader() throws Exception {
+        warmLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
+        for (String className : CLASS_NAMES) {
+            warmLoader.loadClass(className);
+        }
+    }
+
+    @Setup(Level.Invocation) public void setUpColdLoader() {
+        coldLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 50)
+    public void cold(Blackhole blackhole) throws Exception {
+        for (String className : CLASS_NAMES) {
+            blackhole.consume(coldLoader.loadClass(className));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void warm(Blackhole blackhole) throws Exception {
+        for (String className : CLASS_NAMES) {
+            blackhole.consume(warmLoader.loadClass(className));
+        }
+    }
+}
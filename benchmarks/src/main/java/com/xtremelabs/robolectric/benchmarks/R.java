@@ -0,0 +1,132 @@
+/* AUTO-GENERATED FILE.  DO NOT MODIFY.
+ *
+ * This class was automatically generated by the
+ * aapt tool from the resource data it found.  It
+ * should not be modified by hand.
+ */
+
+package com.xtremelabs.robolectric.benchmarks;
+
+public final class R {
+    private static int nextId = 0x7f010000;
+
+    public static final class id {
+        public static final int header = nextId++;
+        public static final int header_logo = nextId++;
+        public static final int header_title = nextId++;
+        public static final int header_unread = nextId++;
+        public static final int search = nextId++;
+        public static final int note_list = nextId++;
+        public static final int empty = nextId++;
+        public static final int status = nextId++;
+        public static final int refresh = nextId++;
+        public static final int note_selected = nextId++;
+        public static final int note_subject = nextId++;
+        public static final int note_preview = nextId++;
+        public static final int note_date = nextId++;
+        public static final int note_star = nextId++;
+        public static final int compose_to = nextId++;
+        public static final int compose_subject = nextId++;
+        public static final int compose_body = nextId++;
+        public static final int compose_attach = nextId++;
+        public static final int compose_discard = nextId++;
+        public static final int compose_save_draft = nextId++;
+        public static final int compose_send = nextId++;
+        public static final int sign_in_form = nextId++;
+        public static final int sign_in_username = nextId++;
+        public static final int sign_in_password = nextId++;
+        public static final int sign_in_remember_me = nextId++;
+        public static final int sign_in = nextId++;
+        public static final int menu_compose = nextId++;
+        public static final int menu_refresh = nextId++;
+        public static final int menu_settings = nextId++;
+        public static final int menu_sign_out = nextId++;
+    }
+
+    public static final class string {
+        public static final int app_name = nextId++;
+        public static final int title_inbox = nextId++;
+        public static final int title_compose = nextId++;
+        public static final int title_settings = nextId++;
+        public static final int title_account = nextId++;
+        public static final int label_to = nextId++;
+        public static final int label_subject = nextId++;
+        public static final int label_body = nextId++;
+        public static final int label_attach = nextId++;
+        public static final int label_remember_me = nextId++;
+        public static final int label_username = nextId++;
+        public static final int label_password = nextId++;
+        public static final int hint_search = nextId++;
+        public static final int hint_subject = nextId++;
+        public static final int action_send = nextId++;
+        public static final int action_save_draft = nextId++;
+        public static final int action_discard = nextId++;
+        public static final int action_sign_in = nextId++;
+        public static final int action_sign_out = nextId++;
+        public static final int action_refresh = nextId++;
+        public static final int action_share = nextId++;
+        public static final int action_delete = nextId++;
+        public static final int action_archive = nextId++;
+        public static final int status_sending = nextId++;
+        public static final int status_sent = nextId++;
+        public static final int status_failed = nextId++;
+        public static final int status_empty = nextId++;
+        public static final int status_syncing = nextId++;
+        public static final int status_last_synced = nextId++;
+        public static final int unread_count = nextId++;
+        public static final int from_and_date = nextId++;
+        public static final int pref_notifications = nextId++;
+        public static final int pref_notifications_summary = nextId++;
+        public static final int pref_sync_interval = nextId++;
+        public static final int pref_signature = nextId++;
+        public static final int pref_signature_default = nextId++;
+        public static final int dialog_discard_title = nextId++;
+        public static final int dialog_discard_message = nextId++;
+        public static final int greeting = nextId++;
+        public static final int about_html = nextId++;
+    }
+
+    public static final class array {
+        public static final int sync_intervals = nextId++;
+        public static final int folders = nextId++;
+    }
+
+    public static final class color {
+        public static final int primary = nextId++;
+        public static final int primary_dark = nextId++;
+        public static final int accent = nextId++;
+        public static final int background = nextId++;
+        public static final int divider = nextId++;
+        public static final int text_primary = nextId++;
+        public static final int text_secondary = nextId++;
+        public static final int unread = nextId++;
+        public static final int header_background = nextId++;
+        public static final int error = nextId++;
+    }
+
+    public static final class drawable {
+        public static final int logo = nextId++;
+        public static final int star = nextId++;
+    }
+
+    public static final class layout {
+        public static final int header = nextId++;
+        public static final int inbox = nextId++;
+        public static final int note_list_item = nextId++;
+        public static final int compose = nextId++;
+        public static final int sign_in = nextId++;
+        public static final int account = nextId++;
+    }
+
+    public static final class raw {
+        public static final int welcome = nextId++;
+    }
+
+    public static final class menu {
+        public static final int inbox = nextId++;
+    }
+
+    public static final class xml {
+        public static final int preferences = nextId++;
+    }
+}
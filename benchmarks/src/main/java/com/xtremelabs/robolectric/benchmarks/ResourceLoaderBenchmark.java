@@ -0,0 +1,36 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import com.xtremelabs.robolectric.res.ResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the fixture resources into a new {@link ResourceLoader}, which happens the first time it's used. The
+ * Android SDK's own resources are read too when the SDK can be found (see the README), and then dominate the result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ResourceLoaderBenchmark {
+    @Setup public void setUp() throws Exception {
+        BenchmarkEnvironment.setUp(BenchmarkEnvironment.newResourceLoader());
+    }
+
+    @Benchmark public String init() throws Exception {
+        ResourceLoader resourceLoader = BenchmarkEnvironment.newResourceLoader();
+        return resourceLoader.getNameForId(R.id.compose_send);
+    }
+}
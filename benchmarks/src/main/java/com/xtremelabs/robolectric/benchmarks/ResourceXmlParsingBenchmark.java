@@ -0,0 +1,109 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import com.xtremelabs.robolectric.res.XmlFileParser;
+import com.xtremelabs.robolectric.res.XmlNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a values directory into {@link XmlNode}s through a DOM ({@code dom}, as resources were read before
+ * {@link XmlNode#fromStream} existed) and in a single StAX pass ({@code stax}, as {@link XmlFileParser} reads them
+ * now). The files are read into memory first, so only parsing is measured. It's the SDK's values directory, with its
+ * big {@code attrs.xml} and {@code strings.xml}, when the SDK can be found (see the README), and the fixtures'
+ * otherwise; compare {@code gc.alloc.rate.norm} as well as the times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ResourceXmlParsingBenchmark {
+    @Param({"dom", "stax"})
+    public String parser;
+
+    private final List<byte[]> files = new ArrayList<byte[]>();
+    private DocumentBuilderFactory documentBuilderFactory;
+    private XMLInputFactory xmlInputFactory;
+
+    @Setup public void setUp() throws Exception {
+        File resourceDir = BenchmarkEnvironment.getSdkResourceDir();
+        if (resourceDir == null) {
+            resourceDir = BenchmarkEnvironment.getResourceDir();
+        }
+        for (File xmlFile : XmlFileParser.listXmlFiles(new File(resourceDir, "values"))) {
+            files.add(read(xmlFile));
+        }
+
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilderFactory.setIgnoringComments(true);
+        documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    @Benchmark public List<XmlNode> parse() throws Exception {
+        List<XmlNode> documents = new ArrayList<XmlNode>(files.size());
+        boolean dom = parser.equals("dom");
+        for (byte[] file : files) {
+            documents.add(dom ? parseDom(file) : parseStax(file));
+        }
+        return documents;
+    }
+
+    private XmlNode parseDom(byte[] file) throws Exception {
+        return XmlNode.fromDocument(documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(file)));
+    }
+
+    private XmlNode parseStax(byte[] file) throws Exception {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(file));
+        try {
+            return XmlNode.fromStream(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = inputStream.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    throw new IOException(file + " got shorter while it was read");
+                }
+                offset += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return bytes;
+    }
+}
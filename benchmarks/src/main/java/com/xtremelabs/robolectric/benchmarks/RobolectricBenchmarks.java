@@ -0,0 +1,71 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import com.xtremelabs.robolectric.bytecode.RobolectricAgent;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.ProfilerConfig;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the benchmarks, taking the same arguments as JMH's own {@code org.openjdk.jmh.Main}.
+ *
+ * <p>Each forked JVM is started with the Robolectric java agent, so the Android classes the benchmarks use are
+ * instrumented just as they are for tests, and is told where the fixture resources are. JMH's {@code gc} profiler is
+ * always on, so every result comes with its allocation rate ({@code gc.alloc.rate.norm} is bytes allocated per
+ * operation).</p>
+ */
+public class RobolectricBenchmarks {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListProfilers()
+                || commandLineOptions.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        List<String> jvmArgs = new ArrayList<String>(commandLineOptions.getJvmArgsAppend().orElse(Collections.<String>emptyList()));
+        jvmArgs.add("-javaagent:" + agentJar().getPath());
+        jvmArgs.add("-D" + BenchmarkEnvironment.RESOURCE_DIR_PROPERTY + "=" + BenchmarkEnvironment.getResourceDir().getPath());
+        File sdkResourceDir = BenchmarkEnvironment.getSdkResourceDir();
+        if (sdkResourceDir != null) {
+            jvmArgs.add("-D" + BenchmarkEnvironment.SDK_RESOURCE_DIR_PROPERTY + "=" + sdkResourceDir.getPath());
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .jvmArgsAppend(jvmArgs.toArray(new String[jvmArgs.size()]));
+        if (!hasProfiler(commandLineOptions.getProfilers(), GCProfiler.class)) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+
+    private static boolean hasProfiler(Collection<ProfilerConfig> profilers, Class<?> profilerClass) {
+        for (ProfilerConfig profiler : profilers) {
+            if (profiler.getKlass().equals(profilerClass.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the jar RobolectricAgent was loaded from: this module's shaded jar, or the Robolectric jar when run
+     *         from an IDE; both have it as their {@code Premain-Class}
+     */
+    private static File agentJar() throws Exception {
+        File location = new File(RobolectricAgent.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!location.isFile()) {
+            throw new IllegalStateException(RobolectricAgent.class.getName() + " was loaded from " + location + ", not a jar; run \"mvn install\" in the Robolectric directory first");
+        }
+        return location;
+    }
+}
@@ -0,0 +1,112 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries and inserts through {@link com.xtremelabs.robolectric.shadows.ShadowSQLiteDatabase}, against a table of
+ * {@link #rows} notes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SQLiteDatabaseBenchmark {
+    private static final String[] COLUMNS = {"id", "subject", "body", "starred", "updated_at"};
+
+    @Param({"100", "1000"})
+    public int rows;
+
+    private SQLiteDatabase database;
+    private int nextId;
+
+    @Setup public void setUp() throws Exception {
+        BenchmarkEnvironment.setUp(BenchmarkEnvironment.newResourceLoader());
+        database = SQLiteDatabase.openDatabase("notes", null, 0);
+        database.execSQL("CREATE TABLE notes (\n" +
+                "  id INTEGER PRIMARY KEY,\n" +
+                "  subject VARCHAR(255),\n" +
+                "  body VARCHAR(4096),\n" +
+                "  starred INTEGER,\n" +
+                "  updated_at BIGINT\n" +
+                ");");
+        database.execSQL("CREATE INDEX notes_starred ON notes (starred);");
+        for (nextId = 0; nextId < rows; ) {
+            insertNote();
+        }
+    }
+
+    @TearDown public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark public int queryAll() {
+        return readAll(database.query("notes", COLUMNS, null, null, null, null, "updated_at DESC"));
+    }
+
+    @Benchmark public int queryWithSelection() {
+        return readAll(database.query("notes", COLUMNS, "starred = ?", new String[]{"1"}, null, null, null));
+    }
+
+    @Benchmark public int queryOne() {
+        return readAll(database.query("notes", COLUMNS, "id = ?", new String[]{String.valueOf(rows / 2)}, null, null, null));
+    }
+
+    @Benchmark public int rawQueryCount() {
+        Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM notes WHERE starred = ?", new String[]{"0"});
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds to the table, so its size keeps growing through the iterations.
+     */
+    @Benchmark public long insert() {
+        return insertNote();
+    }
+
+    private long insertNote() {
+        int id = nextId++;
+        ContentValues values = new ContentValues();
+        values.put("id", id);
+        values.put("subject", "Note " + id);
+        values.put("body", "Remember to pick up item " + id + " on the way home, and to call about the one after it.");
+        values.put("starred", id % 10 == 0 ? 1 : 0);
+        values.put("updated_at", 1300000000000L + id * 60000L);
+        return database.insert("notes", null, values);
+    }
+
+    private int readAll(Cursor cursor) {
+        try {
+            int total = 0;
+            while (cursor.moveToNext()) {
+                total += cursor.getInt(0) + cursor.getString(1).length() + cursor.getString(2).length() + cursor.getInt(3);
+                total += (int) cursor.getLong(4);
+            }
+            return total;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import com.xtremelabs.robolectric.util.Scheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posting delayed runnables to a {@link Scheduler} that already has {@link #pending} waiting, as a test's looper does
+ * when it's paused or the runnables are for later, and then running them all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SchedulerBenchmark {
+    private static final int POSTS = 100;
+    private static final Runnable NOTHING = new Runnable() {
+        @Override public void run() {
+        }
+    };
+
+    @Param({"0", "100", "1000"})
+    public int pending;
+
+    private Scheduler scheduler;
+
+    @Setup(Level.Invocation) public void setUp() {
+        scheduler = new Scheduler();
+        for (int i = 0; i < pending; i++) {
+            scheduler.postDelayed(NOTHING, delayFor(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public boolean postDelayed() {
+        for (int i = 0; i < POSTS; i++) {
+            scheduler.postDelayed(NOTHING, delayFor(i));
+        }
+        return scheduler.advanceToLastPostedRunnable();
+    }
+
+    // spread out and out of order, like the runnables of several animations and timeouts
+    private static long delayFor(int i) {
+        return 1 + (i * 37) % 1000;
+    }
+}
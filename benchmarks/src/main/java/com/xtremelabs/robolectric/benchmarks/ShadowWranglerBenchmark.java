@@ -0,0 +1,65 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import android.app.Application;
+import android.view.View;
+import android.widget.TextView;
+import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a call to an instrumented method to its shadow, both by calling
+ * {@link ShadowWrangler#methodInvoked} directly and through the instrumented class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ShadowWranglerBenchmark {
+    private static final String[] NO_PARAM_TYPES = new String[0];
+    private static final String[] INT_PARAM_TYPE = {"int"};
+
+    private ShadowWrangler shadowWrangler;
+    private View view;
+    private TextView textView;
+
+    @Setup public void setUp() throws Exception {
+        Application application = BenchmarkEnvironment.setUp(BenchmarkEnvironment.newResourceLoader());
+        shadowWrangler = ShadowWrangler.getInstance();
+        view = new View(application);
+        textView = new TextView(application);
+    }
+
+    @Benchmark public Object methodInvoked() throws Throwable {
+        return shadowWrangler.methodInvoked(View.class, "getVisibility", view, NO_PARAM_TYPES);
+    }
+
+    @Benchmark public Object methodInvokedWithIntParam() throws Throwable {
+        return shadowWrangler.methodInvoked(View.class, "setVisibility", view, INT_PARAM_TYPE, View.VISIBLE);
+    }
+
+    @Benchmark public int instrumentedCall() {
+        return view.getVisibility();
+    }
+
+    @Benchmark public int instrumentedCallShadowedBySuperclass() {
+        return textView.getVisibility();
+    }
+
+    @Benchmark public CharSequence instrumentedCallWithObjectParam() {
+        textView.setText("Howdy");
+        return textView.getText();
+    }
+}
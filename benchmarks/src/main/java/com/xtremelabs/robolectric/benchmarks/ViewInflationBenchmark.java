@@ -0,0 +1,70 @@
+package com.xtremelabs.robolectric.benchmarks;
+
+import android.app.Application;
+import android.view.View;
+import com.xtremelabs.robolectric.res.ResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inflating the fixture layouts with {@link com.xtremelabs.robolectric.res.ViewLoader#inflateView}, from a
+ * {@link ResourceLoader} that has already read them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ViewInflationBenchmark {
+    private Application application;
+    private ResourceLoader resourceLoader;
+
+    @Setup public void setUp() throws Exception {
+        resourceLoader = BenchmarkEnvironment.newResourceLoader();
+        application = BenchmarkEnvironment.setUp(resourceLoader);
+        inflateView(R.layout.inbox);
+    }
+
+    /**
+     * A list item: a dozen views, no includes.
+     */
+    @Benchmark public View listItem() {
+        return inflateView(R.layout.note_list_item);
+    }
+
+    /**
+     * An activity with an included header, a list and a button bar.
+     */
+    @Benchmark public View activity() {
+        return inflateView(R.layout.inbox);
+    }
+
+    /**
+     * A form in a scroll view, with a requested focus.
+     */
+    @Benchmark public View form() {
+        return inflateView(R.layout.compose);
+    }
+
+    /**
+     * A layout that includes a {@code <merge>}.
+     */
+    @Benchmark public View mergedInclude() {
+        return inflateView(R.layout.account);
+    }
+
+    private View inflateView(int layoutId) {
+        return resourceLoader.inflateView(application, layoutId, null);
+    }
+}
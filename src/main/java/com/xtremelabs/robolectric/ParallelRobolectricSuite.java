@@ -0,0 +1,259 @@
+package com.xtremelabs.robolectric;
+
+import com.xtremelabs.robolectric.bytecode.ClassLoaderPool;
+import com.xtremelabs.robolectric.bytecode.RobolectricAgent;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the test classes listed in a {@link Suite.SuiteClasses} annotation at the same time, on a pool of worker
+ * threads:
+ *
+ * <pre>
+ * &#064;RunWith(ParallelRobolectricSuite.class)
+ * &#064;SuiteClasses({FirstTest.class, SecondTest.class})
+ * public class AllTests {
+ * }
+ * </pre>
+ *
+ * <p>Each worker has its own {@link com.xtremelabs.robolectric.bytecode.RobolectricClassLoader}s (see
+ * {@link ClassLoaderPool#setWorker(int)}), so classes running at the same time never share
+ * {@link Robolectric#application}, shadow class bindings or any other static state. The {@link RobolectricTestRunner}
+ * for each class is only created on the worker that runs it; until then the class is described by a plain
+ * {@link BlockJUnit4ClassRunner}, which names its tests the same way, so the suite can still be filtered and sorted
+ * down to single tests. Classes are started slowest first, going by how long they took last time, so the run isn't
+ * held up by a slow class started at the end.</p>
+ *
+ * <p>Each class's events are held back until it has finished, then passed on all together, so listeners never see the
+ * tests of two classes interleaved.</p>
+ *
+ * <p>The number of workers is given by the {@link #THREADS_PROPERTY} system property, and defaults to the number of
+ * processors. With the {@link RobolectricAgent} every class shares the one system class loader, so they're run one at
+ * a time.</p>
+ */
+public class ParallelRobolectricSuite extends ParentRunner<Class<?>> {
+    /**
+     * System property giving the number of test classes to run at the same time.
+     */
+    public static final String THREADS_PROPERTY = "robolectric.parallelThreads";
+
+    private final RunnerBuilder runnerBuilder;
+    private final TestDurations testDurations;
+    private final List<Class<?>> testClasses;
+    private final Map<Class<?>, Description> descriptions = new HashMap<Class<?>, Description>();
+    // for the classes whose runners needn't wait for a worker
+    private final Map<Class<?>, Runner> runners = new HashMap<Class<?>, Runner>();
+    private Filter filter;
+    private Sorter sorter;
+
+    public ParallelRobolectricSuite(Class<?> suiteClass, RunnerBuilder runnerBuilder) throws InitializationError {
+        super(suiteClass);
+        Suite.SuiteClasses suiteClasses = suiteClass.getAnnotation(Suite.SuiteClasses.class);
+        if (suiteClasses == null) {
+            throw new InitializationError("class '" + suiteClass.getName() + "' must have a SuiteClasses annotation");
+        }
+
+        this.runnerBuilder = runnerBuilder;
+        testDurations = TestDurations.forDefaultCache();
+        testClasses = testDurations.slowestFirst(Arrays.<Class<?>>asList(suiteClasses.value()));
+        for (Class<?> testClass : testClasses) {
+            descriptions.put(testClass, describe(testClass));
+        }
+        setScheduler(new WorkerPoolScheduler(threadCount(), testDurations));
+    }
+
+    private Description describe(Class<?> testClass) {
+        RunWith runWith = testClass.getAnnotation(RunWith.class);
+        if (runWith != null && RobolectricTestRunner.class.isAssignableFrom(runWith.value())) {
+            try {
+                return new BlockJUnit4ClassRunner(testClass).getDescription();
+            } catch (InitializationError e) {
+                // the real runner will report what's wrong with the class when it's run
+                return Description.createSuiteDescription(testClass);
+            }
+        }
+
+        Runner runner = runnerBuilder.safeRunnerForClass(testClass);
+        runners.put(testClass, runner);
+        return runner.getDescription();
+    }
+
+    static int threadCount() {
+        if (RobolectricAgent.isInstalled()) {
+            return 1;
+        }
+        return Math.max(1, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override protected List<Class<?>> getChildren() {
+        return testClasses;
+    }
+
+    @Override protected Description describeChild(Class<?> testClass) {
+        return descriptions.get(testClass);
+    }
+
+    /**
+     * Keeps the filter to apply to each class's runner as well, since it can't be applied to the classes themselves.
+     */
+    @Override public void filter(Filter filter) throws NoTestsRemainException {
+        super.filter(filter);
+        this.filter = filter;
+    }
+
+    @Override public void sort(Sorter sorter) {
+        super.sort(sorter);
+        this.sorter = sorter;
+    }
+
+    @Override protected void runChild(Class<?> testClass, RunNotifier notifier) {
+        long start = System.currentTimeMillis();
+        Runner runner = runners.get(testClass);
+        if (runner == null) {
+            runner = runnerBuilder.safeRunnerForClass(testClass);
+        }
+        try {
+            if (filter != null) {
+                filter.apply(runner);
+            }
+        } catch (NoTestsRemainException e) {
+            return;
+        }
+        if (sorter != null) {
+            sorter.apply(runner);
+        }
+
+        RunNotifier classNotifier = new RunNotifier();
+        ClassEvents classEvents = new ClassEvents();
+        classNotifier.addListener(classEvents);
+        try {
+            runner.run(classNotifier);
+        } finally {
+            synchronized (notifier) {
+                classEvents.replay(notifier);
+            }
+        }
+        testDurations.record(testClass, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Records the events of one class's tests, to be passed on once the class has finished.
+     */
+    private static class ClassEvents extends RunListener {
+        private final List<Event> events = new ArrayList<Event>();
+
+        @Override public synchronized void testStarted(final Description description) {
+            events.add(new Event() {
+                @Override public void replay(RunNotifier notifier) {
+                    notifier.fireTestStarted(description);
+                }
+            });
+        }
+
+        @Override public synchronized void testFinished(final Description description) {
+            events.add(new Event() {
+                @Override public void replay(RunNotifier notifier) {
+                    notifier.fireTestFinished(description);
+                }
+            });
+        }
+
+        @Override public synchronized void testFailure(final Failure failure) {
+            events.add(new Event() {
+                @Override public void replay(RunNotifier notifier) {
+                    notifier.fireTestFailure(failure);
+                }
+            });
+        }
+
+        @Override public synchronized void testAssumptionFailure(final Failure failure) {
+            events.add(new Event() {
+                @Override public void replay(RunNotifier notifier) {
+                    notifier.fireTestAssumptionFailed(failure);
+                }
+            });
+        }
+
+        @Override public synchronized void testIgnored(final Description description) {
+            events.add(new Event() {
+                @Override public void replay(RunNotifier notifier) {
+                    notifier.fireTestIgnored(description);
+                }
+            });
+        }
+
+        synchronized void replay(RunNotifier notifier) {
+            for (Event event : events) {
+                event.replay(notifier);
+            }
+        }
+
+        private interface Event {
+            void replay(RunNotifier notifier);
+        }
+    }
+
+    private static class WorkerPoolScheduler implements RunnerScheduler {
+        private final ExecutorService executorService;
+        private final TestDurations testDurations;
+
+        WorkerPoolScheduler(int threadCount, TestDurations testDurations) {
+            this.testDurations = testDurations;
+            executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                private final AtomicInteger workerCount = new AtomicInteger();
+
+                @Override public Thread newThread(final Runnable runnable) {
+                    final int worker = workerCount.getAndIncrement();
+                    return new Thread("robolectric-worker-" + worker) {
+                        @Override public void run() {
+                            ClassLoaderPool.setWorker(worker);
+                            runnable.run();
+                        }
+                    };
+                }
+            });
+        }
+
+        @Override public void schedule(Runnable childStatement) {
+            executorService.execute(childStatement);
+        }
+
+        @Override public void finished() {
+            executorService.shutdown();
+            try {
+                while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // keep waiting for the slowest classes
+                }
+            } catch (InterruptedException e) {
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+            } finally {
+                testDurations.save();
+            }
+        }
+    }
+}
@@ -84,7 +84,7 @@ public class Robolectric {
     }
 
     public static void bindDefaultShadowClasses() {
-        bindShadowClasses(getDefaultShadowClasses());
+        RobolectricInternals.bindDefaultShadowClasses(getDefaultShadowClasses());
     }
 
     public static void bindShadowClasses(List<Class<?>> shadowClasses) {
@@ -100,7 +100,7 @@ public class Robolectric {
      * output for the current test only.
      */
     public static void logMissingInvokedShadowMethods() {
-        ShadowWrangler.getInstance().logMissingInvokedShadowMethods();
+        ShadowWrangler.getInstance().logMissingInvokedShadowMethods(Robolectric.class.getClassLoader());
     }
 
     public static List<Class<?>> getDefaultShadowClasses() {
@@ -253,7 +253,7 @@ public class Robolectric {
     }
 
     public static void resetStaticState() {
-        ShadowWrangler.getInstance().silence();
+        ShadowWrangler.getInstance().silence(Robolectric.class.getClassLoader());
         Robolectric.application = new Application();
         ShadowBitmapFactory.reset();
     }
@@ -3,11 +3,16 @@ package com.xtremelabs.robolectric;
 import android.app.Application;
 import android.net.Uri__FromAndroid;
 import com.xtremelabs.robolectric.bytecode.ClassHandler;
+import com.xtremelabs.robolectric.bytecode.ClassLoaderPool;
+import com.xtremelabs.robolectric.bytecode.RobolectricAgent;
 import com.xtremelabs.robolectric.bytecode.RobolectricClassLoader;
 import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
 import com.xtremelabs.robolectric.internal.RealObject;
 import com.xtremelabs.robolectric.internal.RobolectricTestRunnerInterface;
 import com.xtremelabs.robolectric.res.ResourceLoader;
+import com.xtremelabs.robolectric.res.ResourceXmlCache;
+import com.xtremelabs.robolectric.res.SystemResources;
+import com.xtremelabs.robolectric.res.XmlNode;
 import com.xtremelabs.robolectric.shadows.ShadowApplication;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
@@ -31,8 +36,14 @@ import java.util.Map;
  * provide a simulation of the Android runtime environment.
  */
 public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements RobolectricTestRunnerInterface {
-    private static RobolectricClassLoader defaultLoader;
-    private static Map<RobolectricConfig, ResourceLoader> resourceLoaderForRootAndDirectory = new HashMap<RobolectricConfig, ResourceLoader>();
+    /**
+     * Set to false to leave static fields as the previous test left them, rather than restoring the snapshot taken
+     * after the first test's environment was set up.
+     */
+    public static final String RESTORE_STATIC_STATE_PROPERTY = "robolectric.restoreStaticState";
+
+    private static final Map<RobolectricConfig, ResourceLoader> resourceLoaderForRootAndDirectory = new HashMap<RobolectricConfig, ResourceLoader>();
+    private static boolean savingResourceXmlCacheOnExit;
 
     // fields in the RobolectricTestRunner in the original ClassLoader
     private RobolectricClassLoader classLoader;
@@ -43,10 +54,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     protected RobolectricConfig robolectricConfig;
 
     private static RobolectricClassLoader getDefaultLoader() {
-        if (defaultLoader == null) {
-            defaultLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
-        }
-        return defaultLoader;
+        return ClassLoaderPool.getLoader(ShadowWrangler.getInstance(), null);
     }
 
     /**
@@ -151,12 +159,18 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     protected RobolectricTestRunner(Class<?> testClass, ClassHandler classHandler, RobolectricClassLoader classLoader, RobolectricConfig robolectricConfig) throws InitializationError {
         super(isInstrumented() ? testClass : classLoader.bootstrap(testClass));
 
-        if (!isInstrumented()) {
+        if (RobolectricAgent.isInstalled()) {
+            // classes are instrumented as the JVM loads them, so there's no second instance to delegate to
+            this.classHandler = ShadowWrangler.getInstance();
+            this.robolectricConfig = robolectricConfig;
+            saveResourceXmlCacheOnExit();
+        } else if (!isInstrumented()) {
             this.classHandler = classHandler;
             this.classLoader = classLoader;
             this.robolectricConfig = robolectricConfig;
 
             Thread.currentThread().setContextClassLoader(classLoader);
+            saveResourceXmlCacheOnExit();
             
             delegateLoadingOf(Uri__FromAndroid.class.getName());
             delegateLoadingOf(RobolectricTestRunnerInterface.class.getName());
@@ -164,6 +178,11 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
             delegateLoadingOf(ShadowWrangler.class.getName());
             delegateLoadingOf(RobolectricConfig.class.getName());
             delegateLoadingOf(android.R.class.getName());
+            // the SDK's parsed resources, and the cache of resource files, are shared by every test class, whichever
+            // loader it's instrumented by
+            delegateLoadingOf(SystemResources.class.getName());
+            delegateLoadingOf(XmlNode.class.getName());
+            delegateLoadingOf(ResourceXmlCache.class.getName());
 
             Class<?> delegateClass = classLoader.bootstrap(this.getClass());
             try {
@@ -176,8 +195,29 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         }
     }
 
+    /**
+     * ResourceLoader saves the cache once its resources are loaded, but files parsed lazily come later. The hook is
+     * registered from here, by the runner's own class loader, so it doesn't keep an instrumenting loader alive.
+     */
+    private static synchronized void saveResourceXmlCacheOnExit() {
+        if (savingResourceXmlCacheOnExit) {
+            return;
+        }
+        savingResourceXmlCacheOnExit = true;
+
+        final ResourceXmlCache resourceXmlCache = ResourceXmlCache.getDefault();
+        if (resourceXmlCache != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() {
+                    resourceXmlCache.save();
+                }
+            });
+        }
+    }
+
     protected static boolean isInstrumented() {
-        return RobolectricTestRunner.class.getClassLoader().getClass().getName().contains(RobolectricClassLoader.class.getName());
+        return RobolectricAgent.isInstalled()
+                || RobolectricTestRunner.class.getClassLoader().getClass().getName().contains(RobolectricClassLoader.class.getName());
     }
 
     /**
@@ -193,11 +233,20 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     }
 
     protected void delegateLoadingOf(String className) {
-        classLoader.delegateLoadingOf(className);
+        if (classLoader != null) {
+            classLoader.delegateLoadingOf(className);
+        }
     }
 
     @Override protected Statement methodBlock(final FrameworkMethod method) {
-        if (classHandler != null) classHandler.beforeTest();
+        if (classHandler != null) {
+            if (classLoader != null) {
+                classHandler.beforeTest(classLoader);
+            } else {
+                classHandler.beforeTest();
+            }
+        }
+        final RobolectricTestRunnerInterface delegate = this.delegate == null ? this : this.delegate;
         delegate.internalBeforeTest(method.getMethod());
 
         final Statement statement = super.methodBlock(method);
@@ -269,12 +318,22 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     public void setupApplicationState(RobolectricConfig robolectricConfig) {
         ResourceLoader resourceLoader = createResourceLoader(robolectricConfig);
 
+        // the class loader is shared with every other test using the same configuration, so put the static fields of
+        // instrumented and shadow classes back the way they were after the first test was set up
+        boolean restoreStaticState = Boolean.valueOf(System.getProperty(RESTORE_STATIC_STATE_PROPERTY, "true"));
+        ClassLoader classLoader = Robolectric.class.getClassLoader();
+        boolean restored = restoreStaticState && ShadowWrangler.getInstance().restoreStaticState(classLoader);
+
         Robolectric.bindDefaultShadowClasses();
         bindShadowClasses();
 
         Robolectric.resetStaticState();
         resetStaticState();
 
+        if (restoreStaticState && !restored) {
+            ShadowWrangler.getInstance().takeStaticStateSnapshot(classLoader);
+        }
+
         Robolectric.application = ShadowApplication.bind(createApplication(), resourceLoader);
     }
 
@@ -303,20 +362,22 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     }
 
     private ResourceLoader createResourceLoader(RobolectricConfig robolectricConfig) {
-        ResourceLoader resourceLoader = resourceLoaderForRootAndDirectory.get(robolectricConfig);
-        if (resourceLoader == null) {
-            try {
-                robolectricConfig.validate();
-
-                String rClassName = robolectricConfig.getRClassName();
-                Class rClass = Class.forName(rClassName);
-                resourceLoader = new ResourceLoader(robolectricConfig.getSdkVersion(), rClass, robolectricConfig.getResourceDirectory(), robolectricConfig.getAssetsDirectory());
-                resourceLoaderForRootAndDirectory.put(robolectricConfig, resourceLoader);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        synchronized (resourceLoaderForRootAndDirectory) {
+            ResourceLoader resourceLoader = resourceLoaderForRootAndDirectory.get(robolectricConfig);
+            if (resourceLoader == null) {
+                try {
+                    robolectricConfig.validate();
+
+                    String rClassName = robolectricConfig.getRClassName();
+                    Class rClass = Class.forName(rClassName);
+                    resourceLoader = new ResourceLoader(robolectricConfig.getSdkVersion(), rClass, robolectricConfig.getResourceDirectory(), robolectricConfig.getAssetsDirectory());
+                    resourceLoaderForRootAndDirectory.put(robolectricConfig, resourceLoader);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
             }
+            return resourceLoader;
         }
-        return resourceLoader;
     }
 
     private String findResourcePackageName(File projectManifestFile) throws ParserConfigurationException, IOException, SAXException {
@@ -0,0 +1,113 @@
+package com.xtremelabs.robolectric;
+
+import com.xtremelabs.robolectric.bytecode.ClassCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * How long each test class took the last time it was run, kept alongside the class cache so
+ * {@link ParallelRobolectricSuite} can start the slowest classes first.
+ */
+class TestDurations {
+    private static final String DURATIONS_FILE_NAME = "robolectric-test-durations.properties";
+
+    private final File file;
+    private final Properties durations = new Properties();
+    private boolean changed;
+
+    static TestDurations forDefaultCache() {
+        File cacheDir = new File(ClassCache.defaultCachePath()).getAbsoluteFile().getParentFile();
+        return new TestDurations(new File(cacheDir, DURATIONS_FILE_NAME));
+    }
+
+    TestDurations(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                InputStream inputStream = new FileInputStream(file);
+                try {
+                    durations.load(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                // the classes will just be run in the order they're listed
+                durations.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the last recorded duration of {@code testClass} in milliseconds, or -1 if there isn't one
+     */
+    synchronized long getDuration(Class<?> testClass) {
+        String duration = durations.getProperty(testClass.getName());
+        try {
+            return duration == null ? -1 : Long.parseLong(duration);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    synchronized void record(Class<?> testClass, long duration) {
+        durations.setProperty(testClass.getName(), String.valueOf(duration));
+        changed = true;
+    }
+
+    /**
+     * @return the test classes, slowest first; classes without a recorded duration come before all the others, since
+     *         they might be the slowest of all
+     */
+    List<Class<?>> slowestFirst(Collection<Class<?>> testClasses) {
+        List<Class<?>> sorted = new ArrayList<Class<?>>(testClasses);
+        Collections.sort(sorted, new Comparator<Class<?>>() {
+            @Override public int compare(Class<?> a, Class<?> b) {
+                long durationOfA = getDuration(a);
+                long durationOfB = getDuration(b);
+                if (durationOfA < 0 || durationOfB < 0) {
+                    return durationOfA < 0 ? (durationOfB < 0 ? 0 : -1) : 1;
+                }
+                return durationOfA > durationOfB ? -1 : (durationOfA == durationOfB ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    synchronized void save() {
+        if (!changed) {
+            return;
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            OutputStream outputStream = new FileOutputStream(tmpFile);
+            try {
+                durations.store(outputStream, "written by " + ParallelRobolectricSuite.class.getName());
+            } finally {
+                outputStream.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                tmpFile.renameTo(file);
+            }
+            changed = false;
+        } catch (IOException e) {
+            System.err.println("WARNING: couldn't save test durations to " + file + ": " + e);
+        }
+    }
+}
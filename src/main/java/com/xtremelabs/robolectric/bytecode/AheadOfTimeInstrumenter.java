@@ -0,0 +1,267 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import javassist.bytecode.ClassFile;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Runs the {@link AndroidTranslator} over every class in a set of jars, e.g. android.jar and maps.jar, and writes the
+ * classes it instruments to a new jar. Pass that jar to the tests with {@code -Drobolectric.instrumentedJar=...} and
+ * {@link RobolectricClassLoader} will define its classes directly instead of instrumenting them in every JVM.
+ *
+ * <p>The manifest records a digest of each class's original bytes, so when the input jars change, the classes that
+ * changed are instrumented as they're loaded until the jar is rebuilt. A jar written by a different version of
+ * {@link AndroidTranslator}, or with the other instrumentation backend, is ignored altogether.</p>
+ *
+ * <p>Usage: {@code AheadOfTimeInstrumenter output.jar input.jar...}</p>
+ */
+public class AheadOfTimeInstrumenter {
+    private final List<File> inputJars;
+    private final int threadCount;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: " + AheadOfTimeInstrumenter.class.getName() + " output.jar input.jar...");
+            System.exit(1);
+        }
+
+        List<File> inputJars = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            inputJars.add(new File(args[i]));
+        }
+
+        long start = System.currentTimeMillis();
+        int classCount = new AheadOfTimeInstrumenter(inputJars, Runtime.getRuntime().availableProcessors()).writeInstrumentedJar(new File(args[0]));
+        System.out.println("Instrumented " + classCount + " classes into " + args[0] + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public AheadOfTimeInstrumenter(List<File> inputJars, int threadCount) {
+        this.inputJars = inputJars;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return the number of classes written
+     */
+    public int writeInstrumentedJar(File outputJar) throws Exception {
+        Map<String, InstrumentedClass> instrumentedClasses = instrumentAll(findSuperclassNames());
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(InstrumentedJar.CACHE_VERSION_ATTRIBUTE, String.valueOf(AndroidTranslator.CACHE_VERSION));
+        manifest.getMainAttributes().put(InstrumentedJar.INSTRUMENTATION_ATTRIBUTE, AndroidTranslator.defaultInstrumentation());
+        for (Map.Entry<String, InstrumentedClass> entry : instrumentedClasses.entrySet()) {
+            Attributes attributes = new Attributes();
+            attributes.put(InstrumentedJar.ORIGINAL_DIGEST_ATTRIBUTE, entry.getValue().originalDigest);
+            manifest.getEntries().put(entryName(entry.getKey()), attributes);
+        }
+
+        File outputDir = outputJar.getAbsoluteFile().getParentFile();
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(outputJar), manifest);
+        try {
+            for (Map.Entry<String, InstrumentedClass> entry : instrumentedClasses.entrySet()) {
+                jarOutputStream.putNextEntry(new JarEntry(entryName(entry.getKey())));
+                jarOutputStream.write(entry.getValue().classBytes);
+                jarOutputStream.closeEntry();
+            }
+        } finally {
+            jarOutputStream.close();
+        }
+        return instrumentedClasses.size();
+    }
+
+    /**
+     * Splits the classes between {@code threadCount} workers. Javassist's ClassPool isn't thread safe, so each worker
+     * has its own pool and translator. Instrumenting a class depends on the changes made to its superclass, so each
+     * class hierarchy in the jars goes to a single worker, which instruments superclasses before their subclasses.
+     *
+     * <p>Only the unmodified classes in a pool are bounded; a pool keeps every class it instruments, pruned of its
+     * method bodies, so each worker's pool grows with its share of the jars.</p>
+     */
+    private Map<String, InstrumentedClass> instrumentAll(Map<String, String> superclassNames) throws Exception {
+        List<Callable<Map<String, InstrumentedClass>>> workers = new ArrayList<Callable<Map<String, InstrumentedClass>>>();
+        for (List<String> share : splitByHierarchy(superclassNames, threadCount)) {
+            workers.add(new Worker(newClassPool(), new AndroidTranslator(ShadowWrangler.getInstance(), null), share));
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            Map<String, InstrumentedClass> instrumentedClasses = new TreeMap<String, InstrumentedClass>();
+            for (Future<Map<String, InstrumentedClass>> future : executorService.invokeAll(workers)) {
+                instrumentedClasses.putAll(future.get());
+            }
+            return instrumentedClasses;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private BoundedClassPool newClassPool() throws NotFoundException {
+        BoundedClassPool classPool = new BoundedClassPool();
+        for (File inputJar : inputJars) {
+            classPool.appendClassPath(inputJar.getPath());
+        }
+        classPool.appendClassPath(new LoaderClassPath(AheadOfTimeInstrumenter.class.getClassLoader()));
+        return classPool;
+    }
+
+    private static String entryName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * Deals out whole class hierarchies, largest first, to whichever share is smallest so far, each ordered so a
+     * class comes after its superclasses.
+     */
+    static List<List<String>> splitByHierarchy(Map<String, String> superclassNames, int shareCount) {
+        final Map<String, Integer> depths = new HashMap<String, Integer>();
+        Map<String, List<String>> hierarchies = new LinkedHashMap<String, List<String>>();
+        for (String className : superclassNames.keySet()) {
+            String rootClassName = className;
+            int depth = 0;
+            while (superclassNames.containsKey(superclassNames.get(rootClassName))) {
+                rootClassName = superclassNames.get(rootClassName);
+                depth++;
+            }
+            depths.put(className, depth);
+
+            List<String> hierarchy = hierarchies.get(rootClassName);
+            if (hierarchy == null) {
+                hierarchy = new ArrayList<String>();
+                hierarchies.put(rootClassName, hierarchy);
+            }
+            hierarchy.add(className);
+        }
+
+        List<List<String>> sortedHierarchies = new ArrayList<List<String>>(hierarchies.values());
+        Collections.sort(sortedHierarchies, new Comparator<List<String>>() {
+            @Override public int compare(List<String> a, List<String> b) {
+                return b.size() - a.size();
+            }
+        });
+
+        List<List<String>> shares = new ArrayList<List<String>>();
+        for (int i = 0; i < shareCount; i++) {
+            shares.add(new ArrayList<String>());
+        }
+        for (List<String> hierarchy : sortedHierarchies) {
+            List<String> smallestShare = shares.get(0);
+            for (List<String> share : shares) {
+                if (share.size() < smallestShare.size()) {
+                    smallestShare = share;
+                }
+            }
+            smallestShare.addAll(hierarchy);
+        }
+
+        Comparator<String> superclassesFirst = new Comparator<String>() {
+            @Override public int compare(String a, String b) {
+                return depths.get(a) - depths.get(b);
+            }
+        };
+        for (List<String> share : shares) {
+            Collections.sort(share, superclassesFirst);
+        }
+        return shares;
+    }
+
+    /**
+     * @return the superclass of each class in the jars, by class name, in the order they're found
+     */
+    private Map<String, String> findSuperclassNames() throws IOException {
+        Map<String, String> superclassNames = new LinkedHashMap<String, String>();
+        for (File inputJar : inputJars) {
+            JarFile jarFile = new JarFile(inputJar);
+            try {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (name.endsWith(".class")) {
+                        String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                        superclassNames.put(className, readSuperclassName(jarFile, entry));
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+        }
+        return superclassNames;
+    }
+
+    private String readSuperclassName(JarFile jarFile, JarEntry entry) throws IOException {
+        InputStream inputStream = jarFile.getInputStream(entry);
+        try {
+            return new ClassFile(new DataInputStream(inputStream)).getSuperclass();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static class InstrumentedClass {
+        final byte[] classBytes;
+        final String originalDigest;
+
+        InstrumentedClass(byte[] classBytes, String originalDigest) {
+            this.classBytes = classBytes;
+            this.originalDigest = originalDigest;
+        }
+    }
+
+    private static class Worker implements Callable<Map<String, InstrumentedClass>> {
+        private final BoundedClassPool classPool;
+        private final AndroidTranslator androidTranslator;
+        private final List<String> classNames;
+
+        Worker(BoundedClassPool classPool, AndroidTranslator androidTranslator, List<String> classNames) {
+            this.classPool = classPool;
+            this.androidTranslator = androidTranslator;
+            this.classNames = classNames;
+        }
+
+        @Override public Map<String, InstrumentedClass> call() throws Exception {
+            Map<String, InstrumentedClass> instrumentedClasses = new TreeMap<String, InstrumentedClass>();
+            for (String className : classNames) {
+                try {
+                    byte[] originalClassBytes = ClassCache.readOriginalClassBytes(classPool, className);
+                    byte[] classBytes = originalClassBytes == null ? null : androidTranslator.instrumentClass(classPool, className);
+                    if (classBytes != null) {
+                        instrumentedClasses.put(className, new InstrumentedClass(classBytes, InstrumentedJar.digestOf(originalClassBytes)));
+                    }
+                } catch (Exception e) {
+                    // leave it to be instrumented when it's loaded, which reports the problem in context
+                    System.err.println("WARNING: couldn't instrument " + className + ": " + e);
+                }
+                classPool.classDefined(className);
+            }
+            return instrumentedClasses;
+        }
+    }
+}
@@ -26,13 +26,29 @@ public class AndroidTranslator implements Translator {
      * IMPORTANT -- increment this number when the bytecode generated for modified classes changes
      * so the cache file can be invalidated.
      */
-    public static final int CACHE_VERSION = 19;
+    public static final int CACHE_VERSION = 23;
+
+    /**
+     * Static boolean field added to each instrumented class, true while the class or one of its superclasses has a
+     * shadow bound. When false, instrumented methods skip calling into the {@link ClassHandler} altogether.
+     */
+    public static final String HAS_SHADOW_FIELD_NAME = "__hasShadow__";
+
+    /**
+     * System property choosing how instrumentation is added to classes: {@code source} (the default) generates Java
+     * source which Javassist compiles, {@code bytecode} emits the equivalent instructions directly, which avoids
+     * running the compiler for every method and makes instrumenting cold classes considerably faster.
+     */
+    public static final String INSTRUMENTATION_PROPERTY = "robolectric.instrumentation";
 
     private static final List<ClassHandler> CLASS_HANDLERS = new ArrayList<ClassHandler>();
 
     private ClassHandler classHandler;
     private ClassCache classCache;
-    private static final ArrayList<String> instrumentingList = new ArrayList<String>();
+    private boolean emitBytecode = "bytecode".equals(defaultInstrumentation());
+    private BytecodeInstrumenter bytecodeInstrumenter;
+    private final PrefixTrie instrumentingList = new PrefixTrie();
+    private static final String INSTRUMENT_DESCRIPTOR = "L" + Instrument.class.getName().replace('.', '/') + ";";
 
     public AndroidTranslator(ClassHandler classHandler, ClassCache classCache) {
         this.classHandler = classHandler;
@@ -47,12 +63,28 @@ public class AndroidTranslator implements Translator {
     public AndroidTranslator(ClassHandler classHandler, ClassCache classCache, ArrayList<String> customShadowClassNames) {
     	this(classHandler, classCache);
     	if ( customShadowClassNames != null && !customShadowClassNames.isEmpty() ) {
-        	instrumentingList.addAll(customShadowClassNames);    		
+        	for (String customShadowClassName : customShadowClassNames) {
+        	    instrumentingList.add(customShadowClassName);
+        	}
     	}
     }
        
+    /**
+     * @return {@code bytecode} or {@code source}, as {@link #INSTRUMENTATION_PROPERTY} chooses; the two instrument
+     *         classes differently, so it's part of the {@link ClassCache}'s configuration
+     */
+    public static String defaultInstrumentation() {
+        return "bytecode".equals(System.getProperty(INSTRUMENTATION_PROPERTY)) ? "bytecode" : "source";
+    }
+
+    public void setEmitBytecode(boolean emitBytecode) {
+        this.emitBytecode = emitBytecode;
+    }
+
     public static ClassHandler getClassHandler(int index) {
-        return CLASS_HANDLERS.get(index);
+        synchronized (CLASS_HANDLERS) {
+            return CLASS_HANDLERS.get(index);
+        }
     }
 
     @Override
@@ -86,40 +118,111 @@ public class AndroidTranslator implements Translator {
             return;
         }
 
+        byte[] classBytes = instrumentClass(classPool, className);
+        if (classBytes != null) {
+            addToCache(classPool, className, classBytes);
+        }
+    }
+
+    /**
+     * Does the same as {@link #onLoad(ClassPool, String)} for a class being loaded under {@link RobolectricAgent},
+     * where classes which aren't changed are left for the JVM to define from their original bytes.
+     *
+     * @return the bytes to define the class with, or null if it isn't changed
+     */
+    byte[] transform(ClassPool classPool, String className) throws NotFoundException, CannotCompileException {
+        if (classHasFromAndroidEquivalent(className)) {
+            if (new FromAndroidClassNameParts(className).isFromAndroid()) return null;
+
+            replaceClassWithFromAndroidEquivalent(classPool, className);
+            try {
+                return classPool.get(className).toBytecode();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        byte[] classBytes = instrumentClass(classPool, className);
+        if (classBytes != null) {
+            addToCache(classPool, className, classBytes);
+        }
+        return classBytes;
+    }
+
+    private void addToCache(ClassPool classPool, String className, byte[] classBytes) {
+        byte[] originalClassBytes = ClassCache.readOriginalClassBytes(classPool, className);
+        if (originalClassBytes != null) {
+            classCache.addClass(className, originalClassBytes, classBytes);
+        }
+    }
+
+    /**
+     * Decides from its name and original bytes whether loading a class involves this translator at all. Classes for
+     * which this is false are loaded as they are, without Javassist ever parsing them.
+     *
+     * <p>When it's true, the class is instrumented in the same way by every translator which instruments it at all,
+     * so its instrumented bytes can be shared between configurations.</p>
+     */
+    boolean needsTranslation(String className, byte[] originalClassBytes) {
+        return classHasFromAndroidEquivalent(className)
+                || className.equals(RobolectricInternals.class.getName()) // its static initializer is rewritten in start()
+                || instrumentingList.matches(className)
+                || ConstantPoolScanner.isAnnotatedWith(originalClassBytes, INSTRUMENT_DESCRIPTOR);
+    }
+
+    /**
+     * Instruments the class in {@code classPool}, if it is one which should be.
+     *
+     * @return the bytes of the instrumented class, or null if it isn't instrumented
+     */
+    byte[] instrumentClass(ClassPool classPool, String className) throws NotFoundException, CannotCompileException {
+        if (classHasFromAndroidEquivalent(className)) {
+            return null;
+        }
+
+        boolean inInstrumentingList = instrumentingList.matches(className);
+        if (!inInstrumentingList) {
+            byte[] originalClassBytes = ClassCache.readOriginalClassBytes(classPool, className);
+            if (originalClassBytes != null && !ConstantPoolScanner.isAnnotatedWith(originalClassBytes, INSTRUMENT_DESCRIPTOR)) {
+                return null;
+            }
+        }
+
         CtClass ctClass;
         try {
             ctClass = classPool.get(className);
         } catch (NotFoundException e) {
             throw new IgnorableClassNotFoundException(e);
         }
-        
-        boolean wantsToBeInstrumented = ctClass.hasAnnotation(Instrument.class);
-        if (!wantsToBeInstrumented) {
-        	for (String klassName : instrumentingList) {
-        		wantsToBeInstrumented = className.startsWith(klassName);
-        		if (wantsToBeInstrumented) break;
-        	}
-        }
-                
+
+        boolean wantsToBeInstrumented = inInstrumentingList || ctClass.hasAnnotation(Instrument.class);
         if (wantsToBeInstrumented && !ctClass.hasAnnotation(DoNotInstrument.class)) {
             int modifiers = ctClass.getModifiers();
             if (Modifier.isFinal(modifiers)) {
                 ctClass.setModifiers(modifiers & ~Modifier.FINAL);
             }
 
-            if (ctClass.isInterface()) return;
-
-            classHandler.instrument(ctClass);
+            if (ctClass.isInterface()) return null;
 
+            if (emitBytecode) {
+                if (bytecodeInstrumenter == null) {
+                    bytecodeInstrumenter = new BytecodeInstrumenter(classPool);
+                }
+                bytecodeInstrumenter.prepare(ctClass);
+            }
+            addShadowGuard(ctClass);
             fixConstructors(ctClass);
             fixMethods(ctClass);
 
+            classHandler.instrument(ctClass);
+
             try {
-                classCache.addClass(className, ctClass.toBytecode());
+                return ctClass.toBytecode();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
+        return null;
     }
 
     private boolean classHasFromAndroidEquivalent(String className) {
@@ -176,18 +279,18 @@ public class AndroidTranslator implements Translator {
         }
     }
 
-    private void addBypassShadowField(CtClass ctClass, String fieldName) {
+    private void addShadowGuard(CtClass ctClass) throws CannotCompileException {
         try {
-            try {
-                ctClass.getField(fieldName);
-            } catch (NotFoundException e) {
-                CtField field = new CtField(CtClass.booleanType, fieldName, ctClass);
-                field.setModifiers(java.lang.reflect.Modifier.PUBLIC | java.lang.reflect.Modifier.STATIC);
-                ctClass.addField(field);
-            }
-        } catch (CannotCompileException e) {
-            throw new RuntimeException(e);
+            ctClass.getDeclaredField(HAS_SHADOW_FIELD_NAME);
+        } catch (NotFoundException e) {
+            CtField field = new CtField(CtClass.booleanType, HAS_SHADOW_FIELD_NAME, ctClass);
+            field.setModifiers(java.lang.reflect.Modifier.PUBLIC | java.lang.reflect.Modifier.STATIC);
+            ctClass.addField(field);
         }
+
+        CtConstructor classInitializer = ctClass.makeClassInitializer();
+        classInitializer.insertBefore(RobolectricInternals.class.getName() + ".classInitialized(" + ctClass.getName() + ".class);");
+        classInitializer.insertAfter(RobolectricInternals.class.getName() + ".classInitializationFinished(" + ctClass.getName() + ".class);");
     }
 
     private void fixConstructors(CtClass ctClass) throws CannotCompileException, NotFoundException {
@@ -206,12 +309,20 @@ public class AndroidTranslator implements Translator {
         }
 
         if (!hasDefault) {
+            if (emitBytecode) {
+                ctClass.addConstructor(bytecodeInstrumenter.makeDefaultConstructor(ctClass));
+                return;
+            }
             String methodBody = generateConstructorBody(ctClass, new CtClass[0]);
             ctClass.addConstructor(CtNewConstructor.make(new CtClass[0], new CtClass[0], "{\n" + methodBody + "}\n", ctClass));
         }
     }
 
     private boolean fixConstructor(CtClass ctClass, boolean needsDefault, CtConstructor ctConstructor) throws NotFoundException, CannotCompileException {
+        if (emitBytecode) {
+            bytecodeInstrumenter.setConstructorBody(ctClass, ctConstructor);
+            return needsDefault;
+        }
         String methodBody = generateConstructorBody(ctClass, ctConstructor.getParameterTypes());
         ctConstructor.setBody("{\n" + methodBody + "}\n");
         return needsDefault;
@@ -290,6 +401,21 @@ public class AndroidTranslator implements Translator {
 //            }
 
             boolean isStatic = Modifier.isStatic(originalModifiers);
+            if (emitBytecode) {
+                if (!wasFoundInClass) {
+                    if (wasDeclaredInClass) {
+                        bytecodeInstrumenter.insertPrologue(ctClass, ctMethod, isStatic, true);
+                    } else {
+                        ctClass.addMethod(bytecodeInstrumenter.makeMethodCallingSuper(ctClass, ctMethod, newModifiers));
+                    }
+                } else if (wasAbstract || wasNative) {
+                    bytecodeInstrumenter.setDefaultBody(ctClass, ctMethod, isStatic, wasAbstract);
+                } else {
+                    bytecodeInstrumenter.insertPrologue(ctClass, ctMethod, isStatic, false);
+                }
+                return;
+            }
+
             String methodBody = generateMethodBody(ctClass, ctMethod, wasNative, wasAbstract, returnCtClass, returnType, isStatic, !wasFoundInClass);
 
             if (!wasFoundInClass) {
@@ -364,6 +490,12 @@ public class AndroidTranslator implements Translator {
         buf.append(isStatic ? className + ".class" : "this");
         buf.append(")) {\n");
 
+        buf.append("if (");
+        buf.append(className);
+        buf.append(".");
+        buf.append(HAS_SHADOW_FIELD_NAME);
+        buf.append(") {\n");
+
         if (!returnsVoid) {
             buf.append("Object x = ");
         }
@@ -381,8 +513,12 @@ public class AndroidTranslator implements Translator {
         buf.append(", ");
 
         appendParamTypeArray(buf, ctMethod);
-        buf.append(", ");
-        appendParamArray(buf, ctMethod);
+        if (hasSpecializedEntryPoint(ctMethod)) {
+            appendParamList(buf, ctMethod);
+        } else {
+            buf.append(", ");
+            appendParamArray(buf, ctMethod);
+        }
 
         buf.append(")");
         buf.append(";\n");
@@ -393,6 +529,10 @@ public class AndroidTranslator implements Translator {
             buf.append(") x)");
             buf.append(returnType.unboxString());
             buf.append(";\n");
+        }
+        buf.append("}\n");
+
+        if (!returnsVoid) {
             if (shouldGenerateCallToSuper) {
                 buf.append(generateCallToSuper(ctMethod.getName(), ctMethod.getParameterTypes()));
             } else {
@@ -411,19 +551,38 @@ public class AndroidTranslator implements Translator {
     }
 
     private void appendParamTypeArray(StringBuilder buf, CtMethod ctMethod) throws NotFoundException {
-        CtClass[] parameterTypes = ctMethod.getParameterTypes();
-        if (parameterTypes.length == 0) {
-            buf.append("new String[0]");
-        } else {
-            buf.append("new String[] {");
-            for (int i = 0; i < parameterTypes.length; i++) {
-                if (i > 0) buf.append(", ");
-                buf.append("\"");
-                CtClass parameterType = parameterTypes[i];
-                buf.append(parameterType.getName());
-                buf.append("\"");
-            }
-            buf.append("}");
+        buf.append(RobolectricInternals.class.getName());
+        buf.append(".paramTypes(\"");
+        buf.append(paramTypesString(ctMethod.getParameterTypes()));
+        buf.append("\")");
+    }
+
+    static String paramTypesString(CtClass[] parameterTypes) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) buf.append(",");
+            CtClass parameterType = parameterTypes[i];
+            buf.append(parameterType.getName());
+        }
+        return buf.toString();
+    }
+
+    private boolean hasSpecializedEntryPoint(CtMethod ctMethod) throws NotFoundException {
+        return hasSpecializedEntryPoint(ctMethod.getParameterTypes());
+    }
+
+    static boolean hasSpecializedEntryPoint(CtClass[] parameterTypes) {
+        Type[] types = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            types[i] = Type.find(parameterTypes[i]);
+        }
+        return Type.hasSpecializedEntryPoint(types);
+    }
+
+    private void appendParamList(StringBuilder buf, CtMethod ctMethod) throws NotFoundException {
+        int parameterCount = ctMethod.getParameterTypes().length;
+        for (int i = 0; i < parameterCount; i++) {
+            buf.append(", $").append(i + 1);
         }
     }
 
@@ -0,0 +1,134 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.LoaderClassPath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Instruments the classes a previous run loaded, as recorded in its {@link ClassLoadTrace}, on background threads and
+ * adds them to the {@link ClassCache}. This runs while JUnit is still getting started, so by the time the test asks
+ * for a class it is usually already waiting in the cache instead of having to be instrumented on the test thread.
+ *
+ * <p>Classes the loader gets to first are {@link #claim(String) claimed} and left to it.</p>
+ */
+public class BackgroundInstrumenter {
+    /**
+     * System property giving the number of background threads; 0 turns pre-instrumentation off.
+     */
+    public static final String THREADS_PROPERTY = "robolectric.preInstrumentThreads";
+
+    // marks classes the loader got to first
+    private static final CountDownLatch CLAIMED = new CountDownLatch(0);
+
+    private final ClassHandler classHandler;
+    private final ClassCache classCache;
+    private final ArrayList<String> customClassNames;
+    private final ClassLoader classLoader;
+    private final ConcurrentHashMap<String, CountDownLatch> claims = new ConcurrentHashMap<String, CountDownLatch>();
+    private ExecutorService executorService;
+
+    public static int defaultThreadCount() {
+        // leave a processor for the tests themselves
+        return Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * @param classLoader where the original classes are read from
+     */
+    public BackgroundInstrumenter(ClassHandler classHandler, ClassCache classCache, ArrayList<String> customClassNames, ClassLoader classLoader) {
+        this.classHandler = classHandler;
+        this.classCache = classCache;
+        this.customClassNames = customClassNames;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Starts instrumenting {@code classNames} in order, split between {@code threadCount} daemon threads.
+     */
+    public synchronized void start(List<String> classNames, int threadCount) {
+        if (classNames.isEmpty() || threadCount < 1 || executorService != null) {
+            return;
+        }
+
+        executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "robolectric-background-instrumenter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (int i = 0; i < threadCount; i++) {
+            List<String> share = new ArrayList<String>();
+            for (int j = i; j < classNames.size(); j += threadCount) {
+                share.add(classNames.get(j));
+            }
+            executorService.execute(new Worker(share));
+        }
+        executorService.shutdown();
+    }
+
+    /**
+     * Tells the background threads the class is being loaded, so they needn't bother with it. If one of them is
+     * already instrumenting it, waits for it to finish, after which the class will be in the cache.
+     */
+    public void claim(String className) {
+        CountDownLatch instrumented = claims.putIfAbsent(className, CLAIMED);
+        if (instrumented != null) {
+            try {
+                instrumented.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final List<String> classNames;
+
+        Worker(List<String> classNames) {
+            this.classNames = classNames;
+        }
+
+        @Override public void run() {
+            // Javassist's ClassPool isn't thread safe, so each thread has its own pool and translator
+            BoundedClassPool classPool = new BoundedClassPool();
+            classPool.appendClassPath(new LoaderClassPath(classLoader));
+            AndroidTranslator androidTranslator = new AndroidTranslator(classHandler, classCache, customClassNames);
+
+            for (String className : classNames) {
+                if (Thread.currentThread().isInterrupted()) return;
+                CountDownLatch instrumented = new CountDownLatch(1);
+                if (claims.putIfAbsent(className, instrumented) != null) continue;
+
+                try {
+                    // a class edited since the last run still has entries, just none for its current bytes
+                    byte[] originalClassBytes = ClassCache.readOriginalClassBytes(classPool, className);
+                    if (originalClassBytes == null || classCache.hasClassBytesFor(className, originalClassBytes)) continue;
+
+                    byte[] classBytes = androidTranslator.instrumentClass(classPool, className);
+                    if (classBytes != null) {
+                        classCache.addClass(className, originalClassBytes, classBytes);
+                    }
+                    classPool.classDefined(className);
+                } catch (Exception e) {
+                    // the loader will run into the same problem when it gets to the class, and fail there
+                    System.err.println("WARNING: couldn't instrument " + className + " in the background: " + e);
+                } finally {
+                    instrumented.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A ClassPool which doesn't hold on to every CtClass it has parsed. Javassist keeps each CtClass for the life of the
+ * pool, which over a large test suite adds up to hundreds of megabytes of class metadata that is never looked at again.
+ *
+ * <p>Classes which haven't been changed can always be parsed again, so only the {@code maxUnmodifiedClasses} most
+ * recently used of them are kept. Changed classes have to stay, since instrumenting a subclass depends on the
+ * changes made to its superclass (e.g. the added no-arg constructor and shadow field); once such a class has been
+ * defined, its method bodies are pruned, leaving only what is needed to compile against it.</p>
+ */
+public class BoundedClassPool extends ClassPool {
+    /**
+     * System property giving the number of unmodified classes to keep parsed.
+     */
+    public static final String SIZE_PROPERTY = "robolectric.classPoolSize";
+
+    /**
+     * System property which, when true, prints how many classes the pool holds when the JVM exits.
+     */
+    public static final String REPORT_USAGE_PROPERTY = "robolectric.reportClassPoolUsage";
+
+    private static final int DEFAULT_SIZE = 500;
+
+    private final Map<String, CtClass> recentlyUsed;
+    private final Map<String, CtClass> modified = new HashMap<String, CtClass>();
+    private int evictions;
+
+    public static int defaultSize() {
+        return Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+    }
+
+    public BoundedClassPool() {
+        this(defaultSize());
+    }
+
+    public BoundedClassPool(final int maxUnmodifiedClasses) {
+        recentlyUsed = new LinkedHashMap<String, CtClass>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, CtClass> eldest) {
+                if (size() <= maxUnmodifiedClasses) return false;
+
+                CtClass ctClass = eldest.getValue();
+                if (ctClass.isModified()) {
+                    modified.put(eldest.getKey(), ctClass);
+                } else {
+                    evictions++;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Called once the class has been turned into bytecode and defined, after which it won't be changed again.
+     */
+    public synchronized void classDefined(String className) {
+        CtClass ctClass = getCached(className);
+        if (ctClass != null && ctClass.isModified()) {
+            ctClass.prune();
+        }
+    }
+
+    @Override protected synchronized CtClass getCached(String className) {
+        CtClass ctClass = super.getCached(className); // primitive types are put there by the ClassPool constructor
+        if (ctClass == null) ctClass = recentlyUsed.get(className);
+        if (ctClass == null) ctClass = modified.get(className);
+        return ctClass;
+    }
+
+    @Override protected synchronized void cacheCtClass(String className, CtClass ctClass, boolean dynamic) {
+        recentlyUsed.put(className, ctClass);
+    }
+
+    @Override protected synchronized CtClass removeCached(String className) {
+        CtClass ctClass = recentlyUsed.remove(className);
+        if (ctClass == null) ctClass = modified.remove(className);
+        if (ctClass == null) ctClass = super.removeCached(className);
+        return ctClass;
+    }
+
+    public synchronized int getHeldClassCount() {
+        return recentlyUsed.size() + modified.size();
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized String describeUsage() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        int modifiedCount = modified.size();
+        for (CtClass ctClass : recentlyUsed.values()) {
+            if (ctClass.isModified()) modifiedCount++;
+        }
+        return "Robolectric class pool: " + getHeldClassCount() + " classes held (" + modifiedCount + " modified), "
+                + evictions + " evicted, " + (usedHeap / (1024 * 1024)) + "MB of heap in use";
+    }
+
+    /**
+     * Prints {@link #describeUsage()} when the JVM exits if {@link #REPORT_USAGE_PROPERTY} is set.
+     */
+    public void reportUsageOnExit() {
+        if (Boolean.getBoolean(REPORT_USAGE_PROPERTY)) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() {
+                    System.out.println(describeUsage());
+                }
+            });
+        }
+    }
+}
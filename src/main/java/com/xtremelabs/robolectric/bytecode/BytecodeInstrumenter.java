@@ -0,0 +1,274 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+/**
+ * Emits the instrumentation {@link AndroidTranslator} adds to methods and constructors directly as bytecode, instead
+ * of generating Java source and having Javassist compile it. The instructions are the same ones the compiler
+ * produces for the source templates in {@link AndroidTranslator#generateMethodBody}, so classes behave identically
+ * whichever way they were instrumented.
+ */
+class BytecodeInstrumenter {
+    private static final String ROBOLECTRIC_INTERNALS = RobolectricInternals.class.getName();
+    private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+
+    private final ClassPool classPool;
+
+    BytecodeInstrumenter(ClassPool classPool) {
+        this.classPool = classPool;
+    }
+
+    /**
+     * Must be called before instrumenting any of the members of {@code ctClass}: class literals are loaded with
+     * {@code ldc}, which needs at least a Java 5 class file.
+     */
+    void prepare(CtClass ctClass) {
+        ClassFile classFile = ctClass.getClassFile();
+        if (classFile.getMajorVersion() < ClassFile.JAVA_5) {
+            classFile.setMajorVersion(ClassFile.JAVA_5);
+            classFile.setMinorVersion(0);
+        }
+    }
+
+    /**
+     * Replaces the body of {@code ctConstructor} with a call to the superclass' default constructor followed by
+     * the usual method prologue.
+     */
+    void setConstructorBody(CtClass ctClass, CtConstructor ctConstructor) throws NotFoundException, CannotCompileException {
+        CtClass[] paramTypes = ctConstructor.getParameterTypes();
+        MethodInfo methodInfo = ctConstructor.getMethodInfo();
+
+        Bytecode bytecode = new Bytecode(methodInfo.getConstPool(), 0, localsSize(false, paramTypes));
+        bytecode.addAload(0);
+        bytecode.addInvokespecial(ctClass.getSuperclass(), MethodInfo.nameInit, "()V");
+        addPrologue(bytecode, ctClass, MethodInfo.nameInit, paramTypes, CtClass.voidType, false, false);
+        bytecode.addOpcode(Opcode.RETURN);
+
+        setCode(ctClass, methodInfo, bytecode);
+    }
+
+    CtConstructor makeDefaultConstructor(CtClass ctClass) throws NotFoundException, CannotCompileException {
+        CtConstructor ctConstructor = new CtConstructor(new CtClass[0], ctClass);
+        setConstructorBody(ctClass, ctConstructor);
+        return ctConstructor;
+    }
+
+    /**
+     * Inserts the method prologue ahead of the existing body of {@code ctMethod}.
+     */
+    void insertPrologue(CtClass ctClass, CtMethod ctMethod, boolean isStatic, boolean shouldGenerateCallToSuper) throws NotFoundException, CannotCompileException {
+        MethodInfo methodInfo = ctMethod.getMethodInfo();
+        CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+
+        Bytecode bytecode = new Bytecode(methodInfo.getConstPool());
+        addPrologue(bytecode, ctClass, ctMethod.getName(), ctMethod.getParameterTypes(), ctMethod.getReturnType(), isStatic, shouldGenerateCallToSuper);
+
+        try {
+            CodeIterator iterator = codeAttribute.iterator();
+            iterator.insertEx(bytecode.get());
+            codeAttribute.setMaxStack(codeAttribute.computeMaxStack());
+            methodInfo.rebuildStackMapIf6(classPool, ctClass.getClassFile());
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * Gives a native or abstract method a body: the method prologue for native methods, nothing for abstract ones,
+     * followed by returning the default value for its return type.
+     */
+    void setDefaultBody(CtClass ctClass, CtMethod ctMethod, boolean isStatic, boolean wasAbstract) throws NotFoundException, CannotCompileException {
+        CtClass[] paramTypes = ctMethod.getParameterTypes();
+        CtClass returnType = ctMethod.getReturnType();
+        MethodInfo methodInfo = ctMethod.getMethodInfo();
+
+        Bytecode bytecode = new Bytecode(methodInfo.getConstPool(), 0, localsSize(isStatic, paramTypes));
+        if (!wasAbstract) {
+            addPrologue(bytecode, ctClass, ctMethod.getName(), paramTypes, returnType, isStatic, false);
+        }
+        addDefaultReturn(bytecode, returnType);
+
+        setCode(ctClass, methodInfo, bytecode);
+        ctMethod.setModifiers(Modifier.clear(Modifier.clear(ctMethod.getModifiers(), Modifier.ABSTRACT), Modifier.NATIVE));
+    }
+
+    /**
+     * Makes an override of an inherited method which runs the method prologue and then calls the superclass'
+     * implementation.
+     */
+    CtMethod makeMethodCallingSuper(CtClass ctClass, CtMethod inheritedMethod, int modifiers) throws NotFoundException, CannotCompileException {
+        CtClass[] paramTypes = inheritedMethod.getParameterTypes();
+        CtClass returnType = inheritedMethod.getReturnType();
+        String methodName = inheritedMethod.getName();
+
+        CtMethod ctMethod = new CtMethod(returnType, methodName, paramTypes, ctClass);
+        ctMethod.setExceptionTypes(inheritedMethod.getExceptionTypes());
+        MethodInfo methodInfo = ctMethod.getMethodInfo();
+
+        Bytecode bytecode = new Bytecode(methodInfo.getConstPool(), 0, localsSize(false, paramTypes));
+        addPrologue(bytecode, ctClass, methodName, paramTypes, returnType, false, true);
+        addCallToSuper(bytecode, ctClass, methodName, paramTypes, returnType);
+
+        setCode(ctClass, methodInfo, bytecode);
+        ctMethod.setModifiers(modifiers);
+        return ctMethod;
+    }
+
+    /**
+     * Emits:
+     * <pre>
+     * if (!RobolectricInternals.shouldCallDirectly(this | C.class)) {
+     *   if (C.__hasShadow__) {
+     *     Object x = RobolectricInternals.methodInvoked(C.class, "name", this | null, RobolectricInternals.paramTypes("..."), args);
+     *     if (x != null) return ((T) x).unbox();
+     *   }
+     *   return default | return super.name(...);
+     * }
+     * </pre>
+     */
+    private void addPrologue(Bytecode bytecode, CtClass ctClass, String methodName, CtClass[] paramTypes, CtClass returnCtClass, boolean isStatic, boolean shouldGenerateCallToSuper) throws NotFoundException {
+        Type returnType = Type.find(returnCtClass);
+        int firstParamSlot = isStatic ? 0 : 1;
+
+        addThisOrClass(bytecode, ctClass, isStatic);
+        bytecode.addInvokestatic(ROBOLECTRIC_INTERNALS, "shouldCallDirectly", "(" + OBJECT_DESCRIPTOR + ")Z");
+        int callDirectlyBranch = addBranch(bytecode, Opcode.IFNE);
+
+        bytecode.addGetstatic(ctClass, AndroidTranslator.HAS_SHADOW_FIELD_NAME, "Z");
+        int noShadowBranch = addBranch(bytecode, Opcode.IFEQ);
+
+        addClass(bytecode, ctClass);
+        bytecode.addLdc(methodName);
+        if (isStatic) {
+            bytecode.addOpcode(Opcode.ACONST_NULL);
+        } else {
+            bytecode.addAload(0);
+        }
+        bytecode.addLdc(AndroidTranslator.paramTypesString(paramTypes));
+        bytecode.addInvokestatic(ROBOLECTRIC_INTERNALS, "paramTypes", "(Ljava/lang/String;)[Ljava/lang/String;");
+
+        StringBuilder descriptor = new StringBuilder("(Ljava/lang/Class;Ljava/lang/String;" + OBJECT_DESCRIPTOR + "[Ljava/lang/String;");
+        if (AndroidTranslator.hasSpecializedEntryPoint(paramTypes)) {
+            bytecode.addLoadParameters(paramTypes, firstParamSlot);
+            for (CtClass paramType : paramTypes) {
+                descriptor.append(Descriptor.of(paramType));
+            }
+        } else {
+            addParamArray(bytecode, paramTypes, firstParamSlot);
+            descriptor.append("[" + OBJECT_DESCRIPTOR);
+        }
+        descriptor.append(")" + OBJECT_DESCRIPTOR);
+        bytecode.addInvokestatic(ROBOLECTRIC_INTERNALS, "methodInvoked", descriptor.toString());
+
+        if (returnType.isVoid()) {
+            bytecode.addOpcode(Opcode.POP);
+        } else {
+            bytecode.addOpcode(Opcode.DUP);
+            int nullBranch = addBranch(bytecode, Opcode.IFNULL);
+            if (returnCtClass.isPrimitive()) {
+                String wrapperClassName = returnType.nonPrimitiveClassName(returnCtClass);
+                bytecode.addCheckcast(wrapperClassName);
+                String unboxMethodName = returnType.unboxString().substring(1, returnType.unboxString().indexOf('('));
+                bytecode.addInvokevirtual(wrapperClassName, unboxMethodName, "()" + Descriptor.of(returnCtClass));
+            } else {
+                bytecode.addCheckcast(returnCtClass);
+            }
+            bytecode.addReturn(returnCtClass);
+            setBranchTarget(bytecode, nullBranch);
+            bytecode.addOpcode(Opcode.POP);
+        }
+        setBranchTarget(bytecode, noShadowBranch);
+
+        if (!returnType.isVoid() && shouldGenerateCallToSuper) {
+            addCallToSuper(bytecode, ctClass, methodName, paramTypes, returnCtClass);
+        } else {
+            addDefaultReturn(bytecode, returnCtClass);
+        }
+        setBranchTarget(bytecode, callDirectlyBranch);
+    }
+
+    private void addParamArray(Bytecode bytecode, CtClass[] paramTypes, int firstParamSlot) {
+        bytecode.addIconst(paramTypes.length);
+        bytecode.addAnewarray("java.lang.Object");
+        int slot = firstParamSlot;
+        for (int i = 0; i < paramTypes.length; i++) {
+            CtClass paramType = paramTypes[i];
+            bytecode.addOpcode(Opcode.DUP);
+            bytecode.addIconst(i);
+            slot += bytecode.addLoad(slot, paramType);
+            String autoboxParamDescriptor = paramType.isPrimitive() ? Descriptor.of(paramType) : OBJECT_DESCRIPTOR;
+            bytecode.addInvokestatic(ROBOLECTRIC_INTERNALS, "autobox", "(" + autoboxParamDescriptor + ")" + OBJECT_DESCRIPTOR);
+            bytecode.addOpcode(Opcode.AASTORE);
+        }
+    }
+
+    private void addCallToSuper(Bytecode bytecode, CtClass ctClass, String methodName, CtClass[] paramTypes, CtClass returnType) throws NotFoundException {
+        bytecode.addAload(0);
+        bytecode.addLoadParameters(paramTypes, 1);
+        bytecode.addInvokespecial(ctClass.getSuperclass(), methodName, Descriptor.ofMethod(returnType, paramTypes));
+        bytecode.addReturn(returnType);
+    }
+
+    private void addDefaultReturn(Bytecode bytecode, CtClass returnType) {
+        if (returnType != CtClass.voidType) {
+            bytecode.addConstZero(returnType);
+        }
+        bytecode.addReturn(returnType);
+    }
+
+    private void addThisOrClass(Bytecode bytecode, CtClass ctClass, boolean isStatic) {
+        if (isStatic) {
+            addClass(bytecode, ctClass);
+        } else {
+            bytecode.addAload(0);
+        }
+    }
+
+    private void addClass(Bytecode bytecode, CtClass ctClass) {
+        bytecode.addLdc(bytecode.getConstPool().addClassInfo(ctClass));
+    }
+
+    private int addBranch(Bytecode bytecode, int opcode) {
+        int branchPc = bytecode.currentPc();
+        bytecode.addOpcode(opcode);
+        bytecode.addIndex(0);
+        return branchPc;
+    }
+
+    private void setBranchTarget(Bytecode bytecode, int branchPc) {
+        bytecode.write16bit(branchPc + 1, bytecode.currentPc() - branchPc);
+    }
+
+    private void setCode(CtClass ctClass, MethodInfo methodInfo, Bytecode bytecode) throws CannotCompileException {
+        CodeAttribute codeAttribute = bytecode.toCodeAttribute();
+        try {
+            codeAttribute.setMaxStack(codeAttribute.computeMaxStack());
+            methodInfo.setCodeAttribute(codeAttribute);
+            methodInfo.rebuildStackMapIf6(classPool, ctClass.getClassFile());
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    private int localsSize(boolean isStatic, CtClass[] paramTypes) {
+        int size = isStatic ? 0 : 1;
+        for (CtClass paramType : paramTypes) {
+            size += paramType == CtClass.longType || paramType == CtClass.doubleType ? 2 : 1;
+        }
+        return size;
+    }
+}
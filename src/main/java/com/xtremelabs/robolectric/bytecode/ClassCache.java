@@ -1,64 +1,174 @@
 package com.xtremelabs.robolectric.bytecode;
 
+import javassist.ClassPool;
+
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
 
+/**
+ * Keeps instrumented classes on disk between runs, and shares them between JVMs running at the same time.
+ *
+ * <p>Entries are keyed by the class name plus a digest of the original class bytes and the instrumentation
+ * configuration, so a cached class is only used while it was instrumented from the very same input. The cache file
+ * is a sequence of records which is only ever appended to; at startup just the record headers are read, and class
+ * bytes are read from a memory mapping of the file when a class is actually loaded. Records written by other
+ * versions of {@link AndroidTranslator}, and all but the newest record of each class, e.g. the ones left behind as
+ * the class is edited, are dropped once they make up most of the file.</p>
+ *
+ * <p>Several JVMs, e.g. parallel surefire forks or the modules of a multi-module build pointed at the same
+ * {@link #CACHE_DIR_PROPERTY}, can use one cache file: records are appended while holding an exclusive lock on the
+ * file and the index is read while holding a shared one, so no JVM ever sees a partly written record. Dropping
+ * stale records writes a new file and renames it over the old one, so a file other JVMs have mapped never changes
+ * underneath them.</p>
+ *
+ * <p>Record layout: {@code int cacheVersion, UTF className, byte[20] key, int length, byte[length] classBytes}.</p>
+ */
 public class ClassCache {
-    private static final Attributes.Name VERSION_ATTRIBUTE = new Attributes.Name("version");
+    /**
+     * System property naming the directory the cache file is kept in, {@code tmp} by default. Point it at a
+     * directory shared by all builds, e.g. {@code ~/.robolectric}, to let them reuse each other's classes.
+     */
+    public static final String CACHE_DIR_PROPERTY = "robolectric.cacheDir";
+
+    /**
+     * System property which, when {@code true}, has each JVM print its cache hit rate on exit.
+     */
+    public static final String REPORT_HIT_RATE_PROPERTY = "robolectric.reportCacheHitRate";
+
+    private static final String CACHE_FILE_NAME = "cached-robolectric-classes.cache";
+    private static final int MAGIC = 0x52424343;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int KEY_LENGTH = 20;
+    private static final int MAX_RECORD_HEADER_SIZE = 4 + 2 + 65535 + KEY_LENGTH + 4;
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    /**
+     * {@link FileLock}s are held on behalf of the whole JVM, so ClassCaches sharing a file in the same JVM must take
+     * turns locking it.
+     */
+    private static final Object FILE_LOCKING = new Object();
+
+    private final File cacheFile;
+    private final int expectedCacheVersion;
+    private final byte[] configurationBytes;
+    private final MessageDigest messageDigest;
 
-    private Map<String, byte[]> cachedClasses = new HashMap<String, byte[]>();
+    private final Map<String, List<Entry>> entries = new HashMap<String, List<Entry>>();
+    private final List<Entry> pendingEntries = new ArrayList<Entry>();
+    private int pendingBytes;
+    private long liveBytes;
+    private long staleBytes;
+    private ByteBuffer mappedCache;
+    // the cache file as it was when the index was last read, so a miss only reads it again if it has changed since
+    private long indexedFileLength = -1;
+    private long indexedFileLastModified = -1;
     private boolean startedWriting = false;
+    private int hits;
+    private int misses;
+
+    public static String defaultCachePath() {
+        return new File(System.getProperty(CACHE_DIR_PROPERTY, "tmp"), CACHE_FILE_NAME).getPath();
+    }
 
     public ClassCache(String classCachePath, final int expectedCacheVersion) {
-        final File cacheJarFile = new File(classCachePath);
-        JarFile cacheFile;
+        this(classCachePath, expectedCacheVersion, "");
+    }
+
+    /**
+     * @param configuration describes anything besides the original class bytes and {@code expectedCacheVersion}
+     *                      which affects how classes are instrumented, e.g. the list of custom instrumented classes
+     */
+    public ClassCache(String classCachePath, final int expectedCacheVersion, String configuration) {
+        this.cacheFile = new File(classCachePath);
+        this.expectedCacheVersion = expectedCacheVersion;
+        this.configurationBytes = utf8(configuration);
         try {
-            cacheFile = new JarFile(cacheJarFile);
-            int cacheVersion = 0;
-            Manifest manifest = cacheFile.getManifest();
-            if (manifest != null) {
-                Attributes attributes = manifest.getEntries().get("robolectric");
-                if (attributes != null) {
-                    String cacheVersionStr = (String) attributes.get(VERSION_ATTRIBUTE);
-                    if (cacheVersionStr != null) {
-                        cacheVersion = Integer.parseInt(cacheVersionStr);
-                    }
-                }
-            }
-            if (cacheVersion != expectedCacheVersion) {
-                cacheJarFile.delete();
-            } else {
-                readEntries(cacheFile);
+            this.messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            readIndex();
+            if (staleBytes > liveBytes) {
+                dropStaleEntries();
             }
         } catch (IOException e) {
-            // no problem
+            // no problem, the classes will just be instrumented again
         }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override public void run() {
-                Manifest manifest = new Manifest();
-                Attributes attributes = new Attributes();
-                attributes.put(VERSION_ATTRIBUTE, String.valueOf(expectedCacheVersion));
-                manifest.getEntries().put("robolectric", attributes);
-
-                saveAllClassesToCache(cacheJarFile, manifest);
+                saveAllClassesToCache();
+                if (Boolean.getBoolean(REPORT_HIT_RATE_PROPERTY)) {
+                    System.out.println(describeHitRate());
+                }
             }
         });
     }
 
-    public byte[] getClassBytesFor(String name) {
-        return cachedClasses.get(name);
+    /**
+     * Cheap check whether the cache holds any entry for {@code className}, which doesn't require the original class
+     * bytes to be read.
+     */
+    public synchronized boolean hasEntriesFor(String className) {
+        return entries.containsKey(className);
+    }
+
+    /**
+     * Whether the cache holds the class as instrumented from {@code originalClassBytes} with the current
+     * configuration, without reading it or counting it as a hit.
+     */
+    public synchronized boolean hasClassBytesFor(String className, byte[] originalClassBytes) {
+        return entries.containsKey(className) && findEntry(className, keyFor(originalClassBytes)) != null;
+    }
+
+    /**
+     * @return the instrumented bytes cached for the class, if they were instrumented from {@code originalClassBytes}
+     *         with the current configuration, or null
+     */
+    public synchronized byte[] getClassBytesFor(String className, byte[] originalClassBytes) {
+        if (originalClassBytes == null || !entries.containsKey(className)) {
+            return null;
+        }
+
+        byte[] key = keyFor(originalClassBytes);
+        byte[] classBytes = read(findEntry(className, key));
+        if (classBytes == null && cacheFileChangedSinceIndexed()) {
+            // another JVM has added to or replaced the cache file since we read the index
+            try {
+                readIndex();
+                classBytes = read(findEntry(className, key));
+            } catch (IOException e) {
+                classBytes = null;
+            }
+        }
+
+        if (classBytes != null) {
+            hits++;
+        }
+        return classBytes;
     }
 
     public boolean isWriting() {
@@ -67,65 +177,442 @@ public class ClassCache {
         }
     }
 
-    public void addClass(String className, byte[] classBytes) {
-        cachedClasses.put(className, classBytes);
+    public synchronized void addClass(String className, byte[] originalClassBytes, byte[] classBytes) {
+        byte[] key = keyFor(originalClassBytes);
+        if (findEntry(className, key) != null) {
+            return; // instrumented concurrently, e.g. by a BackgroundInstrumenter
+        }
+
+        misses++;
+        Entry entry = new Entry(expectedCacheVersion, className, key, classBytes.length);
+        entry.pendingClassBytes = classBytes;
+        addEntry(entry);
+        pendingEntries.add(entry);
+        pendingBytes += classBytes.length;
+
+        if (pendingBytes > MAX_PENDING_BYTES) {
+            saveAllClassesToCache();
+        }
+    }
+
+    /**
+     * @return the number of classes this instance found in the cache
+     */
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return the number of classes which had to be instrumented and were added to the cache through this instance
+     */
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized String describeHitRate() {
+        int lookups = hits + misses;
+        return "Robolectric class cache " + cacheFile + ": " + hits + " hits, " + misses + " misses"
+                + (lookups == 0 ? "" : " (" + (100 * hits / lookups) + "% hit rate)");
+    }
+
+    /**
+     * Appends classes added since the last save to the cache file, and lets go of their bytes. Classes another JVM
+     * has added to the file in the meantime aren't written again.
+     */
+    protected void saveAllClassesToCache() {
+        synchronized (this) {
+            if (pendingEntries.isEmpty()) {
+                return;
+            }
+
+            startedWriting = true;
+            try {
+                appendPendingEntries();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                startedWriting = false;
+            }
+        }
     }
 
-    private void readEntries(JarFile cacheFile) {
-        Enumeration<JarEntry> entries = cacheFile.entries();
+    static byte[] readOriginalClassBytes(ClassPool classPool, String className) {
+        URL url = classPool.find(className);
+        if (url == null) {
+            return null;
+        }
         try {
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String className = entry.getName();
-                if (className.endsWith(".class")) {
-                    int classSize = (int) entry.getSize();
-                    InputStream inputStream = cacheFile.getInputStream(entry);
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream(classSize);
-                    int c;
-                    while ((c = inputStream.read()) != -1) {
-                        baos.write(c);
-                    }
-                    className = className.substring(0, className.indexOf(".class")).replace('/', '.');
-                    addClass(className, baos.toByteArray());
+            InputStream inputStream = url.openStream();
+            try {
+                return readFully(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean cacheFileChangedSinceIndexed() {
+        return cacheFile.length() != indexedFileLength || cacheFile.lastModified() != indexedFileLastModified;
+    }
+
+    private void rememberIndexedFile(FileChannel channel) throws IOException {
+        indexedFileLength = channel.size();
+        indexedFileLastModified = cacheFile.lastModified();
+    }
+
+    private void readIndex() throws IOException {
+        if (!cacheFile.exists()) {
+            indexedFileLength = 0;
+            indexedFileLastModified = 0;
+            return;
+        }
+
+        synchronized (FILE_LOCKING) {
+            RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+                try {
+                    readIndex(channel);
+                } finally {
+                    lock.release();
                 }
+            } finally {
+                file.close();
+            }
+        }
+    }
 
+    /**
+     * Rebuilds the index from the records in the file, keeping the entries which haven't been saved yet.
+     *
+     * @return the end of the last complete record, or 0 if the file isn't a cache file
+     */
+    private long readIndex(FileChannel channel) throws IOException {
+        entries.clear();
+        mappedCache = null;
+        liveBytes = 0;
+        staleBytes = 0;
+        for (Entry entry : pendingEntries) {
+            addEntry(entry);
+        }
+        rememberIndexedFile(channel);
+
+        Map<String, Entry> newestEntries = new HashMap<String, Entry>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+            return 0;
+        }
+
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer recordHeader = ByteBuffer.allocate(512);
+        while (position < size) {
+            Entry entry = readRecordHeader(channel, position, recordHeader);
+            if (entry == null || entry.offset + entry.length > size) {
+                // a record left incomplete by a crash, which the next append will overwrite
+                break;
             }
-        } catch (IOException e) {
-            // no problem, we didn't want those bytes that much anyway
+
+            addEntry(entry);
+            if (entry.cacheVersion == expectedCacheVersion) {
+                liveBytes += entry.length;
+                Entry olderEntry = newestEntries.put(entry.className, entry);
+                if (olderEntry != null) {
+                    // still usable until it's dropped, but only while the class is built from its older bytes
+                    olderEntry.superseded = true;
+                    liveBytes -= olderEntry.length;
+                    staleBytes += olderEntry.length;
+                }
+            } else {
+                staleBytes += entry.length;
+            }
+            position = entry.offset + entry.length;
         }
+        return position;
     }
 
-    protected void saveAllClassesToCache(File file, Manifest manifest) {
-        synchronized (this) {
-            startedWriting = true;
-    
-            if (cachedClasses.size() > 0) {
-                JarOutputStream jarOutputStream = null;
+    private Entry readRecordHeader(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        channel.read(buffer, position);
+        if (buffer.position() < 6) {
+            return null;
+        }
+        int utfLength = buffer.getShort(4) & 0xffff;
+        if (buffer.position() < 4 + 2 + utfLength + KEY_LENGTH + 4) {
+            if (buffer.capacity() >= MAX_RECORD_HEADER_SIZE) {
+                return null;
+            }
+            return readRecordHeader(channel, position, ByteBuffer.allocate(MAX_RECORD_HEADER_SIZE));
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+            int cacheVersion = in.readInt();
+            String className = in.readUTF();
+            byte[] key = new byte[KEY_LENGTH];
+            in.readFully(key);
+            Entry entry = new Entry(cacheVersion, className, key, in.readInt());
+            entry.offset = position + headerLength(className);
+            return entry;
+        } catch (UTFDataFormatException e) {
+            return null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void appendPendingEntries() throws IOException {
+        File cacheDir = cacheFile.getAbsoluteFile().getParentFile();
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+
+        synchronized (FILE_LOCKING) {
+            RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+            try {
+                FileChannel channel = file.getChannel();
+                FileLock lock = channel.lock();
                 try {
-                    File cacheJarDir = file.getParentFile();
-                    if (!cacheJarDir.exists()) {
-                        cacheJarDir.mkdirs();
+                    long endOfCache = readIndex(channel);
+                    dropPendingEntriesSavedElsewhere();
+
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream(pendingBytes + pendingEntries.size() * 128);
+                    DataOutputStream out = new DataOutputStream(buffer);
+                    long position = endOfCache;
+                    if (position == 0) {
+                        out.writeInt(MAGIC);
+                        out.writeInt(FORMAT_VERSION);
+                        position = HEADER_SIZE;
+                    }
+                    for (Entry entry : pendingEntries) {
+                        position = writeEntry(out, position, entry);
+                    }
+                    out.flush();
+
+                    if (channel.size() > endOfCache) {
+                        channel.truncate(endOfCache);
                     }
-    
-                    jarOutputStream = new JarOutputStream(new FileOutputStream(file), manifest);
-                    for (Map.Entry<String, byte[]> entry : cachedClasses.entrySet()) {
-                        String key = entry.getKey();
-                        jarOutputStream.putNextEntry(new JarEntry(key.replace('.', '/') + ".class"));
-                        jarOutputStream.write(entry.getValue());
-                        jarOutputStream.closeEntry();
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes, endOfCache + bytes.position());
                     }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                    // the index already has what was just written
+                    rememberIndexedFile(channel);
                 } finally {
-                    if (jarOutputStream != null) {
-                        try {
-                            jarOutputStream.close();
-                        } catch (IOException ignore) {
+                    lock.release();
+                }
+            } finally {
+                file.close();
+            }
+        }
+
+        pendingEntries.clear();
+        pendingBytes = 0;
+    }
+
+    private void dropPendingEntriesSavedElsewhere() {
+        for (Iterator<Entry> iterator = pendingEntries.iterator(); iterator.hasNext(); ) {
+            Entry pendingEntry = iterator.next();
+            List<Entry> classEntries = entries.get(pendingEntry.className);
+            for (Entry entry : classEntries) {
+                if (entry.pendingClassBytes == null && entry.cacheVersion == pendingEntry.cacheVersion
+                        && Arrays.equals(entry.key, pendingEntry.key)) {
+                    classEntries.remove(pendingEntry);
+                    iterator.remove();
+                    pendingBytes -= pendingEntry.length;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the current records to a new file and renames it over the cache file. Where a file other processes have
+     * open can't be replaced, the stale records stay until a later run manages to.
+     */
+    private void dropStaleEntries() throws IOException {
+        File compactedFile = new File(cacheFile.getPath() + "." + System.nanoTime() + ".tmp");
+        synchronized (FILE_LOCKING) {
+            RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+            try {
+                FileChannel channel = file.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    readIndex(channel);
+                    if (staleBytes > liveBytes) {
+                        writeCurrentEntries(compactedFile);
+                        if (!compactedFile.renameTo(cacheFile)) {
+                            compactedFile.delete();
                         }
                     }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                file.close();
+            }
+        }
+        readIndex();
+    }
+
+    private void writeCurrentEntries(File file) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        long position = HEADER_SIZE;
+        for (List<Entry> classEntries : entries.values()) {
+            for (Entry entry : classEntries) {
+                if (entry.cacheVersion == expectedCacheVersion && !entry.superseded) {
+                    entry.pendingClassBytes = read(entry);
+                    if (entry.pendingClassBytes != null) {
+                        position = writeEntry(out, position, entry);
+                    }
                 }
             }
-            startedWriting = false;
+        }
+        out.flush();
+
+        RandomAccessFile compacted = new RandomAccessFile(file, "rw");
+        try {
+            compacted.write(buffer.toByteArray());
+        } finally {
+            compacted.close();
+        }
+    }
+
+    private long writeEntry(DataOutputStream out, long position, Entry entry) throws IOException {
+        byte[] classBytes = entry.pendingClassBytes;
+        out.writeInt(entry.cacheVersion);
+        out.writeUTF(entry.className);
+        out.write(entry.key);
+        out.writeInt(classBytes.length);
+        entry.offset = position + headerLength(entry.className);
+        out.write(classBytes);
+        entry.pendingClassBytes = null;
+        return entry.offset + classBytes.length;
+    }
+
+    /**
+     * @return the class bytes for the entry, or null if the record at its offset in the cache file isn't the one the
+     *         entry was read from
+     */
+    private byte[] read(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        if (entry.pendingClassBytes != null) {
+            return entry.pendingClassBytes;
+        }
+
+        try {
+            if (mappedCache == null || mappedCache.capacity() < entry.offset + entry.length) {
+                RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+                try {
+                    if (file.length() < entry.offset + entry.length) {
+                        return null;
+                    }
+                    mappedCache = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                } finally {
+                    file.close();
+                }
+            }
+
+            byte[] expectedRecordHeader = recordHeaderFor(entry);
+            byte[] recordHeader = new byte[expectedRecordHeader.length];
+            ByteBuffer buffer = mappedCache.duplicate();
+            buffer.position((int) entry.offset - recordHeader.length);
+            buffer.get(recordHeader);
+            if (!Arrays.equals(recordHeader, expectedRecordHeader)) {
+                return null;
+            }
+
+            byte[] classBytes = new byte[entry.length];
+            buffer.get(classBytes);
+            return classBytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] recordHeaderFor(Entry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(entry.cacheVersion);
+        out.writeUTF(entry.className);
+        out.write(entry.key);
+        out.writeInt(entry.length);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private Entry findEntry(String className, byte[] key) {
+        List<Entry> classEntries = entries.get(className);
+        if (classEntries != null) {
+            for (Entry entry : classEntries) {
+                if (entry.cacheVersion == expectedCacheVersion && Arrays.equals(entry.key, key)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long headerLength(String className) {
+        return 4 + 2 + utf8(className).length + KEY_LENGTH + 4;
+    }
+
+    private void addEntry(Entry entry) {
+        List<Entry> classEntries = entries.get(entry.className);
+        if (classEntries == null) {
+            classEntries = new ArrayList<Entry>(1);
+            entries.put(entry.className, classEntries);
+        }
+        classEntries.add(entry);
+    }
+
+    private byte[] keyFor(byte[] originalClassBytes) {
+        messageDigest.reset();
+        messageDigest.update(configurationBytes);
+        messageDigest.update((byte) 0);
+        return messageDigest.digest(originalClassBytes);
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(inputStream.available() > 0 ? inputStream.available() : 4096);
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] utf8(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Entry {
+        final int cacheVersion;
+        final String className;
+        final byte[] key;
+        final int length;
+        long offset;
+        byte[] pendingClassBytes;
+        boolean superseded;
+
+        Entry(int cacheVersion, String className, byte[] key, int length) {
+            this.cacheVersion = cacheVersion;
+            this.className = className;
+            this.key = key;
+            this.length = length;
         }
     }
 }
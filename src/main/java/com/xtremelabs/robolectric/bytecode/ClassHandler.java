@@ -7,7 +7,35 @@ public interface ClassHandler {
 
     void beforeTest();
 
+    void beforeTest(ClassLoader classLoader);
+
     void afterTest();
 
+    /**
+     * Lets go of everything kept for the classes of {@code classLoader}, which won't run any more tests.
+     */
+    void forgetLoader(ClassLoader classLoader);
+
+    void classInitialized(Class clazz);
+
+    void classInitializationFinished(Class clazz);
+
     Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable;
+
+    /*
+     * Specialized entry points for common primitive signatures, which avoid allocating and boxing a parameter array.
+     * See Type#hasSpecializedEntryPoint(Type[]).
+     */
+
+    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes) throws Throwable;
+
+    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, int param) throws Throwable;
+
+    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, float param) throws Throwable;
+
+    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, boolean param) throws Throwable;
+
+    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, int param1, int param2) throws Throwable;
+
+    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, float param1, float param2) throws Throwable;
 }
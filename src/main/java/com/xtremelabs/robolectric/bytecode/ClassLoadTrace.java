@@ -0,0 +1,131 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The classes a {@link RobolectricClassLoader} instrumented during a run, in the order it needed them. The trace is
+ * saved next to the class cache when the JVM exits, so the next run can have a {@link BackgroundInstrumenter} prepare
+ * the same classes before they are asked for.
+ */
+public class ClassLoadTrace {
+    private static final String TRACE_FILE_NAME = "robolectric-class-load.trace";
+
+    private final File traceFile;
+    private List<String> previousRun;
+    private final Set<String> classNames = new LinkedHashSet<String>();
+
+    /**
+     * @return the trace kept alongside the cache at {@link ClassCache#defaultCachePath()}
+     */
+    public static ClassLoadTrace forDefaultCache() {
+        File cacheDir = new File(ClassCache.defaultCachePath()).getAbsoluteFile().getParentFile();
+        return new ClassLoadTrace(new File(cacheDir, TRACE_FILE_NAME));
+    }
+
+    public ClassLoadTrace(File traceFile) {
+        this.traceFile = traceFile;
+        this.previousRun = read(traceFile);
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override public void run() {
+                save();
+            }
+        });
+    }
+
+    /**
+     * @return the classes recorded by the last run to save this trace, in the order they were loaded
+     */
+    public synchronized List<String> getPreviousRun() {
+        return previousRun;
+    }
+
+    /**
+     * @return the classes recorded by the last run the first time it's called, after that an empty list, so only one
+     *         of the loaders sharing this trace instruments them ahead of time
+     */
+    public synchronized List<String> takePreviousRun() {
+        List<String> classNames = previousRun;
+        previousRun = new ArrayList<String>();
+        return classNames;
+    }
+
+    public synchronized void record(String className) {
+        classNames.add(className);
+    }
+
+    public synchronized List<String> getRecorded() {
+        return new ArrayList<String>(classNames);
+    }
+
+    /**
+     * Replaces the saved trace with the classes recorded by this run, unless it didn't instrument anything.
+     */
+    public synchronized void save() {
+        if (classNames.isEmpty()) {
+            return;
+        }
+
+        File dir = traceFile.getAbsoluteFile().getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        // written aside and renamed, so JVMs reading the trace never see half of one
+        File tmpFile = new File(dir, traceFile.getName() + "." + System.nanoTime() + ".tmp");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+            try {
+                for (String className : classNames) {
+                    writer.write(className);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            if (!tmpFile.renameTo(traceFile)) {
+                traceFile.delete();
+                tmpFile.renameTo(traceFile);
+            }
+        } catch (IOException e) {
+            // no problem, the next run just won't know what to instrument ahead of time
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    private static List<String> read(File traceFile) {
+        List<String> classNames = new ArrayList<String>();
+        if (!traceFile.exists()) {
+            return classNames;
+        }
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0) {
+                        classNames.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            classNames.clear();
+        }
+        return classNames;
+    }
+}
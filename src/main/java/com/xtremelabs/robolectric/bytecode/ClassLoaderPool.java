@@ -0,0 +1,114 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import com.xtremelabs.robolectric.util.Join;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Hands out one {@link RobolectricClassLoader} per instrumentation configuration, i.e. per class handler and set of
+ * custom instrumented class names, so test runners asking for the same configuration share a loader and its already
+ * instrumented classes instead of each starting from scratch. Loaders share the class cache in any case, so even a
+ * new configuration only has to instrument the classes no other configuration has.
+ *
+ * <p>The least recently used loaders are dropped once there are more than {@link #SIZE_PROPERTY} of them for each
+ * worker, and their class handler told to {@link ClassHandler#forgetLoader(ClassLoader) forget} them, so they can be
+ * garbage collected.</p>
+ *
+ * <p>Test classes run at the same time on different threads mustn't share a loader, since the loader holds their
+ * static state, e.g. {@code Robolectric.application}. Threads running tests in parallel each call
+ * {@link #setWorker(int)} with a different number, and are handed loaders of their own.</p>
+ */
+public class ClassLoaderPool {
+    /**
+     * System property giving the number of loaders to keep.
+     */
+    public static final String SIZE_PROPERTY = "robolectric.classLoaderPoolSize";
+
+    private static final int DEFAULT_SIZE = 4;
+
+    private static final Map<Key, RobolectricClassLoader> LOADERS = new LinkedHashMap<Key, RobolectricClassLoader>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, RobolectricClassLoader> eldest) {
+            if (size() <= Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE) * workerCount) {
+                return false;
+            }
+            release(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    };
+
+    private static final ThreadLocal<Integer> WORKER = new ThreadLocal<Integer>() {
+        @Override protected Integer initialValue() {
+            return 0;
+        }
+    };
+
+    private static int workerCount = 1;
+
+    /**
+     * Makes the current thread use loaders belonging to {@code worker}, which no other worker is given.
+     */
+    public static synchronized void setWorker(int worker) {
+        WORKER.set(worker);
+        workerCount = Math.max(workerCount, worker + 1);
+    }
+
+    /**
+     * @param customClassNames further class name prefixes to instrument, in any order; may be null
+     */
+    public static synchronized RobolectricClassLoader getLoader(ClassHandler classHandler, Collection<String> customClassNames) {
+        ArrayList<String> sortedClassNames = customClassNames == null
+                ? new ArrayList<String>() : new ArrayList<String>(new TreeSet<String>(customClassNames));
+        Key key = new Key(classHandler, Join.join(",", sortedClassNames), WORKER.get());
+
+        RobolectricClassLoader classLoader = LOADERS.get(key);
+        if (classLoader == null) {
+            classLoader = new RobolectricClassLoader(classHandler, sortedClassNames.isEmpty() ? null : sortedClassNames);
+            LOADERS.put(key, classLoader);
+        }
+        return classLoader;
+    }
+
+    static synchronized int size() {
+        return LOADERS.size();
+    }
+
+    static synchronized void clear() {
+        for (Map.Entry<Key, RobolectricClassLoader> entry : LOADERS.entrySet()) {
+            release(entry.getKey(), entry.getValue());
+        }
+        LOADERS.clear();
+        workerCount = 1;
+    }
+
+    private static void release(Key key, RobolectricClassLoader classLoader) {
+        classLoader.release();
+        key.classHandler.forgetLoader(classLoader);
+    }
+
+    private static class Key {
+        private final ClassHandler classHandler;
+        private final String configuration;
+        private final int worker;
+
+        Key(ClassHandler classHandler, String configuration, int worker) {
+            this.classHandler = classHandler;
+            this.configuration = configuration;
+            this.worker = worker;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return classHandler == key.classHandler && configuration.equals(key.configuration) && worker == key.worker;
+        }
+
+        @Override public int hashCode() {
+            return 31 * (31 * System.identityHashCode(classHandler) + configuration.hashCode()) + worker;
+        }
+    }
+}
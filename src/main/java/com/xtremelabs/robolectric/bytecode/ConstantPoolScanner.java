@@ -0,0 +1,181 @@
+package com.xtremelabs.robolectric.bytecode;
+
+/**
+ * Answers questions about a class file by reading its bytes directly, without building a CtClass. A class annotated
+ * with {@code @Instrument} always has the annotation's descriptor in its constant pool, so for most classes a quick
+ * look through the pool is enough to tell they aren't annotated; the class attributes only need to be read for the
+ * few which mention it.
+ */
+class ConstantPoolScanner {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+
+    private final byte[] classBytes;
+    private int[] utf8Offsets;
+    private int constantPoolEnd;
+
+    /**
+     * @param annotationDescriptor e.g. {@code "Lcom/xtremelabs/robolectric/internal/Instrument;"}
+     * @return true if the class itself is annotated with the annotation, or if the class file couldn't be read, in
+     *         which case the caller should find out the slow way
+     */
+    public static boolean isAnnotatedWith(byte[] classBytes, String annotationDescriptor) {
+        try {
+            ConstantPoolScanner scanner = new ConstantPoolScanner(classBytes);
+            int annotationIndex = scanner.indexOfUtf8(annotationDescriptor);
+            return annotationIndex != -1 && scanner.classAnnotationsInclude(annotationIndex);
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    private ConstantPoolScanner(byte[] classBytes) {
+        this.classBytes = classBytes;
+        readConstantPool();
+    }
+
+    private void readConstantPool() {
+        int count = readUnsignedShort(8);
+        utf8Offsets = new int[count];
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            int tag = classBytes[offset];
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8Offsets[i] = offset;
+                    offset += 3 + readUnsignedShort(offset + 1);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                    offset += 3;
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    offset += 4;
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    offset += 5;
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    offset += 9;
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown constant pool tag " + tag);
+            }
+        }
+        constantPoolEnd = offset;
+    }
+
+    private int indexOfUtf8(String value) {
+        for (int i = 1; i < utf8Offsets.length; i++) {
+            if (utf8Offsets[i] != 0 && utf8Equals(i, value)) return i;
+        }
+        return -1;
+    }
+
+    private boolean classAnnotationsInclude(int annotationIndex) {
+        int offset = constantPoolEnd + 6; // access flags, this class, superclass
+        offset += 2 + 2 * readUnsignedShort(offset); // interfaces
+        offset = skipMembers(offset); // fields
+        offset = skipMembers(offset); // methods
+
+        int attributeCount = readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            int nameIndex = readUnsignedShort(offset);
+            int length = readInt(offset + 2);
+            if (utf8Equals(nameIndex, "RuntimeVisibleAnnotations") || utf8Equals(nameIndex, "RuntimeInvisibleAnnotations")) {
+                int annotationOffset = offset + 6;
+                int annotationCount = readUnsignedShort(annotationOffset);
+                annotationOffset += 2;
+                for (int j = 0; j < annotationCount; j++) {
+                    if (readUnsignedShort(annotationOffset) == annotationIndex) return true;
+                    annotationOffset = skipAnnotation(annotationOffset);
+                }
+            }
+            offset += 6 + length;
+        }
+        return false;
+    }
+
+    private int skipMembers(int offset) {
+        int memberCount = readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < memberCount; i++) {
+            int attributeCount = readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                offset += 6 + readInt(offset + 2);
+            }
+        }
+        return offset;
+    }
+
+    private int skipAnnotation(int offset) {
+        int pairCount = readUnsignedShort(offset + 2);
+        offset += 4;
+        for (int i = 0; i < pairCount; i++) {
+            offset = skipElementValue(offset + 2);
+        }
+        return offset;
+    }
+
+    private int skipElementValue(int offset) {
+        char tag = (char) classBytes[offset];
+        switch (tag) {
+            case 'e':
+                return offset + 5;
+            case '@':
+                return skipAnnotation(offset + 1);
+            case '[':
+                int valueCount = readUnsignedShort(offset + 1);
+                offset += 3;
+                for (int i = 0; i < valueCount; i++) {
+                    offset = skipElementValue(offset);
+                }
+                return offset;
+            default: // a constant or class
+                return offset + 3;
+        }
+    }
+
+    private boolean utf8Equals(int index, String value) {
+        if (index <= 0 || index >= utf8Offsets.length || utf8Offsets[index] == 0) return false;
+
+        int offset = utf8Offsets[index];
+        int length = readUnsignedShort(offset + 1);
+        if (length != value.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (classBytes[offset + 3 + i] != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int readUnsignedShort(int offset) {
+        return ((classBytes[offset] & 0xff) << 8) | (classBytes[offset + 1] & 0xff);
+    }
+
+    private int readInt(int offset) {
+        return (readUnsignedShort(offset) << 16) | readUnsignedShort(offset + 2);
+    }
+}
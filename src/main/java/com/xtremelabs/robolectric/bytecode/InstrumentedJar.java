@@ -0,0 +1,138 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A jar of classes instrumented ahead of time by {@link AheadOfTimeInstrumenter}, which {@link RobolectricClassLoader}
+ * defines as they are without running them through Javassist.
+ *
+ * <p>The manifest records a digest of each class's original bytes, as {@link ClassCache} does, so a class is only taken
+ * from the jar while the class on the classpath is the one it was instrumented from; after an SDK or maps jar update
+ * the classes that changed are instrumented when they're loaded until the jar is rebuilt.</p>
+ */
+public class InstrumentedJar {
+    /**
+     * System property giving the path of a jar written by {@link AheadOfTimeInstrumenter}.
+     */
+    public static final String INSTRUMENTED_JAR_PROPERTY = "robolectric.instrumentedJar";
+
+    static final Attributes.Name CACHE_VERSION_ATTRIBUTE = new Attributes.Name("Robolectric-Cache-Version");
+    static final Attributes.Name INSTRUMENTATION_ATTRIBUTE = new Attributes.Name("Robolectric-Instrumentation");
+    static final Attributes.Name ORIGINAL_DIGEST_ATTRIBUTE = new Attributes.Name("Robolectric-Original-SHA1");
+
+    private final JarFile jarFile;
+    private final Manifest manifest;
+
+    /**
+     * @return the jar named by {@link #INSTRUMENTED_JAR_PROPERTY}, or null if there isn't one or it was instrumented
+     *         by a different version of {@link AndroidTranslator}, or with a different instrumentation backend
+     */
+    public static InstrumentedJar fromSystemProperty() {
+        String path = System.getProperty(INSTRUMENTED_JAR_PROPERTY);
+        if (path == null) {
+            return null;
+        }
+
+        try {
+            InstrumentedJar instrumentedJar = new InstrumentedJar(new File(path));
+            if (instrumentedJar.getCacheVersion() != AndroidTranslator.CACHE_VERSION) {
+                System.err.println("WARNING: ignoring " + path + ", it was instrumented by a different version of Robolectric");
+                instrumentedJar.close();
+                return null;
+            }
+            if (!AndroidTranslator.defaultInstrumentation().equals(instrumentedJar.getInstrumentation())) {
+                System.err.println("WARNING: ignoring " + path + ", it was instrumented with the "
+                        + instrumentedJar.getInstrumentation() + " backend rather than " + AndroidTranslator.defaultInstrumentation());
+                instrumentedJar.close();
+                return null;
+            }
+            return instrumentedJar;
+        } catch (IOException e) {
+            System.err.println("WARNING: couldn't read " + path + ": " + e);
+            return null;
+        }
+    }
+
+    public InstrumentedJar(File file) throws IOException {
+        jarFile = new JarFile(file);
+        Manifest jarManifest = jarFile.getManifest();
+        manifest = jarManifest != null ? jarManifest : new Manifest();
+    }
+
+    public int getCacheVersion() {
+        String cacheVersion = manifest.getMainAttributes().getValue(CACHE_VERSION_ATTRIBUTE);
+        return cacheVersion == null ? -1 : Integer.parseInt(cacheVersion);
+    }
+
+    /**
+     * @return the backend the classes were instrumented with; see {@link AndroidTranslator#INSTRUMENTATION_PROPERTY}
+     */
+    public String getInstrumentation() {
+        String instrumentation = manifest.getMainAttributes().getValue(INSTRUMENTATION_ATTRIBUTE);
+        return instrumentation == null ? "source" : instrumentation;
+    }
+
+    /**
+     * @return the hex SHA-1 of a class's original bytes, as the manifest records it
+     */
+    static String digestOf(byte[] originalClassBytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(originalClassBytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        StringBuilder buf = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            buf.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the instrumented bytes for the class, or null if the jar doesn't have it, or has it instrumented from
+     *         different original bytes
+     */
+    public byte[] getClassBytesFor(String className, byte[] originalClassBytes) {
+        String entryName = className.replace('.', '/') + ".class";
+        JarEntry entry = jarFile.getJarEntry(entryName);
+        if (entry == null) {
+            return null;
+        }
+        Attributes attributes = manifest.getAttributes(entryName);
+        String originalDigest = attributes == null ? null : attributes.getValue(ORIGINAL_DIGEST_ATTRIBUTE);
+        if (originalDigest == null || !originalDigest.equals(digestOf(originalClassBytes))) {
+            return null;
+        }
+
+        try {
+            InputStream inputStream = jarFile.getInputStream(entry);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 4096);
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void close() throws IOException {
+        jarFile.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.xtremelabs.robolectric.bytecode;
+
+/**
+ * A set of class name prefixes, e.g. {@code "android."}, that can tell whether a name starts with any of them in a
+ * single pass over the name, however many prefixes there are.
+ */
+class PrefixTrie {
+    private final Node root = new Node();
+
+    public void add(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.childFor(prefix.charAt(i), true);
+        }
+        node.terminal = true;
+    }
+
+    public boolean matches(String name) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            if (node.terminal) return true;
+            node = node.childFor(name.charAt(i), false);
+            if (node == null) return false;
+        }
+        return node.terminal;
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node childFor(char c, boolean create) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            if (!create) return null;
+
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            System.arraycopy(children, 0, newChildren, 0, keys.length);
+            Node child = new Node();
+            newKeys[keys.length] = c;
+            newChildren[keys.length] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
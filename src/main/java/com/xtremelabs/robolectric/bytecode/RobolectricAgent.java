@@ -0,0 +1,126 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.Loader;
+import javassist.LoaderClassPath;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A java agent which instruments Android classes as the JVM loads them, as an alternative to
+ * {@link RobolectricClassLoader}. Tests then run in the ordinary application class loader: nothing is loaded twice,
+ * there are no {@code delegateLoadingOf()} lists to maintain, and the JVM's class data sharing still applies to
+ * everything that isn't instrumented.
+ *
+ * <p>Run the tests with {@code -javaagent:path/to/robolectric-jar-with-dependencies.jar}, optionally followed by
+ * {@code =} and a comma-separated list of further class name prefixes to instrument, like the custom class names given
+ * to {@link RobolectricClassLoader}. {@link com.xtremelabs.robolectric.RobolectricTestRunner} notices the agent and
+ * doesn't create a class loader of its own.</p>
+ */
+public class RobolectricAgent implements ClassFileTransformer {
+    private static volatile boolean installed;
+
+    private final AndroidTranslator androidTranslator;
+    private final ClassCache classCache;
+    private final InstrumentedJar instrumentedJar;
+    private final Map<ClassLoader, BoundedClassPool> classPools = new WeakHashMap<ClassLoader, BoundedClassPool>();
+    private final ThreadLocal<Boolean> transforming = new ThreadLocal<Boolean>();
+
+    public static void premain(String agentArgs, Instrumentation instrumentation) {
+        ArrayList<String> customClassNames = new ArrayList<String>();
+        if (agentArgs != null) {
+            for (String className : agentArgs.split(",")) {
+                if (className.trim().length() > 0) {
+                    customClassNames.add(className.trim());
+                }
+            }
+        }
+
+        ShadowWrangler classHandler = ShadowWrangler.getInstance();
+        RobolectricInternals.setClassHandler(classHandler);
+        instrumentation.addTransformer(new RobolectricAgent(classHandler, customClassNames));
+        installed = true;
+    }
+
+    /**
+     * @return true if classes are being instrumented by the agent, in which case there's no need for a
+     *         {@link RobolectricClassLoader}
+     */
+    public static boolean isInstalled() {
+        return installed;
+    }
+
+    RobolectricAgent(ClassHandler classHandler, ArrayList<String> customClassNames) {
+        // transform() only looks in the cache for classes this configuration instruments, which are instrumented
+        // the same way whichever configuration first did so; only the instrumentation backend tells them apart
+        classCache = new ClassCache(ClassCache.defaultCachePath(), AndroidTranslator.CACHE_VERSION, AndroidTranslator.defaultInstrumentation());
+        instrumentedJar = InstrumentedJar.fromSystemProperty();
+        androidTranslator = new AndroidTranslator(classHandler, classCache, customClassNames);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String internalClassName, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        // classes defined by a RobolectricClassLoader (or any Javassist loader) have already been through a translator
+        if (loader == null || loader instanceof Loader || classBeingRedefined != null || internalClassName == null) {
+            return null;
+        }
+
+        // the classes needed to instrument a class are loaded while doing so, and never need instrumenting themselves
+        if (transforming.get() != null) {
+            return null;
+        }
+
+        transforming.set(Boolean.TRUE);
+        String className = internalClassName.replace('/', '.');
+        try {
+            if (!androidTranslator.needsTranslation(className, classfileBuffer)) {
+                return null;
+            }
+            return instrument(loader, className, classfileBuffer);
+        } catch (Throwable e) {
+            // the JVM quietly ignores exceptions thrown by transformers
+            System.err.println("WARNING: couldn't instrument " + className);
+            e.printStackTrace();
+            return null;
+        } finally {
+            transforming.remove();
+        }
+    }
+
+    private synchronized byte[] instrument(ClassLoader loader, String className, byte[] originalClassBytes) throws Exception {
+        if (instrumentedJar != null) {
+            byte[] classBytes = instrumentedJar.getClassBytesFor(className, originalClassBytes);
+            if (classBytes != null) {
+                return classBytes;
+            }
+        }
+
+        if (classCache.hasEntriesFor(className)) {
+            byte[] classBytes = classCache.getClassBytesFor(className, originalClassBytes);
+            if (classBytes != null) {
+                return classBytes;
+            }
+        }
+
+        BoundedClassPool classPool = classPoolFor(loader);
+        byte[] classBytes = androidTranslator.transform(classPool, className);
+        classPool.classDefined(className);
+        return classBytes;
+    }
+
+    private BoundedClassPool classPoolFor(ClassLoader loader) {
+        BoundedClassPool classPool = classPools.get(loader);
+        if (classPool == null) {
+            classPool = new BoundedClassPool();
+            classPool.appendClassPath(new LoaderClassPath(loader));
+            classPool.reportUsageOnExit();
+            classPools.put(loader, classPool);
+        }
+        return classPool;
+    }
+}
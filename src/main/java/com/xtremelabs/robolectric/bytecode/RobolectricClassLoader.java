@@ -1,13 +1,27 @@
 package com.xtremelabs.robolectric.bytecode;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javassist.CannotCompileException;
-import javassist.ClassPool;
 import javassist.LoaderClassPath;
 import javassist.NotFoundException;
 
 public class RobolectricClassLoader extends javassist.Loader {
+    // shared by every loader in the JVM; see ClassLoaderPool
+    private static ClassCache sharedClassCache;
+    private static ClassLoadTrace sharedClassLoadTrace;
+
     private ClassCache classCache;
+    private InstrumentedJar instrumentedJar;
+    private BoundedClassPool classPool;
+    private AndroidTranslator androidTranslator;
+    private ClassLoadTrace classLoadTrace;
+    private BackgroundInstrumenter backgroundInstrumenter;
+    // kept here rather than by ShadowInvokerGenerator, so they go when the loader does
+    private final ConcurrentMap<Method, ShadowInvoker> shadowInvokers = new ConcurrentHashMap<Method, ShadowInvoker>();
 
     public RobolectricClassLoader(ClassHandler classHandler) {
     	this(classHandler, null);
@@ -18,20 +32,47 @@ public class RobolectricClassLoader extends javassist.Loader {
 
         delegateLoadingOf(AndroidTranslator.class.getName());
         delegateLoadingOf(ClassHandler.class.getName());
+        delegateLoadingOf(ShadowInvoker.class.getName());
+        delegateLoadingOf(ShadowedObject.class.getName());
 
-        classCache = new ClassCache("tmp/cached-robolectric-classes.jar", AndroidTranslator.CACHE_VERSION);
+        instrumentedJar = InstrumentedJar.fromSystemProperty();
+        classCache = getSharedClassCache();
         try {
-            ClassPool classPool = new ClassPool();
+            classPool = new BoundedClassPool();
+            classPool.reportUsageOnExit();
             classPool.appendClassPath(new LoaderClassPath(RobolectricClassLoader.class.getClassLoader()));
 
-            AndroidTranslator androidTranslator = new AndroidTranslator(classHandler, classCache, customClassNames);
+            androidTranslator = new AndroidTranslator(classHandler, classCache, customClassNames);
             addTranslator(classPool, androidTranslator);
         } catch (NotFoundException e) {
             throw new RuntimeException(e);
         } catch (CannotCompileException e) {
             throw new RuntimeException(e);
         }
+
+        classLoadTrace = getSharedClassLoadTrace();
+        backgroundInstrumenter = new BackgroundInstrumenter(classHandler, classCache, customClassNames, RobolectricClassLoader.class.getClassLoader());
+        backgroundInstrumenter.start(classLoadTrace.takePreviousRun(), BackgroundInstrumenter.defaultThreadCount());
     } 
+
+    /**
+     * Classes are only looked up in the cache once the translator has said it needs to see them, and every
+     * configuration instruments a class the same way, so one cache serves loaders with different custom class names.
+     * The two instrumentation backends don't produce the same bytes, so the one in use is part of the cache's key.
+     */
+    private static synchronized ClassCache getSharedClassCache() {
+        if (sharedClassCache == null) {
+            sharedClassCache = new ClassCache(ClassCache.defaultCachePath(), AndroidTranslator.CACHE_VERSION, AndroidTranslator.defaultInstrumentation());
+        }
+        return sharedClassCache;
+    }
+
+    private static synchronized ClassLoadTrace getSharedClassLoadTrace() {
+        if (sharedClassLoadTrace == null) {
+            sharedClassLoadTrace = ClassLoadTrace.forDefaultCache();
+        }
+        return sharedClassLoadTrace;
+    }
     
     @Override
     public Class loadClass(String name) throws ClassNotFoundException {
@@ -57,11 +98,67 @@ public class RobolectricClassLoader extends javassist.Loader {
         }
     }
 
+    /**
+     * Stops instrumenting classes in the background for this loader, which won't load any more.
+     */
+    void release() {
+        backgroundInstrumenter.stop();
+    }
+
+    /**
+     * @return the invokers generated for shadow methods loaded by this loader, by method
+     */
+    ConcurrentMap<Method, ShadowInvoker> getShadowInvokers() {
+        return shadowInvokers;
+    }
+
+    Class<?> defineGeneratedClass(String name, byte[] classBytes) {
+        return defineClass(name, classBytes, 0, classBytes.length);
+    }
+
     @Override protected Class findClass(String name) throws ClassNotFoundException {
-        byte[] classBytes = classCache.getClassBytesFor(name);
-        if (classBytes != null) {
-            return defineClass(name, classBytes, 0, classBytes.length);
+        byte[] originalClassBytes = ClassCache.readOriginalClassBytes(classPool, name);
+        if (originalClassBytes == null) {
+            return super.findClass(name);
+        }
+
+        if (instrumentedJar != null) {
+            byte[] classBytes = instrumentedJar.getClassBytesFor(name, originalClassBytes);
+            if (classBytes != null) {
+                return defineClassFromBytes(name, classBytes);
+            }
+        }
+
+        if (!androidTranslator.needsTranslation(name, originalClassBytes)) {
+            return defineClassFromBytes(name, originalClassBytes);
+        }
+
+        classLoadTrace.record(name);
+        backgroundInstrumenter.claim(name);
+        if (classCache.hasEntriesFor(name)) {
+            byte[] classBytes = classCache.getClassBytesFor(name, originalClassBytes);
+            if (classBytes != null) {
+                return defineClassFromBytes(name, classBytes);
+            }
+        }
+
+        Class theClass = super.findClass(name);
+        classPool.classDefined(name);
+        return theClass;
+    }
+
+    private Class defineClassFromBytes(String name, byte[] classBytes) {
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot != -1) {
+            String packageName = name.substring(0, lastDot);
+            if (getPackage(packageName) == null) {
+                try {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                } catch (IllegalArgumentException e) {
+                    // already defined
+                }
+            }
         }
-        return super.findClass(name);
+        return defineClass(name, classBytes, 0, classBytes.length);
     }
 }
@@ -5,13 +5,19 @@ import com.xtremelabs.robolectric.internal.Implements;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings({"UnusedDeclaration"})
 public class RobolectricInternals {
     // initialized via magic by AndroidTranslator
     private static ClassHandler classHandler;
     private static Set<String> unloadableClassNames = new HashSet<String>();
+    private static final Map<String, String[]> paramTypesByDescriptor = new ConcurrentHashMap<String, String[]>();
 
     private static final ThreadLocal<Vars> ALL_VARS = new ThreadLocal<Vars>() {
         @Override protected Vars initialValue() {
@@ -19,10 +25,23 @@ public class RobolectricInternals {
         }
     };
 
+    // number of threads with a directlyOn() call pending, so instrumented methods can skip the ThreadLocal lookup.
+    // It's only a hint: a thread that dies with a call pending leaves its count here for good, which costs every later
+    // instrumented call the lookup but never gives a wrong answer, since the lookup is what decides.
+    private static final AtomicInteger pendingDirectCalls = new AtomicInteger();
+
     private static class Vars {
         Object callDirectly;
     }
 
+    /**
+     * Only for {@link RobolectricAgent}; when there's a {@link RobolectricClassLoader}, {@link AndroidTranslator} sets
+     * the class handler in the static initializer of that loader's copy of this class.
+     */
+    static void setClassHandler(ClassHandler classHandler) {
+        RobolectricInternals.classHandler = classHandler;
+    }
+
     public static <T> T newInstanceOf(Class<T> clazz) {
         try {
             Constructor<T> defaultConstructor = clazz.getDeclaredConstructor();
@@ -40,13 +59,74 @@ public class RobolectricInternals {
     }
 
     public static void bindShadowClass(Class<?> shadowClass) {
+        Class<?> realClass = getIndexedRealClass(shadowClass);
+        if (realClass == null) {
+            realClass = getRealClass(shadowClass);
+        }
+        if (realClass != null) {
+            ShadowWrangler.getInstance().bindShadowClass(realClass, shadowClass);
+        }
+    }
+
+    /**
+     * Binds shadow classes that stay bound for every test; see
+     * {@link ShadowWrangler#bindDefaultShadowClasses(ClassLoader, Map)}. Only the ones not already bound in this class
+     * loader are looked at, and then only by reflection if they aren't in the {@link ShadowIndex}.
+     */
+    public static void bindDefaultShadowClasses(List<Class<?>> shadowClasses) {
+        ShadowWrangler shadowWrangler = ShadowWrangler.getInstance();
+        ClassLoader classLoader = RobolectricInternals.class.getClassLoader();
+        List<Class<?>> unboundShadowClasses = shadowWrangler.getUnboundDefaultShadowClasses(classLoader, shadowClasses);
+        if (unboundShadowClasses.isEmpty()) {
+            shadowWrangler.setDefaultShadowClassesEnabled(classLoader, true);
+            return;
+        }
+
+        ShadowIndex shadowIndex = ShadowIndex.getInstance();
+        Map<String, Class<?>> bindings = new LinkedHashMap<String, Class<?>>();
+        for (Class<?> shadowClass : unboundShadowClasses) {
+            String realClassName = shadowIndex.getRealClassName(shadowClass);
+            if (realClassName == null) {
+                Class<?> realClass = getRealClass(shadowClass);
+                realClassName = realClass == null ? null : realClass.getName();
+            }
+            if (realClassName != null) {
+                bindings.put(realClassName, shadowClass);
+            }
+        }
+        shadowWrangler.bindDefaultShadowClasses(classLoader, bindings);
+    }
+
+    /**
+     * @return the class the {@link ShadowIndex} says {@code shadowClass} implements, or null if it isn't indexed or the
+     *         class can't be loaded
+     */
+    private static Class<?> getIndexedRealClass(Class<?> shadowClass) {
+        String realClassName = ShadowIndex.getInstance().getRealClassName(shadowClass);
+        if (realClassName == null) {
+            return null;
+        }
+        try {
+            return Class.forName(realClassName, false, shadowClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            // let reading the annotation decide whether it matters
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the class {@code shadowClass} implements, or null if it isn't available to these tests
+     */
+    private static Class<?> getRealClass(Class<?> shadowClass) {
         Implements realClass = shadowClass.getAnnotation(Implements.class);
         if (realClass == null) {
             throw new IllegalArgumentException(shadowClass + " is not annotated with @Implements");
         }
 
         try {
-            ShadowWrangler.getInstance().bindShadowClass(realClass.value(), shadowClass);
+            return realClass.value();
         } catch (TypeNotPresentException typeLoadingException) {
             String unloadableClassName = shadowClass.getSimpleName();
             if (isIgnorableClassLoadingException(typeLoadingException)) {
@@ -54,6 +134,7 @@ public class RobolectricInternals {
                 if (unloadableClassNames.add(unloadableClassName)) {
                     System.out.println("Warning: an error occurred while binding shadow class: " + unloadableClassName);
                 }
+                return null;
             } else {
                 throw typeLoadingException;
             }
@@ -82,22 +163,27 @@ public class RobolectricInternals {
         if (vars.callDirectly != null) {
             Object expectedInstance = vars.callDirectly;
             vars.callDirectly = null;
+            pendingDirectCalls.decrementAndGet();
             throw new RuntimeException("already expecting a direct call on <" + expectedInstance + "> but here's a new request for <" + shadowedObject + ">");
         }
 
         vars.callDirectly = shadowedObject;
+        pendingDirectCalls.incrementAndGet();
         return shadowedObject;
     }
 
     public static boolean shouldCallDirectly(Object directInstance) {
+        if (pendingDirectCalls.get() == 0) {
+            return false;
+        }
+
         Vars vars = ALL_VARS.get();
         if (vars.callDirectly != null) {
-            if (vars.callDirectly != directInstance) {
-                Object expectedInstance = vars.callDirectly;
-                vars.callDirectly = null;
+            Object expectedInstance = vars.callDirectly;
+            vars.callDirectly = null;
+            pendingDirectCalls.decrementAndGet();
+            if (expectedInstance != directInstance) {
                 throw new RuntimeException("expected to perform direct call on <" + expectedInstance + "> but got <" + directInstance + ">");
-            } else {
-                vars.callDirectly = null;
             }
             return true;
         } else {
@@ -105,13 +191,96 @@ public class RobolectricInternals {
         }
     }
 
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static void classInitialized(Class clazz) {
+        classHandler.classInitialized(clazz);
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static void classInitializationFinished(Class clazz) {
+        classHandler.classInitializationFinished(clazz);
+    }
+
     @SuppressWarnings({"UnusedDeclaration"})
     public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
         try {
-          return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, params);
-        } catch(java.lang.LinkageError e) {
-          throw new Exception(e);
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, params);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes) throws Throwable {
+        try {
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, int param) throws Throwable {
+        try {
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, param);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, float param) throws Throwable {
+        try {
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, param);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, boolean param) throws Throwable {
+        try {
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, param);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, int param1, int param2) throws Throwable {
+        try {
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, param1, param2);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, float param1, float param2) throws Throwable {
+        try {
+            return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, param1, param2);
+        } catch (LinkageError e) {
+            throw linkageFailure(e);
+        }
+    }
+
+    // one place for every overload to wrap a class that failed to link, as the instrumented callers expect
+    private static Exception linkageFailure(LinkageError e) {
+        return new Exception(e);
+    }
+
+    /**
+     * Returns a shared parameter type array for a comma-separated list of parameter type names, so instrumented
+     * methods can pass a string constant rather than allocating a new array on every call.
+     */
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static String[] paramTypes(String paramTypesDescriptor) {
+        String[] paramTypes = paramTypesByDescriptor.get(paramTypesDescriptor);
+        if (paramTypes == null) {
+            paramTypes = paramTypesDescriptor.length() == 0 ? new String[0] : paramTypesDescriptor.split(",");
+            paramTypesByDescriptor.put(paramTypesDescriptor, paramTypes);
         }
+        return paramTypes;
     }
 
     @SuppressWarnings({"UnusedDeclaration"})
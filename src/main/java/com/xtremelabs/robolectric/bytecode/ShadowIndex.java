@@ -0,0 +1,210 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The shadow classes {@link ShadowIndexProcessor} found when they were compiled: the class each one implements, the
+ * methods it declares and its {@code @RealObject} fields. Lets shadow classes be bound and dispatched to without
+ * reading their annotations or probing them for methods they don't have.
+ *
+ * <p>Shadow classes that weren't compiled with the processor aren't in the index, and have to be looked at by
+ * reflection instead. The same goes for the methods and fields of a class whose entry no longer matches it. That's
+ * checked the first time one of its methods is dispatched to or a shadow created, not when it's bound, so binding
+ * the default shadow classes doesn't mean looking at every one of them.</p>
+ */
+class ShadowIndex {
+    static final String RESOURCE_NAME = "META-INF/robolectric/shadows.index";
+
+    /**
+     * System property which, set to false, makes Robolectric ignore the index and use reflection throughout.
+     */
+    static final String ENABLED_PROPERTY = "robolectric.shadowIndex";
+
+    static final String SHADOW = "shadow";
+    static final String METHOD = "method";
+    static final String REAL_OBJECT = "realObject";
+
+    private static ShadowIndex instance;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    // whether each class matched its entry; weak, so the index doesn't keep the classes' loaders alive
+    private final Map<Class<?>, Boolean> checkedClasses = Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+    static synchronized ShadowIndex getInstance() {
+        if (instance == null) {
+            instance = new ShadowIndex();
+            if (Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, "true"))) {
+                instance.readAll(ShadowIndex.class.getClassLoader());
+            }
+        }
+        return instance;
+    }
+
+    private void readAll(ClassLoader classLoader) {
+        try {
+            Enumeration<URL> resources = classLoader.getResources(RESOURCE_NAME);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                Reader reader = new InputStreamReader(resource.openStream(), "UTF-8");
+                try {
+                    read(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: couldn't read the shadow index, shadow classes will be found by reflection: " + e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Adds the entries in an index written by {@link ShadowIndexProcessor}. Shadow classes already in the index keep
+     * their first entry.
+     */
+    void read(Reader reader) throws IOException {
+        Set<String> seenHere = new HashSet<String>();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                continue;
+            }
+
+            String kind = fields[0];
+            String shadowClassName = fields[1];
+            if (kind.equals(SHADOW)) {
+                if (!entries.containsKey(shadowClassName)) {
+                    entries.put(shadowClassName, new Entry(fields[2]));
+                    seenHere.add(shadowClassName);
+                }
+            } else if (seenHere.contains(shadowClassName)) {
+                Entry entry = entries.get(shadowClassName);
+                if (kind.equals(METHOD)) {
+                    entry.methodSignatures.add(fields[2]);
+                } else if (kind.equals(REAL_OBJECT)) {
+                    entry.realObjectFieldNames.add(fields[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name of the class {@code shadowClass} implements, or null if it isn't indexed
+     */
+    String getRealClassName(Class<?> shadowClass) {
+        Entry entry = entries.get(shadowClass.getName());
+        return entry == null ? null : entry.realClassName;
+    }
+
+    boolean isShadowClass(Class<?> clazz) {
+        return entries.containsKey(clazz.getName());
+    }
+
+    /**
+     * @return false only if the index shows that neither {@code shadowClass} nor any of its superclasses declares the
+     *         method
+     */
+    boolean mayDeclareMethod(Class<?> shadowClass, String methodName, Class<?>[] paramClasses) {
+        String signature = null;
+        for (Class<?> clazz = shadowClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            Entry entry = getCheckedEntry(clazz);
+            if (entry == null) {
+                return true;
+            }
+            if (signature == null) {
+                signature = signature(methodName, paramClasses);
+            }
+            if (entry.methodSignatures.contains(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the names of the {@code @RealObject} fields {@code shadowClass} itself declares, or null if it isn't
+     *         indexed
+     */
+    List<String> getRealObjectFieldNames(Class<?> shadowClass) {
+        Entry entry = getCheckedEntry(shadowClass);
+        return entry == null ? null : entry.realObjectFieldNames;
+    }
+
+    /**
+     * @return the class's entry, or null if it isn't indexed or the entry no longer matches it
+     */
+    private Entry getCheckedEntry(Class<?> clazz) {
+        Entry entry = entries.get(clazz.getName());
+        if (entry == null) {
+            return null;
+        }
+
+        Boolean matches = checkedClasses.get(clazz);
+        if (matches == null) {
+            matches = entry.matches(clazz);
+            if (!matches) {
+                System.err.println("WARNING: the shadow index entry for " + clazz.getName() + " is out of date;"
+                        + " recompile it with " + ShadowIndexProcessor.class.getName() + " on the classpath");
+            }
+            checkedClasses.put(clazz, matches);
+        }
+        return matches ? entry : null;
+    }
+
+    static String signature(String methodName, Class<?>[] paramClasses) {
+        StringBuilder buf = new StringBuilder(methodName).append('(');
+        for (int i = 0; i < paramClasses.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(typeName(paramClasses[i]));
+        }
+        return buf.append(')').toString();
+    }
+
+    private static String typeName(Class<?> clazz) {
+        return clazz.isArray() ? typeName(clazz.getComponentType()) + "[]" : clazz.getName();
+    }
+
+    private static class Entry {
+        private final String realClassName;
+        private final Set<String> methodSignatures = new HashSet<String>();
+        private final List<String> realObjectFieldNames = new ArrayList<String>();
+
+        Entry(String realClassName) {
+            this.realClassName = realClassName;
+        }
+
+        /**
+         * A cheap check that the class hasn't been recompiled without the processor since the index was written.
+         */
+        boolean matches(Class<?> clazz) {
+            int methodCount = 0;
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (!method.isSynthetic()) {
+                    if (!methodSignatures.contains(signature(method.getName(), method.getParameterTypes()))) {
+                        return false;
+                    }
+                    methodCount++;
+                }
+            }
+            return methodCount == methodSignatures.size();
+        }
+    }
+}
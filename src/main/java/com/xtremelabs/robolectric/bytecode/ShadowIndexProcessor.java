@@ -0,0 +1,158 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link ShadowIndex} of the {@code @Implements} classes being compiled to
+ * {@code META-INF/robolectric/shadows.index} in the class output directory.
+ *
+ * <p>It's registered as a service in the Robolectric jar, so javac runs it over the shadow classes in any project
+ * that has Robolectric on its classpath; pass {@code -proc:none} to javac to turn it off.</p>
+ */
+public class ShadowIndexProcessor extends AbstractProcessor {
+    private static final String IMPLEMENTS = "com.xtremelabs.robolectric.internal.Implements";
+    private static final String REAL_OBJECT = "com.xtremelabs.robolectric.internal.RealObject";
+
+    private final Map<String, String> indexLinesByShadowClass = new TreeMap<String, String>();
+
+    @Override public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(IMPLEMENTS);
+    }
+
+    @Override public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement implementsType = processingEnv.getElementUtils().getTypeElement(IMPLEMENTS);
+        if (implementsType != null) {
+            for (TypeElement shadowClass : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(implementsType))) {
+                String indexLines = indexLinesFor(shadowClass);
+                if (indexLines != null) {
+                    indexLinesByShadowClass.put(binaryName(shadowClass), indexLines);
+                }
+            }
+        }
+
+        if (roundEnv.processingOver() && !indexLinesByShadowClass.isEmpty()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private String indexLinesFor(TypeElement shadowClass) {
+        TypeMirror realClass = getImplementedClass(shadowClass);
+        if (realClass == null || realClass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        String shadowClassName = binaryName(shadowClass);
+        StringBuilder buf = new StringBuilder();
+        appendLine(buf, ShadowIndex.SHADOW, shadowClassName, typeName(realClass));
+
+        for (ExecutableElement method : ElementFilter.methodsIn(shadowClass.getEnclosedElements())) {
+            StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    signature.append(',');
+                }
+                signature.append(typeName(parameters.get(i).asType()));
+            }
+            appendLine(buf, ShadowIndex.METHOD, shadowClassName, signature.append(')').toString());
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(shadowClass.getEnclosedElements())) {
+            if (getAnnotation(field, REAL_OBJECT) != null) {
+                appendLine(buf, ShadowIndex.REAL_OBJECT, shadowClassName, field.getSimpleName().toString());
+            }
+        }
+        return buf.toString();
+    }
+
+    private TypeMirror getImplementedClass(TypeElement shadowClass) {
+        AnnotationMirror annotation = getAnnotation(shadowClass, IMPLEMENTS);
+        if (annotation == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value") && entry.getValue().getValue() instanceof TypeMirror) {
+                return (TypeMirror) entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the type's name as {@link ShadowIndex#signature(String, Class[])} would write it
+     */
+    private String typeName(TypeMirror type) {
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        switch (erasure.getKind()) {
+            case ARRAY:
+                return typeName(((ArrayType) erasure).getComponentType()) + "[]";
+            case DECLARED:
+                return binaryName((TypeElement) ((DeclaredType) erasure).asElement());
+            default:
+                return erasure.toString();
+        }
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void appendLine(StringBuilder buf, String kind, String shadowClassName, String value) {
+        buf.append(kind).append('\t').append(shadowClassName).append('\t').append(value).append('\n');
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ShadowIndex.RESOURCE_NAME);
+            Writer writer = index.openWriter();
+            try {
+                for (String indexLines : indexLinesByShadowClass.values()) {
+                    writer.write(indexLines);
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            // the shadow classes will be looked at by reflection instead
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "couldn't write " + ShadowIndex.RESOURCE_NAME + ": " + e);
+        }
+    }
+}
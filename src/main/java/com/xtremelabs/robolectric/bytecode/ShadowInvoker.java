@@ -0,0 +1,36 @@
+package com.xtremelabs.robolectric.bytecode;
+
+/**
+ * Calls one particular shadow method directly, without going through {@link java.lang.reflect.Method#invoke}.
+ * Implementations are generated at runtime by {@link ShadowInvokerGenerator}, which also overrides the primitive
+ * {@code invoke} variant matching the shadow method's signature, if there is one, so those calls don't allocate.
+ */
+public abstract class ShadowInvoker {
+    static final Object[] NO_PARAMS = new Object[0];
+
+    public abstract Object invoke(Object shadow, Object[] params) throws Throwable;
+
+    public Object invoke(Object shadow) throws Throwable {
+        return invoke(shadow, NO_PARAMS);
+    }
+
+    public Object invoke(Object shadow, int param) throws Throwable {
+        return invoke(shadow, new Object[] {param});
+    }
+
+    public Object invoke(Object shadow, float param) throws Throwable {
+        return invoke(shadow, new Object[] {param});
+    }
+
+    public Object invoke(Object shadow, boolean param) throws Throwable {
+        return invoke(shadow, new Object[] {param});
+    }
+
+    public Object invoke(Object shadow, int param1, int param2) throws Throwable {
+        return invoke(shadow, new Object[] {param1, param2});
+    }
+
+    public Object invoke(Object shadow, float param1, float param2) throws Throwable {
+        return invoke(shadow, new Object[] {param1, param2});
+    }
+}
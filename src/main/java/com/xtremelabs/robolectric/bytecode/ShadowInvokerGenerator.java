@@ -0,0 +1,205 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a {@link ShadowInvoker} class per shadow method, so that once a shadow method has been resolved it can
+ * be called with a plain (JIT-inlinable) virtual or static call instead of reflection. If the method has one of the
+ * primitive signatures with a specialized {@code invoke} variant, that variant is overridden as well.
+ * <p/>
+ * An invoker is generated once per method and kept by its loader, so rebuilding the dispatch cache, as binding shadow
+ * classes for a test does, reuses the invokers it had before.
+ * <p/>
+ * Invokers can only be generated for public methods on public shadow classes which were loaded by a
+ * {@link RobolectricClassLoader}; for anything else {@link #generate(Method)} returns null and the caller should fall
+ * back to reflection.
+ */
+class ShadowInvokerGenerator {
+    static final String INVOKER_CLASS_SUFFIX = "$$RobolectricInvoker$";
+
+    private static final AtomicInteger invokerCount = new AtomicInteger();
+
+    private final Map<ClassLoader, ClassPool> classPools = new WeakHashMap<ClassLoader, ClassPool>();
+
+    public ShadowInvoker generate(Method method) {
+        Class<?> shadowClass = method.getDeclaringClass();
+        if (!(shadowClass.getClassLoader() instanceof RobolectricClassLoader) || !isAccessible(method)) {
+            return null;
+        }
+        RobolectricClassLoader classLoader = (RobolectricClassLoader) shadowClass.getClassLoader();
+
+        ConcurrentMap<Method, ShadowInvoker> shadowInvokers = classLoader.getShadowInvokers();
+        ShadowInvoker shadowInvoker = shadowInvokers.get(method);
+        if (shadowInvoker == null) {
+            shadowInvoker = generate(classLoader, method);
+            if (shadowInvoker != null) {
+                // another thread may have generated one too; everyone uses the first
+                ShadowInvoker firstShadowInvoker = shadowInvokers.putIfAbsent(method, shadowInvoker);
+                if (firstShadowInvoker != null) {
+                    shadowInvoker = firstShadowInvoker;
+                }
+            }
+        }
+        return shadowInvoker;
+    }
+
+    private ShadowInvoker generate(RobolectricClassLoader classLoader, Method method) {
+        Class<?> shadowClass = method.getDeclaringClass();
+        String invokerClassName = shadowClass.getName() + INVOKER_CLASS_SUFFIX + invokerCount.incrementAndGet();
+        try {
+            ClassPool classPool = getClassPool(classLoader);
+            byte[] classBytes;
+            synchronized (classPool) {
+                classBytes = generateInvokerClass(classPool, invokerClassName, method);
+            }
+            Class<?> invokerClass = classLoader.defineGeneratedClass(invokerClassName, classBytes);
+            return (ShadowInvoker) invokerClass.newInstance();
+        } catch (CannotCompileException e) {
+            return null;
+        } catch (NotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] generateInvokerClass(ClassPool classPool, String invokerClassName, Method method) throws NotFoundException, CannotCompileException, IOException {
+        CtClass invokerCtClass = classPool.makeClass(invokerClassName);
+        try {
+            invokerCtClass.setSuperclass(classPool.get(ShadowInvoker.class.getName()));
+            invokerCtClass.addMethod(CtNewMethod.make(generateInvokeMethod(method), invokerCtClass));
+            if (hasSpecializedEntryPoint(method)) {
+                invokerCtClass.addMethod(CtNewMethod.make(generateSpecializedInvokeMethod(method), invokerCtClass));
+            }
+            return invokerCtClass.toBytecode();
+        } finally {
+            invokerCtClass.detach();
+        }
+    }
+
+    String generateInvokeMethod(Method method) {
+        StringBuilder call = new StringBuilder();
+        appendCallTarget(call, method);
+        call.append("(");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) call.append(", ");
+            Type type = Type.find(parameterTypes[i]);
+            call.append("((").append(type.nonPrimitiveClassName(sourceName(parameterTypes[i]))).append(") $2[").append(i).append("])");
+            call.append(type.unboxString());
+        }
+        call.append(")");
+
+        return generateMethod("public Object invoke(Object shadow, Object[] params) throws Throwable {\n", method, call);
+    }
+
+    String generateSpecializedInvokeMethod(Method method) {
+        StringBuilder call = new StringBuilder();
+        appendCallTarget(call, method);
+        call.append("(");
+        StringBuilder signature = new StringBuilder("public Object invoke(Object shadow");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) call.append(", ");
+            call.append("$").append(i + 2);
+            signature.append(", ").append(parameterTypes[i].getName()).append(" param").append(i + 1);
+        }
+        call.append(")");
+        signature.append(") throws Throwable {\n");
+
+        return generateMethod(signature.toString(), method, call);
+    }
+
+    private void appendCallTarget(StringBuilder buf, Method method) {
+        if (Modifier.isStatic(method.getModifiers())) {
+            buf.append(sourceName(method.getDeclaringClass()));
+        } else {
+            buf.append("((").append(sourceName(method.getDeclaringClass())).append(") $1)");
+        }
+        buf.append(".").append(method.getName());
+    }
+
+    private String generateMethod(String signature, Method method, StringBuilder call) {
+        StringBuilder buf = new StringBuilder(signature);
+        Type returnType = Type.find(method.getReturnType());
+        if (returnType.isVoid()) {
+            buf.append(call).append(";\n");
+            buf.append("return null;\n");
+        } else if (returnType == Type.OBJECT) {
+            buf.append("return ").append(call).append(";\n");
+        } else {
+            buf.append("return ").append(returnType.nonPrimitiveClassName((String) null)).append(".valueOf(").append(call).append(");\n");
+        }
+        buf.append("}\n");
+        return buf.toString();
+    }
+
+    private boolean hasSpecializedEntryPoint(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Type[] types = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            types[i] = Type.find(parameterTypes[i]);
+        }
+        return Type.hasSpecializedEntryPoint(types);
+    }
+
+    private ClassPool getClassPool(ClassLoader classLoader) {
+        synchronized (classPools) {
+            ClassPool classPool = classPools.get(classLoader);
+            if (classPool == null) {
+                classPool = new ClassPool();
+                classPool.appendClassPath(new LoaderClassPath(classLoader));
+                classPools.put(classLoader, classPool);
+            }
+            return classPool;
+        }
+    }
+
+    private boolean isAccessible(Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || !isAccessible(method.getDeclaringClass())) {
+            return false;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (!isAccessible(parameterType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+            if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sourceName(Class<?> clazz) {
+        if (clazz.isArray()) {
+            return sourceName(clazz.getComponentType()) + "[]";
+        }
+        return clazz.getName();
+    }
+}
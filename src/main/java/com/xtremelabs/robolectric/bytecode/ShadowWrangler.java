@@ -5,6 +5,7 @@ import com.xtremelabs.robolectric.util.Join;
 import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.CtField;
+import javassist.CtNewMethod;
 import javassist.NotFoundException;
 
 import java.lang.annotation.Annotation;
@@ -16,24 +17,39 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ShadowWrangler implements ClassHandler {
     public static final String SHADOW_FIELD_NAME = "__shadow__";
+    private static final ShadowMethod NO_SHADOW_METHOD = new ShadowMethod(null, null, null);
 
     private static ShadowWrangler singleton;
 
     public boolean debug = false;
 
     private final Map<Class, MetaShadow> metaShadowMap = new HashMap<Class, MetaShadow>();
-    private Map<String, String> shadowClassMap = new HashMap<String, String>();
-    private Map<Class, Field> shadowFieldMap = new HashMap<Class, Field>();
-    private boolean logMissingShadowMethods = false;
+    private final Map<ClassLoader, LoaderBindings> loaderBindings = new HashMap<ClassLoader, LoaderBindings>();
+    private final Map<Class, Field> shadowFieldMap = new ConcurrentHashMap<Class, Field>();
+    private final Map<Class, ShadowFactory> shadowFactories = new ConcurrentHashMap<Class, ShadowFactory>();
+    private final List<Field> shadowGuardFields = new ArrayList<Field>();
+    private final Map<ClassLoader, StaticStateSnapshot> staticStateSnapshots = new HashMap<ClassLoader, StaticStateSnapshot>();
+    private final Map<Class, Map<String, ShadowDispatch>> dispatchCache = new ConcurrentHashMap<Class, Map<String, ShadowDispatch>>();
+    private final AtomicLong dispatchCacheHits = new AtomicLong();
+    private final AtomicLong dispatchCacheMisses = new AtomicLong();
+    private final ShadowInvokerGenerator shadowInvokerGenerator = new ShadowInvokerGenerator();
+    private final ShadowIndex shadowIndex = ShadowIndex.getInstance();
+    private boolean directDispatch = Boolean.valueOf(System.getProperty("robolectric.directDispatch", "true"));
 
     // sorry! it really only makes sense to have one per ClassLoader anyway though [xw/hu]
-    public static ShadowWrangler getInstance() {
+    public static synchronized ShadowWrangler getInstance() {
         if (singleton == null) {
             singleton = new ShadowWrangler();
         }
@@ -53,6 +69,10 @@ public class ShadowWrangler implements ClassHandler {
                 CtField field = new CtField(objectClass, SHADOW_FIELD_NAME, ctClass);
                 field.setModifiers(Modifier.PUBLIC);
                 ctClass.addField(field);
+
+                ctClass.addInterface(ctClass.getClassPool().get(ShadowedObject.class.getName()));
+                ctClass.addMethod(CtNewMethod.make("public Object __getShadow__() { return " + SHADOW_FIELD_NAME + "; }", ctClass));
+                ctClass.addMethod(CtNewMethod.make("public void __setShadow__(Object shadow) { " + SHADOW_FIELD_NAME + " = $1; }", ctClass));
             }
         } catch (CannotCompileException e) {
             throw new RuntimeException(e);
@@ -61,46 +81,335 @@ public class ShadowWrangler implements ClassHandler {
         }
     }
 
+    /**
+     * Drops the shadow classes bound by the last test in every class loader.
+     */
     @Override
     public void beforeTest() {
-        shadowClassMap.clear();
+        for (ClassLoader classLoader : getLoadersWithBindings()) {
+            beforeTest(classLoader);
+        }
+    }
+
+    /**
+     * Drops the shadow classes bound by the last test in {@code classLoader}, leaving tests running in other loaders
+     * alone.
+     */
+    @Override
+    public void beforeTest(ClassLoader classLoader) {
+        // default shadow classes stay bound, so the caches only need rebuilding if the last test bound any of its own
+        Map<String, String> shadowClassMap = getBindings(classLoader).shadowClassMap;
+        if (!shadowClassMap.isEmpty()) {
+            shadowClassMap.clear();
+            shadowClassesChanged(classLoader);
+        }
     }
 
     @Override
     public void afterTest() {
     }
 
+    @Override
+    public void forgetLoader(ClassLoader classLoader) {
+        synchronized (loaderBindings) {
+            loaderBindings.remove(classLoader);
+        }
+        synchronized (staticStateSnapshots) {
+            staticStateSnapshots.remove(classLoader);
+        }
+        synchronized (metaShadowMap) {
+            forgetClassesOf(classLoader, metaShadowMap.keySet());
+        }
+        synchronized (shadowGuardFields) {
+            for (Iterator<Field> iterator = shadowGuardFields.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().getDeclaringClass().getClassLoader() == classLoader) {
+                    iterator.remove();
+                }
+            }
+        }
+        forgetClassesOf(classLoader, shadowFieldMap.keySet());
+        forgetClassesOf(classLoader, dispatchCache.keySet());
+        forgetClassesOf(classLoader, shadowFactories.keySet());
+    }
+
+    /**
+     * @return true if {@link #bindDefaultShadowClasses(ClassLoader, Map)} has been called for {@code classLoader}
+     */
+    public boolean hasDefaultShadowClasses(ClassLoader classLoader) {
+        synchronized (loaderBindings) {
+            LoaderBindings bindings = loaderBindings.get(classLoader);
+            return bindings != null && bindings.defaultShadowClassMap != null;
+        }
+    }
+
+    /**
+     * @return those of {@code shadowClasses} that {@link #bindDefaultShadowClasses(ClassLoader, Map)} hasn't bound
+     *         for {@code classLoader} yet, in order
+     */
+    public List<Class<?>> getUnboundDefaultShadowClasses(ClassLoader classLoader, List<Class<?>> shadowClasses) {
+        Set<Class<?>> boundShadowClasses = getBindings(classLoader).defaultShadowClasses;
+        List<Class<?>> unboundShadowClasses = new ArrayList<Class<?>>();
+        for (Class<?> shadowClass : shadowClasses) {
+            if (!boundShadowClasses.contains(shadowClass)) {
+                unboundShadowClasses.add(shadowClass);
+            }
+        }
+        return unboundShadowClasses;
+    }
+
+    /**
+     * Binds shadow classes for every test run in {@code classLoader}, unlike {@link #bindShadowClass(Class, Class)},
+     * whose bindings are dropped by {@link #beforeTest(ClassLoader)} and take precedence over these until then. Adds
+     * to the shadow classes bound this way before, replacing any for the same real class.
+     *
+     * @param shadowClasses shadow classes keyed by the names of the real classes they shadow
+     */
+    public void bindDefaultShadowClasses(ClassLoader classLoader, Map<String, Class<?>> shadowClasses) {
+        for (Class<?> shadowClass : shadowClasses.values()) {
+            getStaticStateSnapshot(shadowClass.getClassLoader()).add(shadowClass);
+        }
+
+        LoaderBindings bindings = getBindings(classLoader);
+        boolean changed;
+        synchronized (bindings) {
+            Map<String, String> newDefaultShadowClassMap = bindings.defaultShadowClassMap == null
+                    ? new HashMap<String, String>() : new HashMap<String, String>(bindings.defaultShadowClassMap);
+            Set<Class<?>> newDefaultShadowClasses = new HashSet<Class<?>>(bindings.defaultShadowClasses);
+            for (Map.Entry<String, Class<?>> entry : shadowClasses.entrySet()) {
+                newDefaultShadowClassMap.put(entry.getKey(), entry.getValue().getName());
+                newDefaultShadowClasses.add(entry.getValue());
+            }
+            changed = !newDefaultShadowClassMap.equals(bindings.defaultShadowClassMap);
+            bindings.defaultShadowClassMap = Collections.unmodifiableMap(newDefaultShadowClassMap);
+            bindings.defaultShadowClasses = Collections.unmodifiableSet(newDefaultShadowClasses);
+        }
+        if (changed) {
+            shadowClassesChanged(classLoader);
+        }
+        setDefaultShadowClassesEnabled(classLoader, true);
+    }
+
+    /**
+     * Turns the shadow classes bound by {@link #bindDefaultShadowClasses(ClassLoader, Map)} off for the tests running
+     * in {@code classLoader}, e.g. for tests of the shadowing mechanism itself, or back on.
+     */
+    public void setDefaultShadowClassesEnabled(ClassLoader classLoader, boolean defaultShadowClassesEnabled) {
+        LoaderBindings bindings = getBindings(classLoader);
+        if (bindings.defaultShadowClassesEnabled != defaultShadowClassesEnabled) {
+            bindings.defaultShadowClassesEnabled = defaultShadowClassesEnabled;
+            shadowClassesChanged(classLoader);
+        }
+    }
+
+    /**
+     * Forgets what was worked out from the shadow class bindings of {@code classLoader}, or of every loader if it's
+     * null.
+     */
+    private void shadowClassesChanged(ClassLoader classLoader) {
+        forgetClassesOf(classLoader, dispatchCache.keySet());
+        forgetClassesOf(classLoader, shadowFactories.keySet());
+        updateShadowGuards(classLoader, null);
+    }
+
+    private void forgetClassesOf(ClassLoader classLoader, Set<Class> classes) {
+        if (classLoader == null) {
+            classes.clear();
+            return;
+        }
+        for (Iterator<Class> iterator = classes.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getClassLoader() == classLoader) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private LoaderBindings getBindings(ClassLoader classLoader) {
+        synchronized (loaderBindings) {
+            LoaderBindings bindings = loaderBindings.get(classLoader);
+            if (bindings == null) {
+                bindings = new LoaderBindings();
+                loaderBindings.put(classLoader, bindings);
+            }
+            return bindings;
+        }
+    }
+
+    private List<ClassLoader> getLoadersWithBindings() {
+        synchronized (loaderBindings) {
+            return new ArrayList<ClassLoader>(loaderBindings.keySet());
+        }
+    }
+
     public void bindShadowClass(Class<?> realClass, Class<?> shadowClass) {
-        shadowClassMap.put(realClass.getName(), shadowClass.getName());
+        ClassLoader classLoader = realClass.getClassLoader();
+        getBindings(classLoader).shadowClassMap.put(realClass.getName(), shadowClass.getName());
+        forgetClassesOf(classLoader, dispatchCache.keySet());
+        forgetClassesOf(classLoader, shadowFactories.keySet());
+        updateShadowGuards(classLoader, realClass);
+        getStaticStateSnapshot(shadowClass.getClassLoader()).add(shadowClass);
         if (debug) System.out.println("shadow " + realClass + " with " + shadowClass);
     }
 
+    @Override
+    public void classInitialized(Class clazz) {
+        Field shadowGuardField;
+        try {
+            shadowGuardField = clazz.getDeclaredField(AndroidTranslator.HAS_SHADOW_FIELD_NAME);
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(clazz.getName() + " has no shadow guard field", e);
+        }
+
+        synchronized (shadowGuardFields) {
+            shadowGuardFields.add(shadowGuardField);
+            writeShadowGuard(shadowGuardField, getBindings(clazz.getClassLoader()).logMissingShadowMethods || getShadowClassName(clazz) != null);
+        }
+    }
+
+    @Override
+    public void classInitializationFinished(Class clazz) {
+        getStaticStateSnapshot(clazz.getClassLoader()).add(clazz);
+    }
+
+    /**
+     * Records the static fields of every instrumented class initialized, and every shadow class bound, by
+     * {@code classLoader} so far; see {@link #restoreStaticState(ClassLoader)}. Classes initialized or bound later are
+     * recorded as they come.
+     */
+    public void takeStaticStateSnapshot(ClassLoader classLoader) {
+        getStaticStateSnapshot(classLoader).take();
+    }
+
+    /**
+     * Puts the static fields recorded by {@link #takeStaticStateSnapshot(ClassLoader)} back the way they were.
+     *
+     * @return false if no snapshot has been taken for {@code classLoader} yet
+     */
+    public boolean restoreStaticState(ClassLoader classLoader) {
+        StaticStateSnapshot staticStateSnapshot = getStaticStateSnapshot(classLoader);
+        if (!staticStateSnapshot.isTaken()) {
+            return false;
+        }
+        staticStateSnapshot.restore();
+        return true;
+    }
+
+    private StaticStateSnapshot getStaticStateSnapshot(ClassLoader classLoader) {
+        synchronized (staticStateSnapshots) {
+            StaticStateSnapshot staticStateSnapshot = staticStateSnapshots.get(classLoader);
+            if (staticStateSnapshot == null) {
+                staticStateSnapshot = new StaticStateSnapshot();
+                staticStateSnapshots.put(classLoader, staticStateSnapshot);
+            }
+            return staticStateSnapshot;
+        }
+    }
+
+    /**
+     * Turns on the shadow guard of every initialized instrumented class in {@code classLoader} that is, or extends,
+     * {@code boundClass}; if {@code boundClass} is null, recalculates every shadow guard in the loader. A null
+     * {@code classLoader} means every loader.
+     */
+    private void updateShadowGuards(ClassLoader classLoader, Class<?> boundClass) {
+        synchronized (shadowGuardFields) {
+            for (Field shadowGuardField : shadowGuardFields) {
+                Class<?> instrumentedClass = shadowGuardField.getDeclaringClass();
+                if (classLoader != null && instrumentedClass.getClassLoader() != classLoader) {
+                    continue;
+                }
+                if (boundClass == null) {
+                    boolean logMissingShadowMethods = getBindings(instrumentedClass.getClassLoader()).logMissingShadowMethods;
+                    writeShadowGuard(shadowGuardField, logMissingShadowMethods || getShadowClassName(instrumentedClass) != null);
+                } else if (boundClass.isAssignableFrom(instrumentedClass)) {
+                    writeShadowGuard(shadowGuardField, true);
+                }
+            }
+        }
+    }
+
+    private void writeShadowGuard(Field shadowGuardField, boolean hasShadow) {
+        try {
+            shadowGuardField.setBoolean(null, hasShadow);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
-        InvocationPlan invocationPlan = new InvocationPlan(clazz, methodName, instance, paramTypes);
-        if (!invocationPlan.prepare()) {
-            reportNoShadowMethodFound(clazz, methodName, paramTypes);
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow, params);
+    }
+
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes) throws Throwable {
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow);
+    }
+
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, int param) throws Throwable {
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow, param);
+    }
+
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, float param) throws Throwable {
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow, param);
+    }
+
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, boolean param) throws Throwable {
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow, param);
+    }
+
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, int param1, int param2) throws Throwable {
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow, param1, param2);
+    }
+
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, float param1, float param2) throws Throwable {
+        ShadowDispatch shadowDispatch = getShadowDispatch(clazz, methodName, paramTypes);
+        Object shadow = getShadow(shadowDispatch, instance);
+        return getShadowMethod(shadowDispatch, shadow).invoke(shadow, param1, param2);
+    }
+
+    private Object getShadow(ShadowDispatch shadowDispatch, Object instance) {
+        if (instance == null || shadowDispatch.declaredShadowClass == null) {
             return null;
         }
+        return shadowFor(instance);
+    }
 
-        try {
-            return invocationPlan.getMethod().invoke(invocationPlan.getShadow(), params);
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException(invocationPlan.getShadow().getClass().getName() + " is not assignable from " +
-                    invocationPlan.getDeclaredShadowClass().getName(), e);
-        } catch (InvocationTargetException e) {
-            throw stripStackTrace(e.getCause());
+    /**
+     * The part of a call to a shadow method that's the same for every signature: everything but the call itself.
+     */
+    private ShadowMethod getShadowMethod(ShadowDispatch shadowDispatch, Object shadow) {
+        ShadowMethod shadowMethod = shadowDispatch.getShadowMethod(shadow);
+        if (shadowMethod == NO_SHADOW_METHOD) {
+            reportNoShadowMethodFound(shadowDispatch.clazz, shadowDispatch.methodName, shadowDispatch.paramTypes);
         }
+        return shadowMethod;
     }
 
-    private <T extends Throwable> T stripStackTrace(T throwable) {
+    private static <T extends Throwable> T stripStackTrace(T throwable) {
         List<StackTraceElement> stackTrace = new ArrayList<StackTraceElement>();
         for (StackTraceElement stackTraceElement : throwable.getStackTrace()) {
             String className = stackTraceElement.getClassName();
             boolean isInternalCall = className.startsWith("sun.reflect.")
                     || className.startsWith("java.lang.reflect.")
                     || className.equals(ShadowWrangler.class.getName())
-                    || className.equals(RobolectricInternals.class.getName());
+                    || className.equals(RobolectricInternals.class.getName())
+                    || className.contains(ShadowInvokerGenerator.INVOKER_CLASS_SUFFIX);
             if (!isInternalCall) {
                 stackTrace.add(stackTraceElement);
             }
@@ -110,7 +419,7 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     private void reportNoShadowMethodFound(Class clazz, String methodName, String[] paramTypes) {
-        if (logMissingShadowMethods) {
+        if (getBindings(clazz.getClassLoader()).logMissingShadowMethods) {
             System.out.println("No Shadow method found for " + clazz.getSimpleName() + "." + methodName + "(" +
                     Join.join(", ", (Object[]) paramTypes) + ")");
         }
@@ -143,28 +452,25 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     public Object shadowFor(Object instance) {
-        Field field = getShadowField(instance);
-        Object shadow = readField(instance, field);
+        Object shadow = readShadow(instance);
 
         if (shadow != null) {
             return shadow;
         }
 
-        String shadowClassName = getShadowClassName(instance.getClass());
+        ShadowFactory shadowFactory = getShadowFactory(instance.getClass());
 
         if (debug)
-            System.out.println("creating new " + shadowClassName + " as shadow for " + instance.getClass().getName());
+            System.out.println("creating new " + shadowFactory.shadowClass.getName() + " as shadow for " + instance.getClass().getName());
         try {
-            Class<?> shadowClass = loadClass(shadowClassName, instance.getClass().getClassLoader());
-            Constructor<?> constructor = findConstructor(instance, shadowClass);
-            if (constructor != null) {
-                shadow = constructor.newInstance(instance);
+            if (shadowFactory.constructor != null) {
+                shadow = shadowFactory.constructor.newInstance(instance);
             } else {
-                shadow = shadowClass.newInstance();
+                shadow = shadowFactory.shadowClass.newInstance();
             }
-            field.set(instance, shadow);
+            writeShadow(instance, shadow);
 
-            injectRealObjectOn(shadow, shadowClass, instance);
+            injectRealObjectOn(shadow, shadowFactory.shadowClass, instance);
 
             return shadow;
         } catch (InstantiationException e) {
@@ -176,6 +482,17 @@ public class ShadowWrangler implements ClassHandler {
         }
     }
 
+    private ShadowFactory getShadowFactory(Class<?> clazz) {
+        ShadowFactory shadowFactory = shadowFactories.get(clazz);
+        if (shadowFactory == null) {
+            String shadowClassName = getShadowClassName(clazz);
+            Class<?> shadowClass = loadClass(shadowClassName, clazz.getClassLoader());
+            shadowFactory = new ShadowFactory(shadowClass, findConstructor(clazz, shadowClass));
+            shadowFactories.put(clazz, shadowFactory);
+        }
+        return shadowFactory;
+    }
+
     private void injectRealObjectOn(Object shadow, Class<?> shadowClass, Object instance) {
         MetaShadow metaShadow = getMetaShadow(shadowClass);
         for (Field realObjectField : metaShadow.realObjectFields) {
@@ -195,17 +512,25 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     private String getShadowClassName(Class clazz) {
+        if (clazz == null) {
+            return null;
+        }
+
+        LoaderBindings bindings = getBindings(clazz.getClassLoader());
+        Map<String, String> defaultShadowClassMap = bindings.defaultShadowClassesEnabled ? bindings.defaultShadowClassMap : null;
         String shadowClassName = null;
         while (shadowClassName == null && clazz != null) {
-            shadowClassName = shadowClassMap.get(clazz.getName());
+            String className = clazz.getName();
+            shadowClassName = bindings.shadowClassMap.get(className);
+            if (shadowClassName == null && defaultShadowClassMap != null) {
+                shadowClassName = defaultShadowClassMap.get(className);
+            }
             clazz = clazz.getSuperclass();
         }
         return shadowClassName;
     }
 
-    private Constructor<?> findConstructor(Object instance, Class<?> shadowClass) {
-        Class clazz = instance.getClass();
-
+    private Constructor<?> findConstructor(Class clazz, Class<?> shadowClass) {
         Constructor constructor;
         for (constructor = null; constructor == null && clazz != null; clazz = clazz.getSuperclass()) {
             try {
@@ -235,8 +560,22 @@ public class ShadowWrangler implements ClassHandler {
         if (instance == null) {
             throw new NullPointerException("can't get a shadow for null");
         }
-        Field field = getShadowField(instance);
-        return readField(instance, field);
+        return readShadow(instance);
+    }
+
+    private Object readShadow(Object instance) {
+        if (instance instanceof ShadowedObject) {
+            return ((ShadowedObject) instance).__getShadow__();
+        }
+        return readField(instance, getShadowField(instance));
+    }
+
+    private void writeShadow(Object instance, Object shadow) {
+        if (instance instanceof ShadowedObject) {
+            ((ShadowedObject) instance).__setShadow__(shadow);
+        } else {
+            writeField(instance, shadow, getShadowField(instance));
+        }
     }
 
     private Object readField(Object target, Field field) {
@@ -255,85 +594,273 @@ public class ShadowWrangler implements ClassHandler {
         }
     }
 
+    /**
+     * @return the number of shadow method lookups answered from the dispatch cache
+     */
+    public long getDispatchCacheHits() {
+        return dispatchCacheHits.get();
+    }
+
+    /**
+     * @return the number of shadow method lookups that had to be resolved reflectively
+     */
+    public long getDispatchCacheMisses() {
+        return dispatchCacheMisses.get();
+    }
+
+    private ShadowDispatch getShadowDispatch(Class clazz, String methodName, String[] paramTypes) {
+        Map<String, ShadowDispatch> methodDispatches = dispatchCache.get(clazz);
+        if (methodDispatches != null) {
+            for (ShadowDispatch shadowDispatch = methodDispatches.get(methodName); shadowDispatch != null; shadowDispatch = shadowDispatch.nextOverload) {
+                if (shadowDispatch.matches(paramTypes)) {
+                    dispatchCacheHits.incrementAndGet();
+                    return shadowDispatch;
+                }
+            }
+        }
+
+        dispatchCacheMisses.incrementAndGet();
+        synchronized (dispatchCache) {
+            methodDispatches = dispatchCache.get(clazz);
+            if (methodDispatches == null) {
+                methodDispatches = new ConcurrentHashMap<String, ShadowDispatch>();
+                dispatchCache.put(clazz, methodDispatches);
+            }
+            ShadowDispatch shadowDispatch = new ShadowDispatch(clazz, methodName, paramTypes, methodDispatches.get(methodName));
+            methodDispatches.put(methodName, shadowDispatch);
+            return shadowDispatch;
+        }
+    }
+
+    /**
+     * Chooses between calling shadow methods through generated {@link ShadowInvoker}s (the default) or through
+     * reflection. The default may also be changed with the {@code robolectric.directDispatch} system property.
+     *
+     * @param directDispatch false to always use reflection
+     */
+    public void setDirectDispatch(boolean directDispatch) {
+        this.directDispatch = directDispatch;
+        dispatchCache.clear();
+    }
+
     public void logMissingInvokedShadowMethods() {
-        logMissingShadowMethods = true;
+        for (ClassLoader classLoader : getLoadersWithBindings()) {
+            logMissingInvokedShadowMethods(classLoader);
+        }
+    }
+
+    public void logMissingInvokedShadowMethods(ClassLoader classLoader) {
+        setLogMissingShadowMethods(classLoader, true);
     }
 
     public void silence() {
-        logMissingShadowMethods = false;
+        for (ClassLoader classLoader : getLoadersWithBindings()) {
+            silence(classLoader);
+        }
     }
 
-    private class InvocationPlan {
-        private Class clazz;
-        private ClassLoader classLoader;
-        private String methodName;
-        private Object instance;
-        private String[] paramTypes;
-        private Class<?> declaredShadowClass;
-        private Method method;
-        private Object shadow;
+    public void silence(ClassLoader classLoader) {
+        setLogMissingShadowMethods(classLoader, false);
+    }
 
-        public InvocationPlan(Class clazz, String methodName, Object instance, String... paramTypes) {
-            this.clazz = clazz;
-            this.classLoader = clazz.getClassLoader();
-            this.methodName = methodName;
-            this.instance = instance;
-            this.paramTypes = paramTypes;
+    private void setLogMissingShadowMethods(ClassLoader classLoader, boolean logMissingShadowMethods) {
+        LoaderBindings bindings = getBindings(classLoader);
+        if (bindings.logMissingShadowMethods != logMissingShadowMethods) {
+            bindings.logMissingShadowMethods = logMissingShadowMethods;
+            updateShadowGuards(classLoader, null);
         }
+    }
 
-        public Class<?> getDeclaredShadowClass() {
-            return declaredShadowClass;
+    /**
+     * The shadow classes bound for the test running in one class loader. Loaders don't share instrumented classes, so
+     * tests in different loaders can run at the same time without seeing each other's bindings.
+     */
+    private static class LoaderBindings {
+        private final Map<String, String> shadowClassMap = new ConcurrentHashMap<String, String>();
+        private volatile boolean defaultShadowClassesEnabled = true;
+        // null until default shadow classes are bound; replaced rather than changed, so they're read without locking
+        private volatile Map<String, String> defaultShadowClassMap;
+        private volatile Set<Class<?>> defaultShadowClasses = Collections.emptySet();
+        private volatile boolean logMissingShadowMethods = false;
+    }
+
+    /**
+     * A shadow method and the way to call it: through its generated {@link ShadowInvoker} if it has one, by
+     * reflection if not. {@link #NO_SHADOW_METHOD}, which has neither, returns null for every call.
+     */
+    private static class ShadowMethod {
+        private final Method method;
+        private final ShadowInvoker shadowInvoker;
+        private final Class<?> declaredShadowClass;
+
+        ShadowMethod(Method method, ShadowInvoker shadowInvoker, Class<?> declaredShadowClass) {
+            this.method = method;
+            this.shadowInvoker = shadowInvoker;
+            this.declaredShadowClass = declaredShadowClass;
         }
 
-        public Method getMethod() {
-            return method;
+        Object invoke(Object shadow, Object[] params) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, params);
+            }
+            try {
+                return shadowInvoker.invoke(shadow, params);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
         }
 
-        public Object getShadow() {
-            return shadow;
+        Object invoke(Object shadow) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, ShadowInvoker.NO_PARAMS);
+            }
+            try {
+                return shadowInvoker.invoke(shadow);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
         }
 
-        public boolean prepare() {
-            Class<?>[] paramClasses = getParamClasses();
+        Object invoke(Object shadow, int param) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, new Object[] {param});
+            }
+            try {
+                return shadowInvoker.invoke(shadow, param);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
+        }
+
+        Object invoke(Object shadow, float param) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, new Object[] {param});
+            }
+            try {
+                return shadowInvoker.invoke(shadow, param);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
+        }
+
+        Object invoke(Object shadow, boolean param) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, new Object[] {param});
+            }
+            try {
+                return shadowInvoker.invoke(shadow, param);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
+        }
+
+        Object invoke(Object shadow, int param1, int param2) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, new Object[] {param1, param2});
+            }
+            try {
+                return shadowInvoker.invoke(shadow, param1, param2);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
+        }
+
+        Object invoke(Object shadow, float param1, float param2) throws Throwable {
+            if (shadowInvoker == null) {
+                return invokeReflectively(shadow, new Object[] {param1, param2});
+            }
+            try {
+                return shadowInvoker.invoke(shadow, param1, param2);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
+        }
+
+        private Object invokeReflectively(Object shadow, Object[] params) throws Throwable {
+            if (method == null) {
+                return null;
+            }
+            try {
+                return method.invoke(shadow, params);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException(shadow.getClass().getName() + " is not assignable from " +
+                        declaredShadowClass.getName(), e);
+            } catch (InvocationTargetException e) {
+                throw stripStackTrace(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The resolved shadow dispatch for one instrumented method. Cached until the shadow class map changes; overloads
+     * of the same method name are chained through {@link #nextOverload}.
+     */
+    private class ShadowDispatch {
+        private final Class clazz;
+        private final ClassLoader classLoader;
+        private final String methodName;
+        private final String[] paramTypes;
+        private final ShadowDispatch nextOverload;
+        private final String shadowMethodName;
+        private final Class<?>[] paramClasses;
+        private final Class<?> declaredShadowClass;
+        private final Class<?> staticShadowClass;
+        private final Map<Class<?>, ShadowMethod> shadowMethods = new ConcurrentHashMap<Class<?>, ShadowMethod>();
+
+        ShadowDispatch(Class clazz, String methodName, String[] paramTypes, ShadowDispatch nextOverload) {
+            this.clazz = clazz;
+            this.classLoader = clazz.getClassLoader();
+            this.methodName = methodName;
+            this.paramTypes = paramTypes;
+            this.nextOverload = nextOverload;
+            this.shadowMethodName = methodName.equals("<init>") ? "__constructor__" : methodName;
+            this.paramClasses = getParamClasses(paramTypes);
 
             Class<?> originalClass = loadClass(clazz.getName(), classLoader);
+            declaredShadowClass = findShadowClass(findDeclaringClassForMethod(originalClass));
+            staticShadowClass = declaredShadowClass == null ? null : findShadowClass(clazz);
+        }
+
+        boolean matches(String[] paramTypes) {
+            return this.paramTypes == paramTypes || Arrays.equals(this.paramTypes, paramTypes);
+        }
 
-            declaredShadowClass = findDeclaredShadowClassForMethod(originalClass, methodName, paramClasses);
+        ShadowMethod getShadowMethod(Object shadow) {
             if (declaredShadowClass == null) {
-                return false;
+                return NO_SHADOW_METHOD;
             }
-
-            if (methodName.equals("<init>")) {
-                methodName = "__constructor__";
+            if (shadow != null) {
+                return getShadowMethodOn(shadow.getClass(), false);
             }
+            return getShadowMethodOn(staticShadowClass, true);
+        }
 
-            if (instance != null) {
-                shadow = shadowFor(instance);
-                method = getMethod(shadow.getClass(), methodName, paramClasses);
-            } else {
-                shadow = null;
-                method = getMethod(findShadowClass(clazz), methodName, paramClasses);
+        private ShadowMethod getShadowMethodOn(Class<?> shadowClass, boolean isStatic) {
+            ShadowMethod shadowMethod = shadowMethods.get(shadowClass);
+            if (shadowMethod == null) {
+                shadowMethod = findShadowMethod(shadowClass, isStatic);
+                shadowMethods.put(shadowClass, shadowMethod);
             }
+            return shadowMethod;
+        }
+
+        private ShadowMethod findShadowMethod(Class<?> shadowClass, boolean isStatic) {
+            Method method = getMethod(shadowClass, shadowMethodName, paramClasses);
 
             if (method == null) {
                 if (debug) {
-                    System.out.println("No method found for " + clazz + "." + methodName + "(" + Arrays.asList(paramClasses) + ") on " + declaredShadowClass.getName());
+                    System.out.println("No method found for " + clazz + "." + shadowMethodName + "(" + Arrays.asList(paramClasses) + ") on " + declaredShadowClass.getName());
                 }
-                return false;
+                return NO_SHADOW_METHOD;
             }
 
-            if ((instance == null) != Modifier.isStatic(method.getModifiers())) {
-                throw new RuntimeException("method staticness of " + clazz.getName() + "." + methodName + " and " + declaredShadowClass.getName() + "." + method.getName() + " don't match");
+            if (isStatic != Modifier.isStatic(method.getModifiers())) {
+                throw new RuntimeException("method staticness of " + clazz.getName() + "." + shadowMethodName + " and " + declaredShadowClass.getName() + "." + method.getName() + " don't match");
             }
 
             method.setAccessible(true);
 
-            return true;
-        }
-
-        private Class<?> findDeclaredShadowClassForMethod(Class<?> originalClass, String methodName, Class<?>[] paramClasses) {
-            Class<?> declaringClass = findDeclaringClassForMethod(methodName, paramClasses, originalClass);
-            return findShadowClass(declaringClass);
+            return new ShadowMethod(method, directDispatch ? shadowInvokerGenerator.generate(method) : null, declaredShadowClass);
         }
 
         private Class<?> findShadowClass(Class<?> originalClass) {
@@ -344,9 +871,9 @@ public class ShadowWrangler implements ClassHandler {
             return loadClass(declaredShadowClassName, classLoader);
         }
 
-        private Class<?> findDeclaringClassForMethod(String methodName, Class<?>[] paramClasses, Class<?> originalClass) {
+        private Class<?> findDeclaringClassForMethod(Class<?> originalClass) {
             Class<?> declaringClass;
-            if (this.methodName.equals("<init>")) {
+            if (methodName.equals("<init>")) {
                 declaringClass = originalClass;
             } else {
                 Method originalMethod;
@@ -360,7 +887,7 @@ public class ShadowWrangler implements ClassHandler {
             return declaringClass;
         }
 
-        private Class<?>[] getParamClasses() {
+        private Class<?>[] getParamClasses(String[] paramTypes) {
             Class<?>[] paramClasses = new Class<?>[paramTypes.length];
 
             for (int i = 0; i < paramTypes.length; i++) {
@@ -370,6 +897,10 @@ public class ShadowWrangler implements ClassHandler {
         }
 
         private Method getMethod(Class<?> clazz, String methodName, Class<?>[] paramClasses) {
+            if (!shadowIndex.mayDeclareMethod(clazz, methodName, paramClasses)) {
+                return null;
+            }
+
             Method method = null;
             try {
                 method = clazz.getMethod(methodName, paramClasses);
@@ -390,6 +921,9 @@ public class ShadowWrangler implements ClassHandler {
 
         private boolean isOnShadowClass(Method method) {
             Class<?> declaringClass = method.getDeclaringClass();
+            if (shadowIndex.isShadowClass(declaringClass)) {
+                return true;
+            }
             // why doesn't getAnnotation(com.xtremelabs.robolectric.internal.Implements) work here? It always returns null. pg 20101115
             for (Annotation annotation : declaringClass.getAnnotations()) {
                 if (annotation.annotationType().toString().equals("interface com.xtremelabs.robolectric.internal.Implements")) {
@@ -398,11 +932,15 @@ public class ShadowWrangler implements ClassHandler {
             }
             return false;
         }
+    }
+
+    private static class ShadowFactory {
+        private final Class<?> shadowClass;
+        private final Constructor<?> constructor;
 
-        @Override
-        public String toString() {
-            return "delegating to " + declaredShadowClass.getName() + "." + method.getName()
-                    + "(" + Arrays.toString(method.getParameterTypes()) + ")";
+        ShadowFactory(Class<?> shadowClass, Constructor<?> constructor) {
+            this.shadowClass = shadowClass;
+            this.constructor = constructor;
         }
     }
 
@@ -411,15 +949,37 @@ public class ShadowWrangler implements ClassHandler {
 
         public MetaShadow(Class<?> shadowClass) {
             while (shadowClass != null) {
-                for (Field field : shadowClass.getDeclaredFields()) {
-                    if (field.isAnnotationPresent(RealObject.class)) {
-                        field.setAccessible(true);
-                        realObjectFields.add(field);
+                if (!addIndexedRealObjectFields(shadowClass)) {
+                    for (Field field : shadowClass.getDeclaredFields()) {
+                        if (field.isAnnotationPresent(RealObject.class)) {
+                            field.setAccessible(true);
+                            realObjectFields.add(field);
+                        }
                     }
                 }
                 shadowClass = shadowClass.getSuperclass();
             }
 
         }
+
+        private boolean addIndexedRealObjectFields(Class<?> shadowClass) {
+            List<String> fieldNames = shadowIndex.getRealObjectFieldNames(shadowClass);
+            if (fieldNames == null) {
+                return false;
+            }
+
+            List<Field> fields = new ArrayList<Field>();
+            for (String fieldName : fieldNames) {
+                try {
+                    Field field = shadowClass.getDeclaredField(fieldName);
+                    field.setAccessible(true);
+                    fields.add(field);
+                } catch (NoSuchFieldException e) {
+                    return false;
+                }
+            }
+            realObjectFields.addAll(fields);
+            return true;
+        }
     }
 }
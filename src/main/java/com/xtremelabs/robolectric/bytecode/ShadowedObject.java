@@ -0,0 +1,11 @@
+package com.xtremelabs.robolectric.bytecode;
+
+/**
+ * Implemented by instrumented classes (see {@link ShadowWrangler#instrument(javassist.CtClass)}) so their shadow can be
+ * read and written with a plain interface call instead of reflecting on the {@code __shadow__} field.
+ */
+public interface ShadowedObject {
+    Object __getShadow__();
+
+    void __setShadow__(Object shadow);
+}
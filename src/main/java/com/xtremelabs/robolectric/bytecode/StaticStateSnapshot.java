@@ -0,0 +1,162 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the static fields of a set of classes so they can be put back the way they were before each test, instead
+ * of throwing the whole class loader away.
+ *
+ * <p>Classes added before {@link #take()} are captured when it's called; classes added afterwards are captured
+ * immediately, so they should be added right after they're initialized. Non-final fields get their old values back,
+ * and collections and maps held in static fields, final or not, get their old contents back. Arrays and other
+ * mutable objects are restored by reference only, so changes made inside them aren't undone.</p>
+ */
+public class StaticStateSnapshot {
+    private final Set<Class<?>> pendingClasses = new LinkedHashSet<Class<?>>();
+    private final Set<Class<?>> capturedClasses = new LinkedHashSet<Class<?>>();
+    private final List<SavedField> savedFields = new ArrayList<SavedField>();
+    private boolean taken;
+
+    public synchronized void add(Class<?> clazz) {
+        if (taken) {
+            capture(clazz);
+        } else {
+            pendingClasses.add(clazz);
+        }
+    }
+
+    public synchronized void take() {
+        for (Class<?> clazz : pendingClasses) {
+            capture(clazz);
+        }
+        pendingClasses.clear();
+        taken = true;
+    }
+
+    public synchronized boolean isTaken() {
+        return taken;
+    }
+
+    public synchronized void restore() {
+        for (SavedField savedField : savedFields) {
+            savedField.restore();
+        }
+    }
+
+    public synchronized int getCapturedClassCount() {
+        return capturedClasses.size();
+    }
+
+    private void capture(Class<?> clazz) {
+        if (!capturedClasses.add(clazz)) {
+            return;
+        }
+
+        Field[] declaredFields;
+        try {
+            declaredFields = clazz.getDeclaredFields();
+        } catch (LinkageError e) {
+            // a field's type couldn't be loaded; there's nothing we can do for this class
+            return;
+        }
+
+        for (Field field : declaredFields) {
+            if (isRestorable(field)) {
+                field.setAccessible(true);
+                try {
+                    SavedField savedField = SavedField.capture(field);
+                    if (savedField != null) {
+                        savedFields.add(savedField);
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private static boolean isRestorable(Field field) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) || field.isSynthetic()) {
+            return false;
+        }
+        if (field.getName().equals(AndroidTranslator.HAS_SHADOW_FIELD_NAME)) {
+            // the ShadowWrangler keeps these up to date itself
+            return false;
+        }
+        Class<?> type = field.getType();
+        return !ClassHandler.class.isAssignableFrom(type) && !ThreadLocal.class.isAssignableFrom(type);
+    }
+
+    private static class SavedField {
+        private final Field field;
+        private final boolean isFinal;
+        private final Object value;
+        private final List<Object> elements;
+        private final Map<Object, Object> entries;
+
+        @SuppressWarnings({"unchecked"})
+        static SavedField capture(Field field) throws IllegalAccessException {
+            boolean isFinal = Modifier.isFinal(field.getModifiers());
+            Object value = field.get(null);
+            if (value instanceof Collection) {
+                return new SavedField(field, isFinal, value, new ArrayList<Object>((Collection) value), null);
+            } else if (value instanceof Map) {
+                return new SavedField(field, isFinal, value, null, new LinkedHashMap<Object, Object>((Map) value));
+            } else if (isFinal) {
+                return null;
+            }
+            return new SavedField(field, false, value, null, null);
+        }
+
+        private SavedField(Field field, boolean isFinal, Object value, List<Object> elements, Map<Object, Object> entries) {
+            this.field = field;
+            this.isFinal = isFinal;
+            this.value = value;
+            this.elements = elements;
+            this.entries = entries;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        void restore() {
+            try {
+                if (!isFinal && field.get(null) != value) {
+                    field.set(null, value);
+                }
+
+                if (elements != null) {
+                    Collection<Object> collection = (Collection<Object>) value;
+                    if (!hasElements(collection)) {
+                        collection.clear();
+                        collection.addAll(elements);
+                    }
+                } else if (entries != null) {
+                    Map<Object, Object> map = (Map<Object, Object>) value;
+                    if (!map.equals(entries)) {
+                        map.clear();
+                        map.putAll(entries);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            } catch (UnsupportedOperationException e) {
+                // an unmodifiable collection that changed underneath us, e.g. a view of another one; leave it be
+            }
+        }
+
+        private boolean hasElements(Collection<Object> collection) {
+            if (collection instanceof List) {
+                return collection.equals(elements);
+            }
+            return collection.size() == elements.size() && collection.containsAll(elements);
+        }
+    }
+}
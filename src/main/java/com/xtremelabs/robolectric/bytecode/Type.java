@@ -44,6 +44,10 @@ enum Type {
         return nonPrimitiveClassName == null ? returnCtClass.getName() : nonPrimitiveClassName;
     }
 
+    String nonPrimitiveClassName(String className) {
+        return nonPrimitiveClassName == null ? className : nonPrimitiveClassName;
+    }
+
     boolean isVoid() {
         return this == VOID;
     }
@@ -74,6 +78,34 @@ enum Type {
         }
     }
 
+    public static Type find(Class clazz) {
+        if (clazz.isPrimitive()) {
+            for (Type type : Type.values()) {
+                if (type.type == clazz) {
+                    return type;
+                }
+            }
+        }
+        return OBJECT;
+    }
+
+    /**
+     * Whether {@link ClassHandler} and {@link ShadowInvoker} have a variant for these parameter types which takes
+     * them unboxed, so no parameter array needs to be allocated.
+     */
+    static boolean hasSpecializedEntryPoint(Type[] paramTypes) {
+        switch (paramTypes.length) {
+            case 0:
+                return true;
+            case 1:
+                return paramTypes[0] == INT || paramTypes[0] == FLOAT || paramTypes[0] == BOOLEAN;
+            case 2:
+                return paramTypes[0] == paramTypes[1] && (paramTypes[0] == INT || paramTypes[0] == FLOAT);
+            default:
+                return false;
+        }
+    }
+
     public static Class findPrimitiveClass(String name) {
         for (Type type : Type.values()) {
             if (type.type != null && type.type.getName().equals(name)) {
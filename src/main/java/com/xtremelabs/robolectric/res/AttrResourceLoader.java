@@ -1,13 +1,7 @@
 package com.xtremelabs.robolectric.res;
 
 import android.view.View;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,18 +16,19 @@ public class AttrResourceLoader extends XmlLoader {
         super(resourceExtractor);
     }
 
-    @Override protected void processResourceXml(File xmlFile, Document document, boolean ignored) throws Exception {
-        XPathExpression stringsXPath = XPathFactory.newInstance().newXPath().compile("/resources/declare-styleable/attr/enum");
-        NodeList stringNodes = (NodeList) stringsXPath.evaluate(document, XPathConstants.NODESET);
-        for (int i = 0; i < stringNodes.getLength(); i++) {
-            Node node = stringNodes.item(i);
-            String viewName = node.getParentNode().getParentNode().getAttributes().getNamedItem("name").getNodeValue();
-            String enumName = node.getParentNode().getAttributes().getNamedItem("name").getNodeValue();
-            String name = node.getAttributes().getNamedItem("name").getNodeValue();
-            String value = node.getAttributes().getNamedItem("value").getNodeValue();
-
-            classAttrEnumToValue.put(key(viewName, enumName, name), value);
-            knownClassAttrs.add(key(viewName, enumName));
+    @Override protected void processResourceXml(File xmlFile, XmlNode document, boolean ignored) throws Exception {
+        for (XmlNode styleableNode : document.select("/resources/declare-styleable")) {
+            String viewName = styleableNode.getAttribute("name");
+            for (XmlNode attrNode : styleableNode.getChildren("attr")) {
+                String enumName = attrNode.getAttribute("name");
+                for (XmlNode node : attrNode.getChildren("enum")) {
+                    String name = node.getAttribute("name");
+                    String value = node.getAttribute("value");
+
+                    classAttrEnumToValue.put(key(viewName, enumName, name), value);
+                    knownClassAttrs.add(key(viewName, enumName));
+                }
+            }
         }
     }
 
@@ -1,7 +1,6 @@
 package com.xtremelabs.robolectric.res;
 
 import android.graphics.Color;
-import org.w3c.dom.Node;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -55,7 +54,7 @@ public class ColorResourceLoader extends XpathResourceXmlLoader implements Resou
     }
 
     @Override
-    protected void processNode(Node node, String name, boolean ignored) {
+    protected void processNode(XmlNode node, String name, boolean ignored) {
         colorResolver.processResource(name, node.getTextContent(), this);
     }
 
@@ -1,28 +1,21 @@
 package com.xtremelabs.robolectric.res;
 
-import org.w3c.dom.Document;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
-import java.io.FileFilter;
 
 public class DocumentLoader {
+    private final XmlFileParser xmlFileParser;
     private final XmlLoader[] xmlLoaders;
-    private final DocumentBuilderFactory documentBuilderFactory;
-    private FileFilter xmlFileFilter = new FileFilter() {
-        @Override public boolean accept(File file) {
-            return file.getName().endsWith(".xml");
-        }
-    };
 
     public DocumentLoader(XmlLoader... xmlLoaders) {
-        this.xmlLoaders = xmlLoaders;
+        this(new XmlFileParser(), xmlLoaders);
+    }
 
-        documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        documentBuilderFactory.setNamespaceAware(true);
-        documentBuilderFactory.setIgnoringComments(true);
-        documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+    /**
+     * @param xmlFileParser parses the files, which may already have been parsed for another {@code DocumentLoader}
+     */
+    public DocumentLoader(XmlFileParser xmlFileParser, XmlLoader... xmlLoaders) {
+        this.xmlFileParser = xmlFileParser;
+        this.xmlLoaders = xmlLoaders;
     }
 
     public void loadResourceXmlDirs(File... resourceXmlDirs) throws Exception {
@@ -43,25 +36,41 @@ public class DocumentLoader {
         loadResourceXmlDir(resourceXmlDir, true);
     }
 
+    /**
+     * Indexes the files in the directories by the resources they hold, like {@code layout/main} for
+     * {@code layout-land/main.xml}, without parsing them; each is parsed the first time its resource is asked for.
+     */
+    public void deferResourceXmlDirs(boolean isSystem, File... resourceXmlDirs) {
+        for (File resourceXmlDir : resourceXmlDirs) {
+            if (!resourceXmlDir.exists()) {
+                throw new RuntimeException("no such directory " + resourceXmlDir);
+            }
+
+            String resourceType = resourceXmlDir.getName().split("-")[0];
+            for (File file : XmlFileParser.listXmlFiles(resourceXmlDir)) {
+                String resourceName = resourceType + "/" + file.getName().replace(".xml", "");
+                for (XmlLoader xmlLoader : xmlLoaders) {
+                    xmlLoader.deferResourceXml(resourceName, file, xmlFileParser, isSystem);
+                }
+            }
+        }
+    }
+
     private void loadResourceXmlDir(File resourceXmlDir, boolean isSystem) throws Exception {
         if (!resourceXmlDir.exists()) {
             throw new RuntimeException("no such directory " + resourceXmlDir);
         }
 
-        for (File file : resourceXmlDir.listFiles(xmlFileFilter)) {
+        for (File file : XmlFileParser.listXmlFiles(resourceXmlDir)) {
             loadResourceXmlFile(file, isSystem);
         }
     }
 
     private void loadResourceXmlFile(File file, boolean isSystem) throws Exception {
+        XmlNode document = xmlFileParser.parse(file);
         for (XmlLoader xmlLoader : xmlLoaders) {
-            xmlLoader.processResourceXml(file, parse(file), isSystem);
+            xmlLoader.processResourceXml(file, document, isSystem);
         }
     }
 
-    private Document parse(File xmlFile) throws Exception {
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        return documentBuilder.parse(xmlFile);
-    }
-
 }
@@ -4,10 +4,6 @@ import android.content.Context;
 import android.view.Menu;
 import android.view.MenuItem;
 import com.xtremelabs.robolectric.tester.android.util.TestAttributeSet;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -25,46 +21,35 @@ public class MenuLoader extends XmlLoader {
     }
 
     @Override
-    protected void processResourceXml(File xmlFile, Document document, boolean ignored) throws Exception {
+    protected void processResourceXml(File xmlFile, XmlNode document, boolean ignored) throws Exception {
         MenuNode topLevelNode = new MenuNode("top-level", new HashMap<String, String>());
 
-        NodeList items = document.getChildNodes();
-        if (items.getLength() != 1)
+        List<XmlNode> items = document.getChildren();
+        if (items.size() != 1)
             throw new RuntimeException("Expected only one top-level item in menu file " + xmlFile.getName());
-        if (items.item(0).getNodeName().compareTo("menu") != 0)
+        if (items.get(0).getName().compareTo("menu") != 0)
             throw new RuntimeException("Expected a top-level item called 'menu' in menu file " + xmlFile.getName());
 
-        processChildren(items.item(0).getChildNodes(), topLevelNode);
+        processChildren(items.get(0).getChildren(), topLevelNode);
         menuNodesByMenuName.put(
                 "menu/" + xmlFile.getName().replace(".xml", ""),
                 topLevelNode);
     }
 
-    private void processChildren(NodeList childNodes, MenuNode parent) {
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node node = childNodes.item(i);
+    private void processChildren(List<XmlNode> childNodes, MenuNode parent) {
+        for (XmlNode node : childNodes) {
             processNode(node, parent);
         }
     }
 
-    private void processNode(Node node, MenuNode parent) {
-        String name = node.getNodeName();
-        NamedNodeMap attributes = node.getAttributes();
-        Map<String, String> attrMap = new HashMap<String, String>();
-        if (attributes != null) {
-            int length = attributes.getLength();
-            for (int i = 0; i < length; i++) {
-                Node attr = attributes.item(i);
-                attrMap.put(attr.getNodeName(), attr.getNodeValue());
-            }
-        }
+    private void processNode(XmlNode node, MenuNode parent) {
+        String name = node.getName();
+        Map<String, String> attrMap = new HashMap<String, String>(node.getAttributes());
 
-        if (!name.startsWith("#")) {
-            MenuNode menuNode = new MenuNode(name, attrMap);
-            parent.addChild(menuNode);
-            if (node.getChildNodes().getLength() != 0)
-                throw new RuntimeException(node.getChildNodes().toString());
-        }
+        MenuNode menuNode = new MenuNode(name, attrMap);
+        parent.addChild(menuNode);
+        if (node.getChildren().size() != 0)
+            throw new RuntimeException(node.getChildren().toString());
     }
 
     public void inflateMenu(Context context, String key, Menu root) {
@@ -76,6 +61,7 @@ public class MenuLoader extends XmlLoader {
     }
 
     private void inflateMenu(Context context, String key, Map<String, String> attributes, Menu root) {
+        loadDeferredResourceXml(key);
         MenuNode menuNode = menuNodesByMenuName.get(key);
         if (menuNode == null) {
             throw new RuntimeException("Could not find menu " + key);
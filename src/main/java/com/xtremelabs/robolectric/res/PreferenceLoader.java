@@ -7,11 +7,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.tester.android.util.TestAttributeSet;
 
@@ -30,38 +25,26 @@ public class PreferenceLoader extends XmlLoader {
 	}
 
 	@Override
-	protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
+	protected void processResourceXml(File xmlFile, XmlNode document, boolean isSystem) throws Exception {
 		PreferenceNode topLevelNode = new PreferenceNode("top-level", new HashMap<String, String>());
-		processChildren(document.getChildNodes(), topLevelNode);
+		processChildren(document.getChildren(), topLevelNode);
 		prefNodesByResourceName.put( "xml/" + xmlFile.getName().replace(".xml", ""), topLevelNode.getChildren().get(0));
 	}
 
-    private void processChildren(NodeList childNodes, PreferenceNode parent) {
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node node = childNodes.item(i);
+    private void processChildren(List<XmlNode> childNodes, PreferenceNode parent) {
+        for (XmlNode node : childNodes) {
             processNode(node, parent);
         }
     }
 	
-    private void processNode(Node node, PreferenceNode parent) {
-        String name = node.getNodeName();
-        NamedNodeMap attributes = node.getAttributes();
-        Map<String, String> attrMap = new HashMap<String, String>();
-        
-        if (attributes != null) {
-            int length = attributes.getLength();
-            for (int i = 0; i < length; i++) {
-                Node attr = attributes.item(i);
-                attrMap.put(attr.getNodeName(), attr.getNodeValue());
-            }
-        }
+    private void processNode(XmlNode node, PreferenceNode parent) {
+        String name = node.getName();
+        Map<String, String> attrMap = new HashMap<String, String>(node.getAttributes());
         
-        if (!name.startsWith("#")) {
-	        PreferenceNode prefNode = new PreferenceNode(name, attrMap);
-	        if (parent != null) parent.addChild(prefNode);
-	
-	        processChildren(node.getChildNodes(), prefNode);  
-        }
+        PreferenceNode prefNode = new PreferenceNode(name, attrMap);
+        if (parent != null) parent.addChild(prefNode);
+
+        processChildren(node.getChildren(), prefNode);
     }
  
 	public PreferenceScreen inflatePreferences(Context context, int resourceId) {
@@ -69,6 +52,7 @@ public class PreferenceLoader extends XmlLoader {
 	}
 	
 	public PreferenceScreen inflatePreferences(Context context, String key) {
+        loadDeferredResourceXml(key);
         try {
         	PreferenceNode prefNode = prefNodesByResourceName.get(key);
         	return (PreferenceScreen) prefNode.inflate(context, null);
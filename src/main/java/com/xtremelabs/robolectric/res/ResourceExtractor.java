@@ -2,23 +2,70 @@ package com.xtremelabs.robolectric.res;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ResourceExtractor {
+    // android.R is the same for every ResourceLoader, so it's only reflected on once; weak, so class loaders can go
+    private static final Map<Class, ResourceExtractor> systemRClassExtractors = new WeakHashMap<Class, ResourceExtractor>();
+
     private Map<String, Integer> localResourceStringToId = new HashMap<String, Integer>();
+    private Map<Integer, String> localResourceIdToString = new HashMap<Integer, String>();
     private Map<String, Integer> systemResourceStringToId = new HashMap<String, Integer>();
-    private Map<Integer, String> resourceIdToString = new HashMap<Integer, String>();
+    private Map<Integer, String> systemResourceIdToString = new HashMap<Integer, String>();
+    // whether the system maps are another extractor's, which must be copied before they're added to
+    private boolean sharesSystemResources;
 
     public void addLocalRClass(Class rClass) throws Exception {
         addRClass(rClass, false);
     }
 
     public void addSystemRClass(Class rClass) throws Exception {
-        addRClass(rClass, true);
+        ResourceExtractor systemRClassExtractor;
+        synchronized (systemRClassExtractors) {
+            systemRClassExtractor = systemRClassExtractors.get(rClass);
+            if (systemRClassExtractor == null) {
+                systemRClassExtractor = new ResourceExtractor();
+                systemRClassExtractor.addRClass(rClass, true);
+                systemRClassExtractor.systemResourceStringToId = Collections.unmodifiableMap(systemRClassExtractor.systemResourceStringToId);
+                systemRClassExtractor.systemResourceIdToString = Collections.unmodifiableMap(systemRClassExtractor.systemResourceIdToString);
+                systemRClassExtractors.put(rClass, systemRClassExtractor);
+            }
+        }
+        addSystemResources(systemRClassExtractor);
+    }
+
+    private void addSystemResources(ResourceExtractor systemRClassExtractor) {
+        for (Integer localId : localResourceIdToString.keySet()) {
+            String systemName = systemRClassExtractor.systemResourceIdToString.get(localId);
+            if (systemName != null) {
+                checkUndefined(localId, systemName, localResourceIdToString);
+            }
+        }
+
+        if (systemResourceIdToString.isEmpty()) {
+            systemResourceStringToId = systemRClassExtractor.systemResourceStringToId;
+            systemResourceIdToString = systemRClassExtractor.systemResourceIdToString;
+            sharesSystemResources = true;
+        } else {
+            for (Map.Entry<Integer, String> entry : systemRClassExtractor.systemResourceIdToString.entrySet()) {
+                checkUndefined(entry.getKey(), entry.getValue(), systemResourceIdToString);
+            }
+            copySystemResources();
+            systemResourceStringToId.putAll(systemRClassExtractor.systemResourceStringToId);
+            systemResourceIdToString.putAll(systemRClassExtractor.systemResourceIdToString);
+        }
     }
 
     private void addRClass(Class rClass, boolean isSystemRClass) throws Exception {
+        if (isSystemRClass) {
+            copySystemResources();
+        }
+        Map<String, Integer> resourceStringToId = isSystemRClass ? systemResourceStringToId : localResourceStringToId;
+        Map<Integer, String> resourceIdToString = isSystemRClass ? systemResourceIdToString : localResourceIdToString;
+
         for (Class innerClass : rClass.getClasses()) {
             for (Field field : innerClass.getDeclaredFields()) {
                 if (field.getType().equals(Integer.TYPE) && Modifier.isStatic(field.getModifiers())) {
@@ -27,16 +74,10 @@ public class ResourceExtractor {
                     int value = field.getInt(null);
 
                     if (!section.equals("styleable")) {
-                        if (isSystemRClass) {
-                            systemResourceStringToId.put(name, value);
-                        } else {
-                            localResourceStringToId.put(name, value);
-                        }
-
-                        if (resourceIdToString.containsKey(value)) {
-                            throw new RuntimeException(value + " is already defined with name: " + resourceIdToString.get(value) + " can't also call it: "
-                                    + name);
-                        }
+                        resourceStringToId.put(name, value);
+
+                        checkUndefined(value, name, localResourceIdToString);
+                        checkUndefined(value, name, systemResourceIdToString);
                         resourceIdToString.put(value, name);
                     }
                 }
@@ -44,6 +85,21 @@ public class ResourceExtractor {
         }
     }
 
+    private void checkUndefined(int value, String name, Map<Integer, String> resourceIdToString) {
+        if (resourceIdToString.containsKey(value)) {
+            throw new RuntimeException(value + " is already defined with name: " + resourceIdToString.get(value) + " can't also call it: "
+                    + name);
+        }
+    }
+
+    private void copySystemResources() {
+        if (sharesSystemResources) {
+            systemResourceStringToId = new HashMap<String, Integer>(systemResourceStringToId);
+            systemResourceIdToString = new HashMap<Integer, String>(systemResourceIdToString);
+            sharesSystemResources = false;
+        }
+    }
+
     public Integer getResourceId(String resourceName) {
         if (resourceName.startsWith("@android:")) { // namespace needed for platform files
             return getResourceId(resourceName, true);
@@ -77,7 +133,8 @@ public class ResourceExtractor {
     }
 
     public String getResourceName(int resourceId) {
-        return resourceIdToString.get(resourceId);
+        String resourceName = localResourceIdToString.get(resourceId);
+        return resourceName != null ? resourceName : systemResourceIdToString.get(resourceId);
     }
 
-}
\ No newline at end of file
+}
@@ -15,13 +15,23 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 
 public class ResourceLoader {
+    /**
+     * System property which, set to true, has the resources indexed by name when they're first used rather than all
+     * loaded: each layout, menu or preference screen is then parsed the first time it's inflated, and the values
+     * directories the first time a string, or another value, is asked for.
+     */
+    public static final String LAZY_PROPERTY = "robolectric.lazyResources";
+
     private static final FileFilter MENU_DIR_FILE_FILTER = new FileFilter() {
         @Override
         public boolean accept(File file) {
@@ -48,6 +58,12 @@ public class ResourceLoader {
     private final AttrResourceLoader attrResourceLoader;
     private final ColorResourceLoader colorResourceLoader;
     private final RawResourceLoader rawResourceLoader;
+    private final ResourceXmlCache resourceXmlCache = ResourceXmlCache.getDefault();
+    private XmlFileParser xmlFileParser;
+    private File localValueResourceDir;
+    private File systemValueResourceDir;
+    private boolean stringResourcesLoaded;
+    private boolean valueResourcesLoaded;
     private boolean isInitialized = false;
 
     // TODO: get these value from the xml resources instead [xw 20101011]
@@ -81,15 +97,46 @@ public class ResourceLoader {
                 preferenceLoader = new PreferenceLoader(resourceExtractor);
 
                 File systemResourceDir = getSystemResourceDir(getPathToAndroidResources());
-                File localValueResourceDir = getValueResourceDir(resourceDir);
-                File systemValueResourceDir = getValueResourceDir(systemResourceDir);
+                localValueResourceDir = getValueResourceDir(resourceDir);
+                systemValueResourceDir = getValueResourceDir(systemResourceDir);
                 File preferenceDir = getPreferenceResourceDir(resourceDir);
 
-                loadStringResources(localValueResourceDir, systemValueResourceDir);
-                loadValueResources(localValueResourceDir, systemValueResourceDir);
-                loadViewResources(systemResourceDir, resourceDir);
-                loadMenuResources(resourceDir);
-                loadPreferenceResources(preferenceDir);
+                SystemResources systemResources = systemResourceDir != null ? SystemResources.get(sdkVersion, systemResourceDir) : null;
+                if (Boolean.getBoolean(LAZY_PROPERTY)) {
+                    // kept, and used on this thread alone, to parse the files as they're asked for
+                    xmlFileParser = new XmlFileParser(resourceXmlCache, 1, systemResources);
+                    deferViewResources(systemResourceDir, resourceDir);
+                    deferMenuResources(resourceDir);
+                    deferPreferenceResources(preferenceDir);
+                    isInitialized = true;
+                    return;
+                }
+
+                xmlFileParser = new XmlFileParser(resourceXmlCache, XmlFileParser.defaultThreadCount(), systemResources);
+                try {
+                    // every file is parsed ahead on the parser's threads, in the order the loaders below will want them
+                    List<File> xmlDirs = new ArrayList<File>();
+                    xmlDirs.add(localValueResourceDir);
+                    xmlDirs.add(systemValueResourceDir);
+                    addSubDirs(xmlDirs, resourceDir, LAYOUT_DIR_FILE_FILTER);
+                    addSubDirs(xmlDirs, systemResourceDir, LAYOUT_DIR_FILE_FILTER);
+                    addSubDirs(xmlDirs, resourceDir, MENU_DIR_FILE_FILTER);
+                    xmlDirs.add(preferenceDir);
+                    xmlFileParser.parseAhead(xmlDirs);
+
+                    loadStringResources();
+                    loadValueResources();
+                    loadViewResources(systemResourceDir, resourceDir);
+                    loadMenuResources(resourceDir);
+                    loadPreferenceResources(preferenceDir);
+                } finally {
+                    xmlFileParser.finish();
+                    xmlFileParser = null;
+                }
+
+                if (resourceXmlCache != null) {
+                    resourceXmlCache.save();
+                }
             } else {
                 viewLoader = null;
                 menuLoader = null;
@@ -101,36 +148,90 @@ public class ResourceLoader {
         isInitialized = true;
     }
 
+    private void addSubDirs(List<File> xmlDirs, File xmlResourceDir, FileFilter subDirFilter) {
+        if (xmlResourceDir != null) {
+            File[] subDirs = xmlResourceDir.listFiles(subDirFilter);
+            if (subDirs != null) {
+                xmlDirs.addAll(Arrays.asList(subDirs));
+            }
+        }
+    }
+
+    private void loadStringResourcesOnFirstUse() {
+        init();
+        if (xmlFileParser != null && !stringResourcesLoaded) {
+            try {
+                loadStringResources();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void loadValueResourcesOnFirstUse() {
+        // string arrays are made of strings
+        loadStringResourcesOnFirstUse();
+        if (xmlFileParser != null && !valueResourcesLoaded) {
+            try {
+                loadValueResources();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     private File getSystemResourceDir(String pathToAndroidResources) {
         return pathToAndroidResources != null ? new File(pathToAndroidResources) : null;
     }
 
-    private void loadStringResources(File localResourceDir, File systemValueResourceDir) throws Exception {
-        DocumentLoader stringResourceDocumentLoader = new DocumentLoader(this.stringResourceLoader);
-        loadValueResourcesFromDirs(stringResourceDocumentLoader, localResourceDir, systemValueResourceDir);
+    private void loadStringResources() throws Exception {
+        DocumentLoader stringResourceDocumentLoader = new DocumentLoader(xmlFileParser, this.stringResourceLoader);
+        loadValueResourcesFromDirs(stringResourceDocumentLoader, localValueResourceDir, systemValueResourceDir);
+        stringResourcesLoaded = true;
     }
 
-    private void loadValueResources(File localResourceDir, File systemValueResourceDir) throws Exception {
-        DocumentLoader valueResourceLoader = new DocumentLoader(stringArrayResourceLoader, colorResourceLoader, attrResourceLoader);
-        loadValueResourcesFromDirs(valueResourceLoader, localResourceDir, systemValueResourceDir);
+    private void loadValueResources() throws Exception {
+        DocumentLoader valueResourceLoader = new DocumentLoader(xmlFileParser, stringArrayResourceLoader, colorResourceLoader, attrResourceLoader);
+        loadValueResourcesFromDirs(valueResourceLoader, localValueResourceDir, systemValueResourceDir);
+        valueResourcesLoaded = true;
     }
 
     private void loadViewResources(File systemResourceDir, File xmlResourceDir) throws Exception {
-        DocumentLoader viewDocumentLoader = new DocumentLoader(viewLoader);
+        DocumentLoader viewDocumentLoader = new DocumentLoader(xmlFileParser, viewLoader);
         loadLayoutResourceXmlSubDirs(viewDocumentLoader, xmlResourceDir);
         loadLayoutResourceXmlSubDirs(viewDocumentLoader, systemResourceDir);
     }
 
     private void loadMenuResources(File xmlResourceDir) throws Exception {
-        DocumentLoader menuDocumentLoader = new DocumentLoader(menuLoader);
+        DocumentLoader menuDocumentLoader = new DocumentLoader(xmlFileParser, menuLoader);
         loadMenuResourceXmlDirs(menuDocumentLoader, xmlResourceDir);
     }
 
     private void loadPreferenceResources(File xmlResourceDir) throws Exception {
-        DocumentLoader preferenceDocumentLoader = new DocumentLoader(preferenceLoader);
+        DocumentLoader preferenceDocumentLoader = new DocumentLoader(xmlFileParser, preferenceLoader);
         preferenceDocumentLoader.loadResourceXmlDir(xmlResourceDir);
     }
     
+    private void deferViewResources(File systemResourceDir, File xmlResourceDir) {
+        DocumentLoader viewDocumentLoader = new DocumentLoader(xmlFileParser, viewLoader);
+        deferResourceXmlSubDirs(viewDocumentLoader, xmlResourceDir, LAYOUT_DIR_FILE_FILTER);
+        deferResourceXmlSubDirs(viewDocumentLoader, systemResourceDir, LAYOUT_DIR_FILE_FILTER);
+    }
+
+    private void deferMenuResources(File xmlResourceDir) {
+        deferResourceXmlSubDirs(new DocumentLoader(xmlFileParser, menuLoader), xmlResourceDir, MENU_DIR_FILE_FILTER);
+    }
+
+    private void deferPreferenceResources(File xmlResourceDir) {
+        new DocumentLoader(xmlFileParser, preferenceLoader).deferResourceXmlDirs(false, xmlResourceDir);
+    }
+
+    private void deferResourceXmlSubDirs(DocumentLoader documentLoader, File xmlResourceDir, FileFilter subDirFilter) {
+        if (xmlResourceDir != null) {
+            documentLoader.deferResourceXmlDirs(false, xmlResourceDir.listFiles(subDirFilter));
+        }
+    }
+
     private void loadLayoutResourceXmlSubDirs(DocumentLoader layoutDocumentLoader, File xmlResourceDir) throws Exception {
         if (xmlResourceDir != null) {
             layoutDocumentLoader.loadResourceXmlDirs(xmlResourceDir.listFiles(LAYOUT_DIR_FILE_FILTER));
@@ -273,17 +374,17 @@ public class ResourceLoader {
     }
 
     public View inflateView(Context context, int resource, ViewGroup viewGroup) {
-        init();
+        loadValueResourcesOnFirstUse();
         return viewLoader.inflateView(context, resource, viewGroup);
     }
     
     public int getColorValue(int id) {
-        init();
+        loadValueResourcesOnFirstUse();
         return colorResourceLoader.getValue(id);
     }
 
     public String getStringValue(int id) {
-        init();
+        loadStringResourcesOnFirstUse();
         return stringResourceLoader.getValue(id);
     }
 
@@ -293,12 +394,12 @@ public class ResourceLoader {
     }
 
     public String[] getStringArrayValue(int id) {
-        init();
+        loadValueResourcesOnFirstUse();
         return stringArrayResourceLoader.getArrayValue(id);
     }
 
     public void inflateMenu(Context context, int resource, Menu root) {
-        init();
+        loadValueResourcesOnFirstUse();
         menuLoader.inflateMenu(context, resource, root);
     }
     
@@ -0,0 +1,396 @@
+package com.xtremelabs.robolectric.res;
+
+import com.xtremelabs.robolectric.bytecode.ClassCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the resource XML files of previous runs on disk as {@link XmlNode}s, so {@link DocumentLoader} only has to
+ * parse the files that have changed since.
+ *
+ * <p>Entries are keyed by the file's absolute path, length and modification time. The SDK's resources are under
+ * {@code platforms/android-N}, so each SDK version has entries of its own. The whole cache file is read with a single
+ * sequential read the first time a file is asked for; an entry's nodes are only decoded when its own file is. When
+ * files have been parsed, {@link #save()} (called for the default cache by the test runner when the JVM exits, too)
+ * writes the cache out again, without the entries of files that no longer exist, to a temporary file that's renamed
+ * over the old one, so other JVMs reading it never see it half written. Entries that haven't been decoded are copied
+ * across as they are, with just their string indexes renumbered.</p>
+ *
+ * <p>Layout: {@code int magic, int formatVersion, int stringCount, string[stringCount], int entryCount,
+ * entry[entryCount]}, where a string is {@code int length, byte[length] utf8}, an entry is {@code int path,
+ * long length, long lastModified, int nodeByteCount, byte[nodeByteCount] node}, and a node is {@code int name,
+ * int attributeCount, (int name, int value)[attributeCount], int childCount, int text,
+ * (node child, int text)[childCount]}, each int naming a string by its index.</p>
+ */
+public class ResourceXmlCache {
+    /**
+     * System property which, set to false, has every resource file parsed every time.
+     */
+    public static final String ENABLED_PROPERTY = "robolectric.resourceCache";
+
+    private static final String CACHE_FILE_NAME = "robolectric-resources.cache";
+    private static final int MAGIC = 0x52425843;
+    private static final int FORMAT_VERSION = 1;
+    private static final String UTF_8 = "UTF-8";
+
+    private static ResourceXmlCache defaultCache;
+
+    private final File cacheFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private String[] strings = new String[0];
+    private boolean loaded;
+    private boolean changed;
+
+    /**
+     * The test runner has this class loaded by its own class loader rather than each instrumenting one, so there's one
+     * default cache in the JVM, and no loader saves over the files another has added.
+     *
+     * @return the cache kept in the {@link ClassCache#CACHE_DIR_PROPERTY} directory, or null if it's turned off
+     */
+    public static synchronized ResourceXmlCache getDefault() {
+        if (!Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, "true"))) {
+            return null;
+        }
+        if (defaultCache == null) {
+            File cacheDir = new File(ClassCache.defaultCachePath()).getAbsoluteFile().getParentFile();
+            defaultCache = new ResourceXmlCache(new File(cacheDir, CACHE_FILE_NAME));
+        }
+        return defaultCache;
+    }
+
+    public ResourceXmlCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @return the nodes of the file if they were cached when it had the given length and modification time, or null
+     */
+    public synchronized XmlNode get(File file, long length, long lastModified) {
+        load();
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null || entry.length != length || entry.lastModified != lastModified) {
+            return null;
+        }
+        XmlNode document = decode(entry);
+        if (document == null) {
+            entries.remove(file.getAbsolutePath());
+            changed = true;
+        }
+        return document;
+    }
+
+    /**
+     * Caches a file's nodes, parsed from the file as it was when it had the given length and modification time.
+     */
+    public synchronized void put(File file, long length, long lastModified, XmlNode document) {
+        load();
+        entries.put(file.getAbsolutePath(), new Entry(length, lastModified, document));
+        changed = true;
+    }
+
+    /**
+     * Writes out the cache if any files have been parsed, and lets go of the nodes it's holding, keeping them just as
+     * they were written; they're decoded again if they're asked for again.
+     */
+    public synchronized void save() {
+        if (changed) {
+            write();
+        }
+        changed = false;
+    }
+
+    private void write() {
+        try {
+            StringPool stringPool = new StringPool();
+            Map<String, byte[]> encodedEntries = encodeEntries(stringPool);
+            byte[] cacheBytes = toBytes(stringPool, encodedEntries);
+
+            // the index now matches what's written, so it needn't be read again
+            entries.keySet().retainAll(encodedEntries.keySet());
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                entry.nodeBytes = encodedEntries.get(mapEntry.getKey());
+                entry.document = null;
+            }
+            strings = stringPool.strings.toArray(new String[stringPool.strings.size()]);
+
+            File dir = cacheFile.getAbsoluteFile().getParentFile();
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            // named uniquely, since other JVMs may be saving at the same time
+            File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+            OutputStream outputStream = new FileOutputStream(tmpFile);
+            try {
+                outputStream.write(cacheBytes);
+            } finally {
+                outputStream.close();
+            }
+            if (!tmpFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                tmpFile.renameTo(cacheFile);
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: couldn't save resource cache to " + cacheFile + ": " + e);
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!cacheFile.exists()) {
+            return;
+        }
+        try {
+            read();
+        } catch (IOException e) {
+            // the files will just be parsed again
+            System.err.println("WARNING: ignoring unreadable resource cache " + cacheFile + ": " + e);
+            entries.clear();
+            strings = new String[0];
+        }
+    }
+
+    private void read() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+        byte[] cacheBytes;
+        try {
+            cacheBytes = new byte[(int) file.length()];
+            file.readFully(cacheBytes);
+        } finally {
+            file.close();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(cacheBytes));
+        if (cacheBytes.length < 8 || in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            return;
+        }
+
+        strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] utf8 = new byte[in.readInt()];
+            in.readFully(utf8);
+            strings[i] = new String(utf8, UTF_8);
+        }
+
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            String path = readString(in);
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            byte[] nodeBytes = new byte[in.readInt()];
+            in.readFully(nodeBytes);
+            entries.put(path, new Entry(length, lastModified, nodeBytes));
+        }
+    }
+
+    private XmlNode decode(Entry entry) {
+        if (entry.document == null) {
+            try {
+                entry.document = readNode(new DataInputStream(new ByteArrayInputStream(entry.nodeBytes)));
+                entry.nodeBytes = null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return entry.document;
+    }
+
+    private XmlNode readNode(DataInputStream in) throws IOException {
+        String name = readString(in);
+
+        int attributeCount = in.readInt();
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put(readString(in), readString(in));
+        }
+
+        int childCount = in.readInt();
+        List<XmlNode> children = new ArrayList<XmlNode>(childCount);
+        String[] texts = new String[childCount + 1];
+        texts[0] = readString(in);
+        for (int i = 0; i < childCount; i++) {
+            children.add(readNode(in));
+            texts[i + 1] = readString(in);
+        }
+        return new XmlNode(name, attributes, children, texts);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int index = in.readInt();
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("no string " + index);
+        }
+        return strings[index];
+    }
+
+    /**
+     * @return the node bytes of each entry whose file still exists, by path, with strings numbered by {@code stringPool}
+     */
+    private Map<String, byte[]> encodeEntries(StringPool stringPool) {
+        Map<String, byte[]> encodedEntries = new LinkedHashMap<String, byte[]>();
+        int[] stringIndexes = new int[strings.length];
+        Arrays.fill(stringIndexes, -1);
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            String path = mapEntry.getKey();
+            Entry entry = mapEntry.getValue();
+            if (!new File(path).exists()) {
+                continue;
+            }
+
+            ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(nodeBytes);
+            try {
+                if (entry.document != null) {
+                    writeNode(out, entry.document, stringPool);
+                } else {
+                    copyNode(new DataInputStream(new ByteArrayInputStream(entry.nodeBytes)), out, stringIndexes, stringPool);
+                }
+                out.flush();
+            } catch (IOException e) {
+                // an entry that can't be read is dropped, and its file parsed again next time
+                continue;
+            }
+            encodedEntries.put(path, nodeBytes.toByteArray());
+        }
+        return encodedEntries;
+    }
+
+    private byte[] toBytes(StringPool stringPool, Map<String, byte[]> encodedEntries) throws IOException {
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        DataOutputStream entriesOut = new DataOutputStream(entryBytes);
+        for (Map.Entry<String, byte[]> encodedEntry : encodedEntries.entrySet()) {
+            String path = encodedEntry.getKey();
+            Entry entry = entries.get(path);
+            byte[] nodeBytes = encodedEntry.getValue();
+            entriesOut.writeInt(stringPool.indexOf(path));
+            entriesOut.writeLong(entry.length);
+            entriesOut.writeLong(entry.lastModified);
+            entriesOut.writeInt(nodeBytes.length);
+            entriesOut.write(nodeBytes);
+        }
+        entriesOut.flush();
+        int entryCount = encodedEntries.size();
+
+        ByteArrayOutputStream cacheBytes = new ByteArrayOutputStream(entryBytes.size() + 64 * 1024);
+        DataOutputStream out = new DataOutputStream(cacheBytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(stringPool.strings.size());
+        for (String string : stringPool.strings) {
+            byte[] utf8 = string.getBytes(UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        out.writeInt(entryCount);
+        entryBytes.writeTo(out);
+        out.flush();
+        return cacheBytes.toByteArray();
+    }
+
+    private void writeNode(DataOutputStream out, XmlNode node, StringPool stringPool) throws IOException {
+        out.writeInt(stringPool.indexOf(node.getName()));
+
+        Map<String, String> attributes = node.getAttributes();
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            out.writeInt(stringPool.indexOf(attribute.getKey()));
+            out.writeInt(stringPool.indexOf(attribute.getValue()));
+        }
+
+        List<XmlNode> children = node.getChildren();
+        String[] texts = node.getTexts();
+        out.writeInt(children.size());
+        out.writeInt(stringPool.indexOf(texts[0]));
+        for (int i = 0; i < children.size(); i++) {
+            writeNode(out, children.get(i), stringPool);
+            out.writeInt(stringPool.indexOf(texts[i + 1]));
+        }
+    }
+
+    /**
+     * Copies a node read from the cache file, renumbering its strings as {@code stringPool} numbers them.
+     *
+     * @param stringIndexes the strings' new indexes, by their old ones, or -1 where they haven't been looked up yet
+     */
+    private void copyNode(DataInputStream in, DataOutputStream out, int[] stringIndexes, StringPool stringPool) throws IOException {
+        out.writeInt(copyString(in, stringIndexes, stringPool));
+
+        int attributeCount = in.readInt();
+        out.writeInt(attributeCount);
+        for (int i = 0; i < attributeCount; i++) {
+            out.writeInt(copyString(in, stringIndexes, stringPool));
+            out.writeInt(copyString(in, stringIndexes, stringPool));
+        }
+
+        int childCount = in.readInt();
+        out.writeInt(childCount);
+        out.writeInt(copyString(in, stringIndexes, stringPool));
+        for (int i = 0; i < childCount; i++) {
+            copyNode(in, out, stringIndexes, stringPool);
+            out.writeInt(copyString(in, stringIndexes, stringPool));
+        }
+    }
+
+    private int copyString(DataInputStream in, int[] stringIndexes, StringPool stringPool) throws IOException {
+        int index = in.readInt();
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("no string " + index);
+        }
+        if (stringIndexes[index] < 0) {
+            stringIndexes[index] = stringPool.indexOf(strings[index]);
+        }
+        return stringIndexes[index];
+    }
+
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        byte[] nodeBytes;
+        XmlNode document;
+
+        Entry(long length, long lastModified, byte[] nodeBytes) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.nodeBytes = nodeBytes;
+        }
+
+        Entry(long length, long lastModified, XmlNode document) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.document = document;
+        }
+    }
+
+    // the same element and attribute names, values and whitespace come up again and again, so each is written once
+    private static class StringPool {
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        int indexOf(String string) {
+            Integer index = indexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                indexes.put(string, index);
+                strings.add(string);
+            }
+            return index;
+        }
+    }
+}
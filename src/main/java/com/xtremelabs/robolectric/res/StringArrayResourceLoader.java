@@ -1,12 +1,5 @@
 package com.xtremelabs.robolectric.res;
 
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -26,13 +19,9 @@ public class StringArrayResourceLoader extends XpathResourceXmlLoader {
         return stringArrayValues.get(resourceName);
     }
 
-    @Override protected void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException {
-        XPathExpression itemXPath = XPathFactory.newInstance().newXPath().compile("item");
-        NodeList childNodes = (NodeList) itemXPath.evaluate(node, XPathConstants.NODESET);
+    @Override protected void processNode(XmlNode node, String name, boolean isSystem) {
         List<String> arrayValues = new ArrayList<String>();
-        for (int j = 0; j < childNodes.getLength(); j++) {
-            Node childNode = childNodes.item(j);
-
+        for (XmlNode childNode : node.getChildren("item")) {
             String value = childNode.getTextContent();
             if (value.startsWith("@")) {
                 value = value.substring(1);
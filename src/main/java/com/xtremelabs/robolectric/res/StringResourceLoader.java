@@ -1,7 +1,5 @@
 package com.xtremelabs.robolectric.res;
 
-import org.w3c.dom.Node;
-
 public class StringResourceLoader extends XpathResourceXmlLoader implements ResourceValueConverter {
     private ResourceReferenceResolver<String> stringResolver = new ResourceReferenceResolver<String>("string");
 
@@ -17,7 +15,7 @@ public class StringResourceLoader extends XpathResourceXmlLoader implements Reso
         return getValue(resourceExtractor.getResourceId(resourceName, isSystem));
     }
 
-    @Override protected void processNode(Node node, String name, boolean ignored) {
+    @Override protected void processNode(XmlNode node, String name, boolean ignored) {
         stringResolver.processResource(name, node.getTextContent(), this);
     }
 
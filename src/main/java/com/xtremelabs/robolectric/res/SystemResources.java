@@ -0,0 +1,85 @@
+package com.xtremelabs.robolectric.res;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Android SDK's own resource files, parsed once per JVM for each SDK version and resource directory and shared by
+ * every {@link ResourceLoader} that uses them, however many test configurations there are.
+ *
+ * <p>Only the parsed {@link XmlNode}s are shared, since nothing changes them once they're built; each ResourceLoader
+ * still has its loaders process them, because an app's resources are merged with the system ones under the same
+ * names. Safe for any number of threads.</p>
+ *
+ * <p>The test runner has this class and {@link XmlNode} loaded by its own class loader rather than each instrumenting
+ * one, so they're shared by every test class too. The nodes are only softly held, so the SDK's files, its layouts
+ * above all, can be let go of when memory runs short and parsed again if they're needed.</p>
+ */
+public class SystemResources {
+    private static final Map<String, SystemResources> instances = new HashMap<String, SystemResources>();
+
+    private final File resourceDir;
+    private final ConcurrentMap<File, SoftReference<XmlNode>> documents = new ConcurrentHashMap<File, SoftReference<XmlNode>>();
+
+    /**
+     * @param resourceDir the SDK's {@code data/res} directory
+     */
+    public static synchronized SystemResources get(int sdkVersion, File resourceDir) {
+        resourceDir = resourceDir.getAbsoluteFile();
+        String key = sdkVersion + File.pathSeparator + resourceDir.getPath();
+        SystemResources systemResources = instances.get(key);
+        if (systemResources == null) {
+            systemResources = new SystemResources(resourceDir);
+            instances.put(key, systemResources);
+        }
+        return systemResources;
+    }
+
+    private SystemResources(File resourceDir) {
+        this.resourceDir = resourceDir;
+    }
+
+    /**
+     * @return whether the file is one of the SDK's resource files, like {@code data/res/values/strings.xml}
+     */
+    public boolean holds(File xmlFile) {
+        File dir = xmlFile.getAbsoluteFile().getParentFile();
+        return dir != null && resourceDir.equals(dir.getParentFile());
+    }
+
+    /**
+     * @return the file's nodes, or null if no ResourceLoader has needed it yet, or they've been let go of since
+     */
+    public XmlNode getDocument(File xmlFile) {
+        SoftReference<XmlNode> documentReference = documents.get(xmlFile.getAbsoluteFile());
+        return documentReference != null ? documentReference.get() : null;
+    }
+
+    /**
+     * Shares the file's nodes, unless another thread got there first.
+     *
+     * @return the nodes that are shared, which every caller should use
+     */
+    public XmlNode putDocument(File xmlFile, XmlNode document) {
+        File key = xmlFile.getAbsoluteFile();
+        SoftReference<XmlNode> documentReference = new SoftReference<XmlNode>(document);
+        while (true) {
+            SoftReference<XmlNode> sharedReference = documents.putIfAbsent(key, documentReference);
+            if (sharedReference == null) {
+                return document;
+            }
+            XmlNode sharedDocument = sharedReference.get();
+            if (sharedDocument != null) {
+                return sharedDocument;
+            }
+            // the shared nodes have been let go of, so these take their place
+            if (documents.replace(key, sharedReference, documentReference)) {
+                return document;
+            }
+        }
+    }
+}
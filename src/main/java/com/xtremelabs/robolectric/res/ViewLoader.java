@@ -6,10 +6,6 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import com.xtremelabs.robolectric.tester.android.util.TestAttributeSet;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
@@ -32,32 +28,23 @@ public class ViewLoader extends XmlLoader {
     }
 
     @Override
-    protected void processResourceXml(File xmlFile, Document document, boolean ignored) throws Exception {
+    protected void processResourceXml(File xmlFile, XmlNode document, boolean ignored) throws Exception {
         ViewNode topLevelNode = new ViewNode("top-level", new HashMap<String, String>());
-        processChildren(document.getChildNodes(), topLevelNode);
+        processChildren(document.getChildren(), topLevelNode);
         viewNodesByLayoutName.put(
                 "layout/" + xmlFile.getName().replace(".xml", ""),
                 topLevelNode.getChildren().get(0));
     }
 
-    private void processChildren(NodeList childNodes, ViewNode parent) {
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node node = childNodes.item(i);
+    private void processChildren(List<XmlNode> childNodes, ViewNode parent) {
+        for (XmlNode node : childNodes) {
             processNode(node, parent);
         }
     }
 
-    private void processNode(Node node, ViewNode parent) {
-        String name = node.getNodeName();
-        NamedNodeMap attributes = node.getAttributes();
-        Map<String, String> attrMap = new HashMap<String, String>();
-        if (attributes != null) {
-            int length = attributes.getLength();
-            for (int i = 0; i < length; i++) {
-                Node attr = attributes.item(i);
-                attrMap.put(attr.getNodeName(), attr.getNodeValue());
-            }
-        }
+    private void processNode(XmlNode node, ViewNode parent) {
+        String name = node.getName();
+        Map<String, String> attrMap = new HashMap<String, String>(node.getAttributes());
 
         if (name.equals("requestFocus")) {
             parent.attributes.put("android:focus", "true");
@@ -66,7 +53,7 @@ public class ViewLoader extends XmlLoader {
             ViewNode viewNode = new ViewNode(name, attrMap);
             if (parent != null) parent.addChild(viewNode);
 
-            processChildren(node.getChildNodes(), viewNode);
+            processChildren(node.getChildren(), viewNode);
         }
     }
 
@@ -83,6 +70,7 @@ public class ViewLoader extends XmlLoader {
     }
 
     private View inflateView(Context context, String key, Map<String, String> attributes, View parent) {
+        loadDeferredResourceXml(key);
         ViewNode viewNode = viewNodesByLayoutName.get(key);
         if (viewNode == null) {
             throw new RuntimeException("Could not find layout " + key);
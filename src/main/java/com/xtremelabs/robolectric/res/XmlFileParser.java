@@ -0,0 +1,228 @@
+package com.xtremelabs.robolectric.res;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns resource XML files into {@link XmlNode}s, each file just once however many {@link DocumentLoader}s ask for
+ * it, taking them from the {@link ResourceXmlCache} where it can. A file is read in a single StAX pass, never held as
+ * a DOM.
+ *
+ * <p>Files handed to {@link #parseAhead(Collection)} are parsed on a pool of threads while the loaders work through
+ * the ones before them; the loaders still see every file on the calling thread, in the order they ask for them, so
+ * the resources come out the same as when the files are parsed one by one.</p>
+ *
+ * <p>With a single thread nothing is parsed ahead, and the files aren't kept once they've been handed out, so a parser
+ * kept for loading resources lazily doesn't hold on to every file it has parsed.</p>
+ */
+public class XmlFileParser {
+    /**
+     * System property giving the number of threads resource files are parsed on; 1 parses each file when it's needed.
+     */
+    public static final String THREADS_PROPERTY = "robolectric.resourceParserThreads";
+
+    private static final FileFilter XML_FILE_FILTER = new FileFilter() {
+        @Override public boolean accept(File file) {
+            return file.getName().endsWith(".xml");
+        }
+    };
+
+    private final ResourceXmlCache resourceXmlCache;
+    private final SystemResources systemResources;
+    private final int threadCount;
+    private final XMLInputFactory xmlInputFactory;
+    private final Map<File, Future<XmlNode>> documents = new HashMap<File, Future<XmlNode>>();
+    private ExecutorService executorService;
+
+    public static int defaultThreadCount() {
+        return Math.max(1, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return the XML files in the directory, by name, or none if it doesn't exist
+     */
+    public static File[] listXmlFiles(File dir) {
+        File[] files = dir.listFiles(XML_FILE_FILTER);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    public XmlFileParser() {
+        this(null, 1);
+    }
+
+    /**
+     * @param resourceXmlCache where files parsed by earlier runs are kept, or null to parse every file
+     */
+    public XmlFileParser(ResourceXmlCache resourceXmlCache, int threadCount) {
+        this(resourceXmlCache, threadCount, null);
+    }
+
+    /**
+     * @param systemResources where the SDK's files, already parsed for other ResourceLoaders, are kept, or null
+     */
+    public XmlFileParser(ResourceXmlCache resourceXmlCache, int threadCount, SystemResources systemResources) {
+        this.resourceXmlCache = resourceXmlCache;
+        this.systemResources = systemResources;
+        this.threadCount = threadCount;
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Starts parsing the XML files in the directories, in order, on the pool's threads.
+     */
+    public synchronized void parseAhead(Collection<File> xmlDirs) {
+        if (threadCount < 2) {
+            return;
+        }
+        if (executorService == null) {
+            executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "robolectric-resource-parser-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        for (File xmlDir : xmlDirs) {
+            if (xmlDir == null) {
+                continue;
+            }
+            for (File xmlFile : listXmlFiles(xmlDir)) {
+                if (!documents.containsKey(xmlFile)) {
+                    FutureTask<XmlNode> task = newTask(xmlFile);
+                    documents.put(xmlFile, task);
+                    executorService.execute(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the file's nodes, waiting for them if the file is still being parsed
+     */
+    public XmlNode parse(File xmlFile) throws Exception {
+        if (threadCount < 2) {
+            return load(xmlFile);
+        }
+
+        Future<XmlNode> document;
+        boolean parseHere = false;
+        synchronized (this) {
+            document = documents.get(xmlFile);
+            if (document == null) {
+                document = newTask(xmlFile);
+                documents.put(xmlFile, document);
+                parseHere = true;
+            }
+        }
+        if (parseHere) {
+            ((FutureTask<XmlNode>) document).run();
+        }
+
+        try {
+            return document.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Stops the threads, and lets go of the files that have been parsed.
+     */
+    public synchronized void finish() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+        documents.clear();
+    }
+
+    private FutureTask<XmlNode> newTask(final File xmlFile) {
+        return new FutureTask<XmlNode>(new Callable<XmlNode>() {
+            @Override public XmlNode call() throws Exception {
+                return load(xmlFile);
+            }
+        });
+    }
+
+    private XmlNode load(File xmlFile) throws Exception {
+        if (systemResources == null || !systemResources.holds(xmlFile)) {
+            return loadFromCache(xmlFile);
+        }
+
+        XmlNode document = systemResources.getDocument(xmlFile);
+        if (document == null) {
+            document = systemResources.putDocument(xmlFile, loadFromCache(xmlFile));
+        }
+        return document;
+    }
+
+    private XmlNode loadFromCache(File xmlFile) throws Exception {
+        if (resourceXmlCache == null) {
+            return parseFile(xmlFile);
+        }
+
+        // checked before parsing, so a file changed while it's being parsed is parsed again next time
+        long length = xmlFile.length();
+        long lastModified = xmlFile.lastModified();
+        XmlNode document = resourceXmlCache.get(xmlFile, length, lastModified);
+        if (document == null) {
+            document = parseFile(xmlFile);
+            resourceXmlCache.put(xmlFile, length, lastModified, document);
+        }
+        return document;
+    }
+
+    private XmlNode parseFile(File xmlFile) throws Exception {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(xmlFile));
+        try {
+            XMLStreamReader reader = createReader(xmlFile, inputStream);
+            try {
+                return XmlNode.fromStream(reader);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    // the factory can be shared once it's set up, but isn't promised to be safe for threads creating readers together
+    private XMLStreamReader createReader(File xmlFile, InputStream inputStream) throws XMLStreamException {
+        synchronized (xmlInputFactory) {
+            return xmlInputFactory.createXMLStreamReader(xmlFile.toURI().toString(), inputStream);
+        }
+    }
+}
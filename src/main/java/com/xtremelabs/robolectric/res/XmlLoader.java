@@ -1,15 +1,54 @@
 package com.xtremelabs.robolectric.res;
 
-import org.w3c.dom.Document;
-
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class XmlLoader {
     protected ResourceExtractor resourceExtractor;
+    private final Map<String, DeferredFile> deferredFiles = new HashMap<String, DeferredFile>();
 
     public XmlLoader(ResourceExtractor resourceExtractor) {
         this.resourceExtractor = resourceExtractor;
     }
 
-    protected abstract void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception;
+    protected abstract void processResourceXml(File xmlFile, XmlNode document, boolean isSystem) throws Exception;
+
+    /**
+     * Leaves the file to be parsed and processed when {@link #loadDeferredResourceXml(String)} is first called for
+     * the resource it holds. A file deferred later for the same resource replaces the earlier one, just as it would
+     * if both were processed.
+     *
+     * @param resourceName the resource the file holds, like {@code layout/main}
+     */
+    void deferResourceXml(String resourceName, File xmlFile, XmlFileParser xmlFileParser, boolean isSystem) {
+        deferredFiles.put(resourceName, new DeferredFile(xmlFile, xmlFileParser, isSystem));
+    }
+
+    /**
+     * Processes the file deferred for the resource, if it hasn't been processed already.
+     */
+    protected void loadDeferredResourceXml(String resourceName) {
+        DeferredFile deferredFile = deferredFiles.remove(resourceName);
+        if (deferredFile == null) {
+            return;
+        }
+        try {
+            processResourceXml(deferredFile.xmlFile, deferredFile.xmlFileParser.parse(deferredFile.xmlFile), deferredFile.isSystem);
+        } catch (Exception e) {
+            throw new RuntimeException("error loading " + deferredFile.xmlFile, e);
+        }
+    }
+
+    private static class DeferredFile {
+        final File xmlFile;
+        final XmlFileParser xmlFileParser;
+        final boolean isSystem;
+
+        DeferredFile(File xmlFile, XmlFileParser xmlFileParser, boolean isSystem) {
+            this.xmlFile = xmlFile;
+            this.xmlFileParser = xmlFileParser;
+            this.isSystem = isSystem;
+        }
+    }
 }
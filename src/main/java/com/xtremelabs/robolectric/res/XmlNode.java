@@ -0,0 +1,237 @@
+package com.xtremelabs.robolectric.res;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An element of a resource XML file, with its attributes, child elements and the text between them: everything the
+ * {@link XmlLoader}s need from the file, in a form that's much smaller than a DOM and that {@link ResourceXmlCache} can
+ * write to disk.
+ *
+ * <p>A whole file is a node named {@link #DOCUMENT} whose children are its top-level elements. It's read in a single
+ * streaming pass by {@link #fromStream(XMLStreamReader)}, without building a DOM first.</p>
+ */
+public class XmlNode {
+    public static final String DOCUMENT = "#document";
+
+    private final String name;
+    private final Map<String, String> attributes;
+    private final List<XmlNode> children;
+    // texts[i] is the text before children[i]; the last one is the text after the last child
+    private final String[] texts;
+
+    public XmlNode(String name, Map<String, String> attributes, List<XmlNode> children, String[] texts) {
+        if (texts.length != children.size() + 1) {
+            throw new IllegalArgumentException("expected " + (children.size() + 1) + " texts for " + name + " but got " + texts.length);
+        }
+        this.name = name;
+        this.attributes = attributes;
+        this.children = children;
+        this.texts = texts;
+    }
+
+    public static XmlNode fromDocument(Document document) {
+        return fromDomNode(document, DOCUMENT);
+    }
+
+    /**
+     * Reads the rest of the document from the reader, giving the same nodes as {@link #fromDocument(Document)} would
+     * for a DOM of it.
+     */
+    public static XmlNode fromStream(XMLStreamReader reader) throws XMLStreamException {
+        LinkedList<NodeBuilder> openNodes = new LinkedList<NodeBuilder>();
+        openNodes.add(new NodeBuilder(DOCUMENT, new LinkedHashMap<String, String>()));
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    openNodes.add(new NodeBuilder(qualifiedName(reader.getPrefix(), reader.getLocalName()), readAttributes(reader)));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    XmlNode node = openNodes.removeLast().build();
+                    openNodes.getLast().addChild(node);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    // a DOM has no text outside the root element
+                    if (openNodes.size() > 1) {
+                        openNodes.getLast().text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    openNodes.getLast().text.append(reader.getText());
+                    break;
+                default:
+                    // comments and processing instructions aren't part of any resource
+                    break;
+            }
+        }
+        return openNodes.getFirst().build();
+    }
+
+    // namespace declarations are attributes in a DOM, so they're kept as attributes here too
+    private static Map<String, String> readAttributes(XMLStreamReader reader) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            attributes.put(prefix == null || prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.put(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return attributes;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    private static XmlNode fromDomNode(Node domNode, String name) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        NamedNodeMap domAttributes = domNode.getAttributes();
+        if (domAttributes != null) {
+            for (int i = 0; i < domAttributes.getLength(); i++) {
+                Node attr = domAttributes.item(i);
+                attributes.put(attr.getNodeName(), attr.getNodeValue());
+            }
+        }
+
+        List<XmlNode> children = new ArrayList<XmlNode>();
+        List<String> texts = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        NodeList childNodes = domNode.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            Node childNode = childNodes.item(i);
+            switch (childNode.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    texts.add(text.toString());
+                    text.setLength(0);
+                    children.add(fromDomNode(childNode, childNode.getNodeName()));
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                case Node.ENTITY_REFERENCE_NODE:
+                    text.append(childNode.getTextContent());
+                    break;
+                default:
+                    // comments and processing instructions aren't part of any resource
+                    break;
+            }
+        }
+        texts.add(text.toString());
+        return new XmlNode(name, attributes, children, texts.toArray(new String[texts.size()]));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the attributes by their qualified names, like {@code android:id}, in the order they were written
+     */
+    public Map<String, String> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public List<XmlNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public List<XmlNode> getChildren(String name) {
+        List<XmlNode> namedChildren = new ArrayList<XmlNode>();
+        for (XmlNode child : children) {
+            if (child.name.equals(name)) {
+                namedChildren.add(child);
+            }
+        }
+        return namedChildren;
+    }
+
+    /**
+     * @param path element names separated by slashes, like {@code resources/string}; a leading slash is ignored
+     * @return the descendants of this node the path leads to, in document order
+     */
+    public List<XmlNode> select(String path) {
+        List<XmlNode> nodes = Collections.singletonList(this);
+        for (String step : path.split("/")) {
+            if (step.length() == 0) {
+                continue;
+            }
+            List<XmlNode> nextNodes = new ArrayList<XmlNode>();
+            for (XmlNode node : nodes) {
+                nextNodes.addAll(node.getChildren(step));
+            }
+            nodes = nextNodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * @return all the text inside this node, including that inside its descendants, like the DOM's
+     *         {@link Node#getTextContent()}
+     */
+    public String getTextContent() {
+        if (children.isEmpty()) {
+            return texts[0];
+        }
+        StringBuilder buf = new StringBuilder();
+        appendTextContent(buf);
+        return buf.toString();
+    }
+
+    private void appendTextContent(StringBuilder buf) {
+        for (int i = 0; i < children.size(); i++) {
+            buf.append(texts[i]);
+            children.get(i).appendTextContent(buf);
+        }
+        buf.append(texts[children.size()]);
+    }
+
+    String[] getTexts() {
+        return texts;
+    }
+
+    private static class NodeBuilder {
+        private final String name;
+        private final Map<String, String> attributes;
+        private final List<XmlNode> children = new ArrayList<XmlNode>();
+        private final List<String> texts = new ArrayList<String>();
+        private final StringBuilder text = new StringBuilder();
+
+        NodeBuilder(String name, Map<String, String> attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+
+        void addChild(XmlNode child) {
+            texts.add(text.toString());
+            text.setLength(0);
+            children.add(child);
+        }
+
+        XmlNode build() {
+            texts.add(text.toString());
+            return new XmlNode(name, attributes, children, texts.toArray(new String[texts.size()]));
+        }
+    }
+
+    @Override public String toString() {
+        return "<" + name + " " + attributes + ">";
+    }
+}
@@ -1,32 +1,24 @@
 package com.xtremelabs.robolectric.res;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
 
 public abstract class XpathResourceXmlLoader extends XmlLoader {
     private String expression;
 
+    /**
+     * @param expression the element names leading to each resource, like {@code /resources/string}
+     */
     public XpathResourceXmlLoader(ResourceExtractor resourceExtractor, String expression) {
         super(resourceExtractor);
         this.expression = expression;
     }
 
-    @Override protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
-        XPathExpression stringsXPath = XPathFactory.newInstance().newXPath().compile(expression);
-        NodeList nodes = (NodeList) stringsXPath.evaluate(document, XPathConstants.NODESET);
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node node = nodes.item(i);
-            String name = node.getAttributes().getNamedItem("name").getNodeValue();
+    @Override protected void processResourceXml(File xmlFile, XmlNode document, boolean isSystem) throws Exception {
+        for (XmlNode node : document.select(expression)) {
+            String name = node.getAttribute("name");
             processNode(node, name, isSystem);
         }
     }
 
-    protected abstract void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException;
+    protected abstract void processNode(XmlNode node, String name, boolean isSystem);
 }
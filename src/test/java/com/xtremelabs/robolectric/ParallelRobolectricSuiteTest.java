@@ -0,0 +1,185 @@
+package com.xtremelabs.robolectric;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.RunListener;
+import org.junit.runners.Suite;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelRobolectricSuiteTest {
+    // the Robolectric test classes have class loaders of their own, which don't share this class's static fields
+    private static final String SHARED_STATE = ParallelRobolectricSuiteTest.class.getName() + ".sharedState";
+
+    private static CountDownLatch bothStarted;
+    private static final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+    private static final List<String> testsRun = Collections.synchronizedList(new ArrayList<String>());
+
+    @After public void tearDown() throws Exception {
+        System.clearProperty(ParallelRobolectricSuite.THREADS_PROPERTY);
+        System.getProperties().remove(SHARED_STATE);
+    }
+
+    @Test
+    public void shouldRunTestClassesAtTheSameTimeOnDifferentWorkers() throws Exception {
+        System.setProperty(ParallelRobolectricSuite.THREADS_PROPERTY, "2");
+        bothStarted = new CountDownLatch(2);
+        threadNames.clear();
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        JUnitCore junitCore = new JUnitCore();
+        junitCore.addListener(new RunListener() {
+            @Override public void testStarted(Description description) throws Exception {
+                events.add("started " + description.getDisplayName());
+            }
+
+            @Override public void testFinished(Description description) throws Exception {
+                events.add("finished " + description.getDisplayName());
+            }
+        });
+        Result result = junitCore.run(AllTests.class);
+
+        assertTrue(result.wasSuccessful());
+        assertEquals(2, result.getRunCount());
+        assertEquals(2, threadNames.size());
+        // the classes ran side by side, but their events weren't interleaved
+        assertEquals(4, events.size());
+        assertEquals(events.get(0).replace("started", "finished"), events.get(1));
+        assertEquals(events.get(2).replace("started", "finished"), events.get(3));
+    }
+
+    @Test
+    public void shouldDescribeEachTestAndRunJustTheOnesAskedFor() throws Exception {
+        Description suiteDescription = Request.aClass(FilteredTests.class).getRunner().getDescription();
+        assertEquals(1, suiteDescription.getChildren().size());
+        assertEquals(new HashSet<Description>(Arrays.asList(Description.createTestDescription(SomeTest.class, "one"),
+                Description.createTestDescription(SomeTest.class, "two"))),
+                new HashSet<Description>(suiteDescription.getChildren().get(0).getChildren()));
+
+        testsRun.clear();
+        Result result = new JUnitCore().run(Request.aClass(FilteredTests.class)
+                .filterWith(Description.createTestDescription(SomeTest.class, "two")));
+
+        assertTrue(result.wasSuccessful());
+        assertEquals(1, result.getRunCount());
+        assertEquals(Arrays.asList("two"), testsRun);
+    }
+
+    @Test
+    public void shouldRunRobolectricTestClassesAtTheSameTimeInLoadersOfTheirOwn() throws Exception {
+        System.setProperty(ParallelRobolectricSuite.THREADS_PROPERTY, "2");
+        Map<String, Object> sharedState = new ConcurrentHashMap<String, Object>();
+        sharedState.put("bothStarted", new CountDownLatch(2));
+        System.getProperties().put(SHARED_STATE, sharedState);
+
+        Result result = new JUnitCore().run(AllRobolectricTests.class);
+
+        assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        assertEquals(2, result.getRunCount());
+        assertNotSame(sharedState.get("first.classLoader"), sharedState.get("second.classLoader"));
+        assertNotNull(sharedState.get("first.application"));
+        assertNotNull(sharedState.get("second.application"));
+        assertNotSame(sharedState.get("first.application"), sharedState.get("second.application"));
+    }
+
+    @Test
+    public void shouldPutTheSlowestClassesFirstAndUnknownOnesBeforeThem() throws Exception {
+        File file = new File("target/parallel-suite-test/durations.properties");
+        file.delete();
+        TestDurations testDurations = new TestDurations(file);
+        testDurations.record(FirstTest.class, 10);
+        testDurations.record(SecondTest.class, 500);
+        testDurations.save();
+
+        TestDurations reloaded = new TestDurations(file);
+        assertEquals(Arrays.<Class<?>>asList(AllTests.class, SecondTest.class, FirstTest.class),
+                reloaded.slowestFirst(Arrays.<Class<?>>asList(FirstTest.class, AllTests.class, SecondTest.class)));
+    }
+
+    private static void startAlongsideTheOtherClass() throws InterruptedException {
+        threadNames.add(Thread.currentThread().getName());
+        bothStarted.countDown();
+        assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static void startAlongsideTheOtherRobolectricClass(String testName) throws InterruptedException {
+        Map<String, Object> sharedState = (Map<String, Object>) System.getProperties().get(SHARED_STATE);
+        sharedState.put(testName + ".classLoader", Robolectric.class.getClassLoader());
+        sharedState.put(testName + ".application", Robolectric.application);
+        CountDownLatch bothStarted = (CountDownLatch) sharedState.get("bothStarted");
+        bothStarted.countDown();
+        assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+    }
+
+    @RunWith(ParallelRobolectricSuite.class)
+    @Suite.SuiteClasses({FirstTest.class, SecondTest.class})
+    public static class AllTests {
+    }
+
+    public static class FirstTest {
+        @Test public void first() throws Exception {
+            startAlongsideTheOtherClass();
+        }
+    }
+
+    public static class SecondTest {
+        @Test public void second() throws Exception {
+            startAlongsideTheOtherClass();
+        }
+    }
+
+    @RunWith(ParallelRobolectricSuite.class)
+    @Suite.SuiteClasses({SomeTest.class})
+    public static class FilteredTests {
+    }
+
+    public static class SomeTest {
+        @Test public void one() throws Exception {
+            testsRun.add("one");
+        }
+
+        @Test public void two() throws Exception {
+            testsRun.add("two");
+        }
+    }
+
+    @RunWith(ParallelRobolectricSuite.class)
+    @Suite.SuiteClasses({FirstRobolectricTest.class, SecondRobolectricTest.class})
+    public static class AllRobolectricTests {
+    }
+
+    @RunWith(WithTestDefaultsRunner.class)
+    public static class FirstRobolectricTest {
+        @Test public void first() throws Exception {
+            startAlongsideTheOtherRobolectricClass("first");
+        }
+    }
+
+    @RunWith(WithTestDefaultsRunner.class)
+    public static class SecondRobolectricTest {
+        @Test public void second() throws Exception {
+            startAlongsideTheOtherRobolectricClass("second");
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.xtremelabs.robolectric;
 
 import android.app.Application;
+import com.xtremelabs.robolectric.res.ResourceXmlCache;
+import com.xtremelabs.robolectric.res.SystemResources;
+import com.xtremelabs.robolectric.res.XmlNode;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.model.InitializationError;
@@ -9,6 +12,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 @RunWith(RobolectricTestRunnerTest.RunnerForTesting.class)
 public class RobolectricTestRunnerTest {
@@ -21,6 +25,14 @@ public class RobolectricTestRunnerTest {
         assertNotNull(shadowOf(Robolectric.application).getResourceLoader());
     }
 
+    @Test
+    public void shouldShareTheSystemResourcesBetweenTestClasses() throws Exception {
+        ClassLoader sharedClassLoader = RobolectricConfig.class.getClassLoader();
+        assertSame(sharedClassLoader, SystemResources.class.getClassLoader());
+        assertSame(sharedClassLoader, XmlNode.class.getClassLoader());
+        assertSame(sharedClassLoader, ResourceXmlCache.class.getClassLoader());
+    }
+
     public static class RunnerForTesting extends WithTestDefaultsRunner {
         public RunnerForTesting(Class<?> testClass) throws InitializationError {
             super(testClass);
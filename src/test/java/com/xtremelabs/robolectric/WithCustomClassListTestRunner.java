@@ -7,7 +7,7 @@ import java.util.ArrayList;
 
 import org.junit.runners.model.InitializationError;
 
-import com.xtremelabs.robolectric.bytecode.RobolectricClassLoader;
+import com.xtremelabs.robolectric.bytecode.ClassLoaderPool;
 import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
 
 public class WithCustomClassListTestRunner extends RobolectricTestRunner {
@@ -19,7 +19,7 @@ public class WithCustomClassListTestRunner extends RobolectricTestRunner {
 	public WithCustomClassListTestRunner(Class<?> testClass, RobolectricConfig robolectricConfig) throws InitializationError {
 			super(testClass,
 				ShadowWrangler.getInstance(),
-				isInstrumented() ? null : new RobolectricClassLoader(ShadowWrangler.getInstance(), populateList()), 
+				isInstrumented() ? null : ClassLoaderPool.getLoader(ShadowWrangler.getInstance(), populateList()), 
 				isInstrumented() ? null : robolectricConfig);
 	}
 	
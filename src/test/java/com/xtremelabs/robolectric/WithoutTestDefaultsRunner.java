@@ -1,5 +1,6 @@
 package com.xtremelabs.robolectric;
 
+import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
 import org.junit.runners.model.InitializationError;
 
 import java.lang.reflect.Method;
@@ -11,5 +12,6 @@ public class WithoutTestDefaultsRunner extends RobolectricTestRunner {
 
     @Override public void internalBeforeTest(Method method) {
         // Don't do any resource loading or shadow class binding, because that's what we're trying to test here.
+        ShadowWrangler.getInstance().setDefaultShadowClassesEnabled(getClass().getClassLoader(), false);
     }
 }
@@ -0,0 +1,26 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class AheadOfTimeInstrumenterTest {
+    @Test
+    public void shouldGiveEachHierarchyToOneWorkerSuperclassesFirst() throws Exception {
+        Map<String, String> superclassNames = new LinkedHashMap<String, String>();
+        superclassNames.put("android.widget.Button", "android.widget.TextView");
+        superclassNames.put("android.content.Context", "java.lang.Object");
+        superclassNames.put("android.widget.TextView", "android.view.View");
+        superclassNames.put("android.view.View", "java.lang.Object");
+        superclassNames.put("android.app.Activity", "android.content.Context");
+
+        List<List<String>> shares = AheadOfTimeInstrumenter.splitByHierarchy(superclassNames, 2);
+        assertEquals(asList("android.view.View", "android.widget.TextView", "android.widget.Button"), shares.get(0));
+        assertEquals(asList("android.content.Context", "android.app.Activity"), shares.get(1));
+    }
+}
@@ -1,11 +1,17 @@
 package com.xtremelabs.robolectric.bytecode;
 
+import com.xtremelabs.robolectric.internal.DoNotInstrument;
+import com.xtremelabs.robolectric.internal.Instrument;
 import javassist.ClassPool;
 import javassist.CtClass;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class AndroidTranslatorUnitTest {
     private ClassPool classPool;
@@ -23,9 +29,11 @@ public class AndroidTranslatorUnitTest {
                 ctClass, ctClass.getDeclaredMethod("substring", new CtClass[]{CtClass.intType}),
                 ctClass, Type.OBJECT, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (java.lang.String.__hasShadow__) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"substring\", this, new String[] {\"int\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.String.class, \"substring\", this, com.xtremelabs.robolectric.bytecode.RobolectricInternals.paramTypes(\"int\"), $1);\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
+                "}\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
@@ -37,9 +45,11 @@ public class AndroidTranslatorUnitTest {
                 ctClass, ctClass.getDeclaredMethod("length"),
                 ctClass, Type.OBJECT, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (java.lang.String.__hasShadow__) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"length\", this, new String[0], new Object[0]);\n" +
+                "  java.lang.String.class, \"length\", this, com.xtremelabs.robolectric.bytecode.RobolectricInternals.paramTypes(\"\"));\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
+                "}\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
@@ -51,8 +61,10 @@ public class AndroidTranslatorUnitTest {
                 ctClass, ctClass.getDeclaredMethod("wait"),
                 ctClass, Type.VOID, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (java.lang.Object.__hasShadow__) {\n" +
                 "com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.Object.class, \"wait\", this, new String[] {\"long\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.Object.class, \"wait\", this, com.xtremelabs.robolectric.bytecode.RobolectricInternals.paramTypes(\"long\"), new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "}\n" +
                 "return;\n" +
                 "}\n", methodBody);
     }
@@ -64,9 +76,11 @@ public class AndroidTranslatorUnitTest {
                 ctClass, ctClass.getDeclaredMethod("valueOf", new CtClass[]{CtClass.intType}),
                 ctClass, Type.OBJECT, true, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(java.lang.String.class)) {\n" +
+                "if (java.lang.String.__hasShadow__) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"valueOf\", null, new String[] {\"int\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.String.class, \"valueOf\", null, com.xtremelabs.robolectric.bytecode.RobolectricInternals.paramTypes(\"int\"), $1);\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
+                "}\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
@@ -85,9 +99,61 @@ public class AndroidTranslatorUnitTest {
                 ctClass, ctClass.getDeclaredMethod("equals", new CtClass[]{ctClass}),
                 ctClass, Type.BOOLEAN, false, true);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (java.lang.Object.__hasShadow__) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.Object.class, \"equals\", this, new String[] {\"java.lang.Object\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.Object.class, \"equals\", this, com.xtremelabs.robolectric.bytecode.RobolectricInternals.paramTypes(\"java.lang.Object\"), new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.Boolean) x).booleanValue();\n" +
+                "}\n" +
                 "return super.equals($1);}\n", methodBody);
     }
+
+    @Test
+    public void shouldOnlyNeedTranslationForAndroidClassesAndClassesAnnotatedWithInstrument() throws Exception {
+        String widget = BytecodeInstrumenterTest.Widget.class.getName();
+        String unannotated = AndroidTranslatorUnitTest.class.getName();
+
+        assertTrue(androidTranslator.needsTranslation("android.view.View", new byte[0]));
+        assertTrue(androidTranslator.needsTranslation(RobolectricInternals.class.getName(), ClassCache.readOriginalClassBytes(classPool, RobolectricInternals.class.getName())));
+        assertTrue(androidTranslator.needsTranslation(widget, ClassCache.readOriginalClassBytes(classPool, widget)));
+        assertFalse(androidTranslator.needsTranslation(unannotated, ClassCache.readOriginalClassBytes(classPool, unannotated)));
+        assertFalse(androidTranslator.needsTranslation("java.lang.String", ClassCache.readOriginalClassBytes(classPool, "java.lang.String")));
+    }
+
+    @Test
+    public void shouldNotMistakeAMentionOfInstrumentForTheAnnotation() throws Exception {
+        String className = MentionsInstrument.class.getName();
+        assertFalse(androidTranslator.needsTranslation(className, ClassCache.readOriginalClassBytes(classPool, className)));
+    }
+
+    @Test
+    public void shouldOnlyInstrumentCustomClassesForTranslatorsConfiguredWithThem() throws Exception {
+        ArrayList<String> customClassNames = new ArrayList<String>();
+        customClassNames.add("com.example.Custom");
+        AndroidTranslator customTranslator = new AndroidTranslator(null, null, customClassNames);
+        byte[] unannotatedClassBytes = ClassCache.readOriginalClassBytes(classPool, "java.lang.String");
+
+        assertTrue(customTranslator.needsTranslation("com.example.CustomView", unannotatedClassBytes));
+        assertFalse(new AndroidTranslator(null, null).needsTranslation("com.example.CustomView", unannotatedClassBytes));
+    }
+
+    @Test
+    public void prefixTrieShouldMatchNamesStartingWithAnyPrefix() throws Exception {
+        PrefixTrie prefixTrie = new PrefixTrie();
+        prefixTrie.add("android.");
+        prefixTrie.add("com.google.android.maps");
+        prefixTrie.add("android.widget.TextView");
+
+        assertTrue(prefixTrie.matches("android.view.View"));
+        assertTrue(prefixTrie.matches("com.google.android.maps.MapView"));
+        assertTrue(prefixTrie.matches("com.google.android.maps"));
+        assertFalse(prefixTrie.matches("android"));
+        assertFalse(prefixTrie.matches("com.google.android.m"));
+        assertFalse(prefixTrie.matches("org.apache.http.HttpResponse"));
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    @DoNotInstrument
+    public static class MentionsInstrument {
+        private Instrument instrument;
+    }
 }
@@ -0,0 +1,56 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.CtClass;
+import javassist.Modifier;
+import javassist.LoaderClassPath;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+
+public class BoundedClassPoolTest {
+    private BoundedClassPool classPool;
+
+    @Before public void setUp() throws Exception {
+        classPool = new BoundedClassPool(2);
+        classPool.appendClassPath(new LoaderClassPath(getClass().getClassLoader()));
+    }
+
+    @Test
+    public void shouldOnlyKeepTheMostRecentlyUsedUnmodifiedClasses() throws Exception {
+        CtClass string = classPool.get("java.lang.String");
+        classPool.get("java.lang.Integer");
+        classPool.get("java.lang.Long");
+        classPool.get("java.lang.Short");
+
+        assertEquals(2, classPool.getHeldClassCount());
+        assertEquals(2, classPool.getEvictionCount());
+        assertNotSame(string, classPool.get("java.lang.String"));
+    }
+
+    @Test
+    public void shouldKeepModifiedClasses() throws Exception {
+        CtClass foo = classPool.get(Foo.class.getName());
+        foo.setModifiers(foo.getModifiers() | Modifier.FINAL);
+        classPool.get("java.lang.Integer");
+        classPool.get("java.lang.Long");
+        classPool.get("java.lang.Short");
+
+        assertSame(foo, classPool.get(Foo.class.getName()));
+    }
+
+    @Test
+    public void shouldPruneModifiedClassesOnceTheyAreDefined() throws Exception {
+        CtClass foo = classPool.get(Foo.class.getName());
+        foo.setModifiers(foo.getModifiers() | Modifier.FINAL);
+        foo.toBytecode();
+        classPool.classDefined(Foo.class.getName());
+
+        assertSame(foo, classPool.get(Foo.class.getName()));
+        assertNull(foo.getDeclaredMethod("getName").getMethodInfo2().getCodeAttribute());
+    }
+}
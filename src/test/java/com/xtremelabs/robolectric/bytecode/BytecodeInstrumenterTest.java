@@ -0,0 +1,149 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import com.xtremelabs.robolectric.internal.Implementation;
+import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.Instrument;
+import javassist.ClassPool;
+import javassist.Loader;
+import javassist.LoaderClassPath;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+public class BytecodeInstrumenterTest {
+    @After public void tearDown() throws Exception {
+        ShadowWrangler.getInstance().beforeTest();
+    }
+
+    @Test
+    public void bytecodeInstrumentedClassesShouldBehaveLikeSourceInstrumentedOnes() throws Exception {
+        String expected = "unshadowed: null 0 0 0.0 false null|" +
+                "shadowed: shadow:bob 12 7 3.0 true null|" +
+                "direct: -1";
+        assertEquals(expected, exercise(false));
+        assertEquals(expected, exercise(true));
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private String exercise(boolean emitBytecode) throws Exception {
+        ClassPool classPool = new ClassPool();
+        classPool.appendClassPath(new LoaderClassPath(getClass().getClassLoader()));
+
+        AndroidTranslator androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(),
+                new ClassCache("target/bytecode-instrumenter-test.jar", AndroidTranslator.CACHE_VERSION));
+        androidTranslator.setEmitBytecode(emitBytecode);
+
+        Loader loader = new Loader(getClass().getClassLoader(), classPool);
+        loader.delegateLoadingOf(AndroidTranslator.class.getName());
+        loader.delegateLoadingOf(ClassHandler.class.getName());
+        loader.delegateLoadingOf(ShadowInvoker.class.getName());
+        loader.delegateLoadingOf(ShadowedObject.class.getName());
+        loader.delegateLoadingOf(ShadowWrangler.class.getName());
+        loader.delegateLoadingOf("com.xtremelabs.robolectric.internal.");
+        loader.addTranslator(classPool, androidTranslator);
+
+        ShadowWrangler.getInstance().beforeTest();
+        return ((Callable<String>) loader.loadClass(Exerciser.class.getName()).newInstance()).call();
+    }
+
+    public static class Exerciser implements Callable<String> {
+        @Override public String call() throws Exception {
+            StringBuilder buf = new StringBuilder();
+            buf.append("unshadowed: ").append(describe(new Widget("bob"))).append("|");
+
+            ShadowWrangler.getInstance().bindShadowClass(Widget.class, ShadowWidget.class);
+            Widget widget = new Widget("bob");
+            buf.append("shadowed: ").append(describe(widget)).append("|");
+
+            buf.append("direct: ").append(RobolectricInternals.directlyOn(widget).area(3, 4));
+            return buf.toString();
+        }
+
+        private String describe(Widget widget) {
+            widget.touch();
+            return widget.getName() + " " + widget.area(3, 4) + " " + widget.weigh(2L, 2.5d, "x") + " "
+                    + Widget.scale(1.5f) + " " + widget.isReady() + " " + widget.getParts(null, 'c');
+        }
+    }
+
+    @Instrument
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static class Widget {
+        private String name;
+
+        public Widget() {
+        }
+
+        public Widget(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int area(int width, int height) {
+            return -1;
+        }
+
+        public long weigh(long base, double factor, Object extra) {
+            return -1;
+        }
+
+        public static float scale(float factor) {
+            return -1;
+        }
+
+        public native boolean isReady();
+
+        public String[] getParts(int[][] grid, char c) {
+            return new String[0];
+        }
+
+        public void touch() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Implements(Widget.class)
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static class ShadowWidget {
+        private String name;
+
+        public void __constructor__(String name) {
+            this.name = name;
+        }
+
+        @Implementation
+        public String getName() {
+            return "shadow:" + name;
+        }
+
+        @Implementation
+        public int area(int width, int height) {
+            return width * height;
+        }
+
+        @Implementation
+        public long weigh(long base, double factor, Object extra) {
+            return (long) (base * factor) + 2;
+        }
+
+        @Implementation
+        public static float scale(float factor) {
+            return factor * 2;
+        }
+
+        @Implementation
+        public boolean isReady() {
+            return true;
+        }
+
+        @Implementation
+        public void touch() {
+        }
+    }
+}
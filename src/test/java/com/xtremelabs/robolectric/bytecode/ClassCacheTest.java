@@ -3,8 +3,187 @@ package com.xtremelabs.robolectric.bytecode;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class ClassCacheTest {
+    private static final byte[] ORIGINAL_BYTES = {1, 2, 3};
+    private static final byte[] INSTRUMENTED_BYTES = {4, 5, 6, 7};
+
+    @Test
+    public void shouldFindClassesSavedByAnEarlierInstance() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+
+        ClassCache reopenedClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertTrue(reopenedClassCache.hasEntriesFor("some.Class"));
+        assertFalse(reopenedClassCache.hasEntriesFor("other.Class"));
+        assertArrayEquals(INSTRUMENTED_BYTES, reopenedClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES));
+        assertTrue(reopenedClassCache.hasClassBytesFor("some.Class", ORIGINAL_BYTES));
+        assertFalse(reopenedClassCache.hasClassBytesFor("some.Class", new byte[]{1, 2, 4}));
+        assertEquals(1, reopenedClassCache.getHitCount());
+    }
+
+    @Test
+    public void shouldNotUseEntriesInstrumentedFromDifferentInput() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION, "some.custom.Class");
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+
+        assertNull(classCache.getClassBytesFor("some.Class", new byte[]{1, 2, 4}));
+        assertNull(new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION).getClassBytesFor("some.Class", ORIGINAL_BYTES));
+        assertArrayEquals(INSTRUMENTED_BYTES, new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION, "some.custom.Class").getClassBytesFor("some.Class", ORIGINAL_BYTES));
+        assertNull(new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION + 1, "some.custom.Class").getClassBytesFor("some.Class", ORIGINAL_BYTES));
+    }
+
+    @Test
+    public void shouldAppendToTheCacheFileRatherThanRewriteIt() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+        long lengthAfterFirstSave = new File(cachePath).length();
+
+        classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("other.Class", ORIGINAL_BYTES, new byte[]{8, 9});
+        classCache.saveAllClassesToCache();
 
+        assertEquals(lengthAfterFirstSave + 4 + 2 + "other.Class".length() + 20 + 4 + 2, new File(cachePath).length());
+        ClassCache reopenedClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertArrayEquals(INSTRUMENTED_BYTES, reopenedClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES));
+        assertArrayEquals(new byte[]{8, 9}, reopenedClassCache.getClassBytesFor("other.Class", ORIGINAL_BYTES));
+    }
+
+    @Test
+    public void shouldDropEntriesFromOtherVersionsOnceTheyMakeUpMostOfTheFile() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache oldClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION - 1);
+        oldClassCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        oldClassCache.addClass("other.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        oldClassCache.saveAllClassesToCache();
+        long lengthBeforeCompaction = new File(cachePath).length();
+
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertTrue(new File(cachePath).length() < lengthBeforeCompaction);
+        assertFalse(classCache.hasEntriesFor("other.Class"));
+        classCache.addClass("some.Class", ORIGINAL_BYTES, new byte[]{8, 9});
+        classCache.saveAllClassesToCache();
+
+        ClassCache reopenedClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertArrayEquals(new byte[]{8, 9}, reopenedClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES));
+    }
+
+    @Test
+    public void shouldDropOlderRecordsOfAClassOnceTheyMakeUpMostOfTheFile() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, new byte[100]);
+        classCache.saveAllClassesToCache();
+
+        byte[] editedOriginalBytes = {1, 2, 4};
+        classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", editedOriginalBytes, new byte[]{8, 9});
+        classCache.saveAllClassesToCache();
+
+        ClassCache reopenedClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertEquals(8 + 4 + 2 + "some.Class".length() + 20 + 4 + 2, new File(cachePath).length());
+        assertNull(reopenedClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES));
+        assertArrayEquals(new byte[]{8, 9}, reopenedClassCache.getClassBytesFor("some.Class", editedOriginalBytes));
+    }
+
+    @Test
+    public void shouldIgnoreCacheFilesInAnotherFormat() throws Exception {
+        String cachePath = newCachePath();
+        new File(cachePath).getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(cachePath);
+        out.write("PK not a cache".getBytes());
+        out.close();
+
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertFalse(classCache.hasEntriesFor("some.Class"));
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+
+        assertArrayEquals(INSTRUMENTED_BYTES, new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION).getClassBytesFor("some.Class", ORIGINAL_BYTES));
+    }
+
+    @Test
+    public void shouldNotWriteClassesAnotherCacheSharingTheFileHasAlreadySaved() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        ClassCache otherClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+        long lengthAfterFirstSave = new File(cachePath).length();
+
+        otherClassCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        otherClassCache.addClass("other.Class", ORIGINAL_BYTES, new byte[]{8, 9});
+        otherClassCache.saveAllClassesToCache();
+
+        assertEquals(lengthAfterFirstSave + 4 + 2 + "other.Class".length() + 20 + 4 + 2, new File(cachePath).length());
+        assertArrayEquals(new byte[]{8, 9}, new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION).getClassBytesFor("other.Class", ORIGINAL_BYTES));
+    }
+
+    @Test
+    public void shouldFindClassesAnotherCacheSharingTheFileSavedAfterThisOneReadIt() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+
+        ClassCache otherClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        assertNull(otherClassCache.getClassBytesFor("some.Class", new byte[]{1, 2, 4}));
+        classCache.addClass("some.Class", new byte[]{1, 2, 4}, new byte[]{8, 9});
+        classCache.saveAllClassesToCache();
+
+        assertArrayEquals(new byte[]{8, 9}, otherClassCache.getClassBytesFor("some.Class", new byte[]{1, 2, 4}));
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+
+        ClassCache reopenedClassCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        reopenedClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES);
+        reopenedClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES);
+        reopenedClassCache.getClassBytesFor("some.Class", new byte[]{1, 2, 4});
+        reopenedClassCache.addClass("some.Class", new byte[]{1, 2, 4}, INSTRUMENTED_BYTES);
+
+        assertEquals(2, reopenedClassCache.getHitCount());
+        assertEquals(1, reopenedClassCache.getMissCount());
+        assertEquals("Robolectric class cache " + new File(cachePath) + ": 2 hits, 1 misses (66% hit rate)", reopenedClassCache.describeHitRate());
+    }
+
+    @Test
+    public void shouldIgnoreClassesAddedTwice() throws Exception {
+        String cachePath = newCachePath();
+        ClassCache classCache = new ClassCache(cachePath, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.addClass("some.Class", ORIGINAL_BYTES, INSTRUMENTED_BYTES);
+        classCache.saveAllClassesToCache();
+
+        assertEquals(1, classCache.getMissCount());
+        assertEquals(8 + 4 + 2 + "some.Class".length() + 20 + 4 + INSTRUMENTED_BYTES.length, new File(cachePath).length());
+    }
+
+    private String newCachePath() {
+        File cacheFile = new File("target/class-cache-test/" + System.nanoTime() + ".cache");
+        cacheFile.deleteOnExit();
+        return cacheFile.getPath();
+    }
 
     @Test
     public void fixForCorberturaAndSonarCodeCoverage() throws InterruptedException {
@@ -116,7 +295,7 @@ public class ClassCacheTest {
 
         @Override
         public void run() {
-            classCache.saveAllClassesToCache(null, null);
+            classCache.saveAllClassesToCache();
             ready = true;
         }
     };
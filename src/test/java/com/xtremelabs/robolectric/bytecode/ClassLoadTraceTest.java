@@ -0,0 +1,43 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClassLoadTraceTest {
+    @Test
+    public void shouldGiveTheNextRunTheClassesRecordedInLoadOrder() throws Exception {
+        File traceFile = newTraceFile();
+        ClassLoadTrace classLoadTrace = new ClassLoadTrace(traceFile);
+        assertEquals(Collections.<String>emptyList(), classLoadTrace.getPreviousRun());
+
+        classLoadTrace.record("android.view.View");
+        classLoadTrace.record("android.app.Activity");
+        classLoadTrace.record("android.view.View");
+        classLoadTrace.save();
+
+        assertEquals(Arrays.asList("android.view.View", "android.app.Activity"), new ClassLoadTrace(traceFile).getPreviousRun());
+    }
+
+    @Test
+    public void shouldKeepThePreviousTraceIfNothingWasRecorded() throws Exception {
+        File traceFile = newTraceFile();
+        ClassLoadTrace classLoadTrace = new ClassLoadTrace(traceFile);
+        classLoadTrace.record("android.view.View");
+        classLoadTrace.save();
+
+        new ClassLoadTrace(traceFile).save();
+
+        assertEquals(Arrays.asList("android.view.View"), new ClassLoadTrace(traceFile).getPreviousRun());
+    }
+
+    private File newTraceFile() {
+        File traceFile = new File("target/class-load-trace-test/" + System.nanoTime() + ".trace");
+        traceFile.deleteOnExit();
+        return traceFile;
+    }
+}
@@ -0,0 +1,75 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClassLoaderPoolTest {
+    @Before public void setUp() throws Exception {
+        ClassLoaderPool.clear();
+    }
+
+    @After public void tearDown() throws Exception {
+        System.clearProperty(ClassLoaderPool.SIZE_PROPERTY);
+    }
+
+    @Test
+    public void shouldShareALoaderBetweenRunnersWithTheSameConfiguration() throws Exception {
+        ShadowWrangler classHandler = ShadowWrangler.getInstance();
+        RobolectricClassLoader classLoader = ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.A", "com.example.B"));
+
+        assertSame(classLoader, ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.B", "com.example.A")));
+        assertNotSame(classLoader, ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.A")));
+        assertNotSame(classLoader, ClassLoaderPool.getLoader(classHandler, null));
+    }
+
+    @Test
+    public void shouldDropTheLeastRecentlyUsedLoaders() throws Exception {
+        System.setProperty(ClassLoaderPool.SIZE_PROPERTY, "2");
+        ShadowWrangler classHandler = ShadowWrangler.getInstance();
+        RobolectricClassLoader first = ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.First"));
+        RobolectricClassLoader second = ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.Second"));
+        ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.First"));
+        ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.Third"));
+
+        assertSame(first, ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.First")));
+        assertNotSame(second, ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.Second")));
+    }
+
+    @Test
+    public void shouldHaveTheClassHandlerForgetDroppedLoaders() throws Exception {
+        System.setProperty(ClassLoaderPool.SIZE_PROPERTY, "1");
+        ShadowWrangler classHandler = ShadowWrangler.getInstance();
+        RobolectricClassLoader first = ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.First"));
+        classHandler.bindDefaultShadowClasses(first, Collections.<String, Class<?>>emptyMap());
+        assertTrue(classHandler.hasDefaultShadowClasses(first));
+
+        ClassLoaderPool.getLoader(classHandler, Arrays.asList("com.example.Second"));
+        assertFalse(classHandler.hasDefaultShadowClasses(first));
+    }
+
+    @Test
+    public void shouldGiveEachWorkerALoaderOfItsOwn() throws Exception {
+        final ShadowWrangler classHandler = ShadowWrangler.getInstance();
+        final AtomicReference<RobolectricClassLoader> workerLoader = new AtomicReference<RobolectricClassLoader>();
+        Thread worker = new Thread() {
+            @Override public void run() {
+                ClassLoaderPool.setWorker(1);
+                workerLoader.set(ClassLoaderPool.getLoader(classHandler, null));
+            }
+        };
+        worker.start();
+        worker.join();
+
+        assertNotSame(workerLoader.get(), ClassLoaderPool.getLoader(classHandler, null));
+    }
+}
@@ -0,0 +1,81 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import android.app.Activity;
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Compares how long the source and bytecode instrumentation backends take to instrument every class in android.jar
+ * from a cold class cache, i.e. the work done the first time the tests are run.
+ *
+ * <p>Usage: {@code InstrumentationBenchmark [path/to/android.jar] [rounds]}; the android.jar on the classpath is used
+ * when no path is given.</p>
+ */
+public class InstrumentationBenchmark {
+    public static void main(String[] args) throws Exception {
+        String jarPath = args.length > 0 ? args[0] : new File(Activity.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        List<String> classNames = findClassNames(jarPath, "android.");
+        System.out.println("instrumenting " + classNames.size() + " classes from " + jarPath);
+
+        for (int round = 1; round <= rounds; round++) {
+            for (boolean emitBytecode : new boolean[]{false, true}) {
+                long start = System.currentTimeMillis();
+                int failures = instrumentAll(jarPath, classNames, emitBytecode);
+                long elapsed = System.currentTimeMillis() - start;
+                System.out.println("round " + round + ", " + (emitBytecode ? "bytecode" : "source") + " backend: "
+                        + elapsed + "ms (" + failures + " classes failed)");
+            }
+        }
+    }
+
+    private static int instrumentAll(String jarPath, List<String> classNames, boolean emitBytecode) throws Exception {
+        ClassPool classPool = new ClassPool();
+        classPool.appendClassPath(jarPath);
+        classPool.appendClassPath(new LoaderClassPath(InstrumentationBenchmark.class.getClassLoader()));
+
+        File cacheFile = File.createTempFile("robolectric-benchmark", ".jar");
+        cacheFile.deleteOnExit();
+        AndroidTranslator androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), new ClassCache(cacheFile.getPath(), AndroidTranslator.CACHE_VERSION));
+        androidTranslator.setEmitBytecode(emitBytecode);
+        androidTranslator.start(classPool);
+
+        int failures = 0;
+        for (String className : classNames) {
+            try {
+                androidTranslator.onLoad(classPool, className);
+            } catch (Exception e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static List<String> findClassNames(String jarPath, String prefix) throws Exception {
+        List<String> classNames = new ArrayList<String>();
+        JarFile jarFile = new JarFile(jarPath);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                    if (className.startsWith(prefix)) {
+                        classNames.add(className);
+                    }
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+        return classNames;
+    }
+}
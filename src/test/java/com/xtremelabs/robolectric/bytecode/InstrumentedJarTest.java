@@ -0,0 +1,54 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class InstrumentedJarTest {
+    private static final byte[] ORIGINAL_BYTES = {1, 2, 3};
+    private static final byte[] INSTRUMENTED_BYTES = {4, 5, 6};
+
+    @Test
+    public void shouldOnlyUseAClassInstrumentedFromTheSameOriginalBytes() throws Exception {
+        InstrumentedJar instrumentedJar = new InstrumentedJar(writeJar("some/Class.class"));
+        try {
+            assertEquals(AndroidTranslator.CACHE_VERSION, instrumentedJar.getCacheVersion());
+            assertArrayEquals(INSTRUMENTED_BYTES, instrumentedJar.getClassBytesFor("some.Class", ORIGINAL_BYTES));
+            assertNull(instrumentedJar.getClassBytesFor("some.Class", new byte[] {1, 2, 4}));
+            assertNull(instrumentedJar.getClassBytesFor("some.OtherClass", ORIGINAL_BYTES));
+        } finally {
+            instrumentedJar.close();
+        }
+    }
+
+    private File writeJar(String entryName) throws Exception {
+        File jarFile = new File("target/instrumented-jar-test/instrumented.jar");
+        jarFile.getParentFile().mkdirs();
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(InstrumentedJar.CACHE_VERSION_ATTRIBUTE, String.valueOf(AndroidTranslator.CACHE_VERSION));
+        Attributes attributes = new Attributes();
+        attributes.put(InstrumentedJar.ORIGINAL_DIGEST_ATTRIBUTE, InstrumentedJar.digestOf(ORIGINAL_BYTES));
+        manifest.getEntries().put(entryName, attributes);
+
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jarFile), manifest);
+        try {
+            jarOutputStream.putNextEntry(new JarEntry(entryName));
+            jarOutputStream.write(INSTRUMENTED_BYTES);
+            jarOutputStream.closeEntry();
+        } finally {
+            jarOutputStream.close();
+        }
+        return jarFile;
+    }
+}
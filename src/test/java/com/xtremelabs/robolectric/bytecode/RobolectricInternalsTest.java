@@ -0,0 +1,64 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RobolectricInternalsTest {
+    @Test
+    public void shouldCallDirectlyOnlyOnceAfterDirectlyOn() throws Exception {
+        Object instance = new Object();
+        assertFalse(RobolectricInternals.shouldCallDirectly(instance));
+
+        RobolectricInternals.directlyOn(instance);
+        assertTrue(RobolectricInternals.shouldCallDirectly(instance));
+        assertFalse(RobolectricInternals.shouldCallDirectly(instance));
+    }
+
+    @Test
+    public void directCallPendingOnAnotherThreadShouldNotAffectThisThread() throws Exception {
+        final Object otherInstance = new Object();
+        final CountDownLatch callPending = new CountDownLatch(1);
+        final CountDownLatch checked = new CountDownLatch(1);
+        Thread otherThread = new Thread() {
+            @Override public void run() {
+                RobolectricInternals.directlyOn(otherInstance);
+                try {
+                    callPending.countDown();
+                    checked.await();
+                } catch (InterruptedException e) {
+                    // drain the call below all the same
+                } finally {
+                    // a thread that died with its call pending would leave the count raised for every later test
+                    RobolectricInternals.shouldCallDirectly(otherInstance);
+                }
+            }
+        };
+        otherThread.start();
+        try {
+            callPending.await();
+            assertFalse(RobolectricInternals.shouldCallDirectly(otherInstance));
+            assertFalse(RobolectricInternals.shouldCallDirectly(new Object()));
+        } finally {
+            checked.countDown();
+            otherThread.join();
+        }
+    }
+
+    @Test
+    public void shouldComplainAboutDirectCallOnWrongInstance() throws Exception {
+        RobolectricInternals.directlyOn("expected");
+        try {
+            RobolectricInternals.shouldCallDirectly("actual");
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("expected to perform direct call on <expected> but got <actual>", e.getMessage());
+        }
+        assertFalse(RobolectricInternals.shouldCallDirectly("expected"));
+    }
+}
@@ -12,6 +12,8 @@ public class ShadowFoo extends ShadowWranglerTest.ShadowFooParent {
 
     String name;
 
+    int lastFooId;
+
     public ShadowFoo(Foo foo) {
         this.realFooCtor = foo;
     }
@@ -28,4 +30,9 @@ public class ShadowFoo extends ShadowWranglerTest.ShadowFooParent {
     public String getName() {
         return name;
     }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void findFooById(int i) {
+        lastFooId = i;
+    }
 }
@@ -0,0 +1,130 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.RealObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShadowIndexTest {
+    private File dir;
+
+    @Before public void setUp() throws Exception {
+        dir = new File("target/shadow-index-test");
+        deleteRecursively(dir);
+        dir.mkdirs();
+    }
+
+    @Test
+    public void processorShouldIndexTheShadowClassesBeingCompiled() throws Exception {
+        File source = new File(dir, "ShadowList.java");
+        FileWriter writer = new FileWriter(source);
+        writer.write("@" + Implements.class.getName() + "(java.util.ArrayList.class)\n" +
+                "public class ShadowList {\n" +
+                "    @" + RealObject.class.getName() + " java.util.ArrayList realList;\n" +
+                "    public int size() { return 0; }\n" +
+                "    public <T> void addAll(int index, T[] items, java.util.List<String>[][] lists, Inner inner) { }\n" +
+                "    public static class Inner { }\n" +
+                "}\n");
+        writer.close();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, "-processor", ShadowIndexProcessor.class.getName(),
+                "-classpath", System.getProperty("java.class.path"), "-d", dir.getPath(), source.getPath());
+        assertEquals(0, result);
+
+        ShadowIndex shadowIndex = new ShadowIndex();
+        FileReader reader = new FileReader(new File(dir, ShadowIndex.RESOURCE_NAME));
+        try {
+            shadowIndex.read(reader);
+        } finally {
+            reader.close();
+        }
+
+        Class<?> shadowList = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader()).loadClass("ShadowList");
+        Class<?> inner = shadowList.getClassLoader().loadClass("ShadowList$Inner");
+        assertTrue(shadowIndex.isShadowClass(shadowList));
+        assertEquals("java.util.ArrayList", shadowIndex.getRealClassName(shadowList));
+        assertEquals(Collections.singletonList("realList"), shadowIndex.getRealObjectFieldNames(shadowList));
+        assertTrue(shadowIndex.mayDeclareMethod(shadowList, "size", new Class<?>[0]));
+        assertTrue(shadowIndex.mayDeclareMethod(shadowList, "addAll", new Class<?>[]{int.class, Object[].class, List[][].class, inner}));
+        assertFalse(shadowIndex.mayDeclareMethod(shadowList, "size", new Class<?>[]{int.class}));
+        assertFalse(shadowIndex.mayDeclareMethod(shadowList, "clear", new Class<?>[0]));
+    }
+
+    @Test
+    public void shouldIgnoreEntriesThatNoLongerMatchTheirClass() throws Exception {
+        ShadowIndex shadowIndex = new ShadowIndex();
+        shadowIndex.read(new StringReader(
+                "shadow\t" + ShadowThing.class.getName() + "\tjava.lang.Object\n" +
+                "method\t" + ShadowThing.class.getName() + "\tgetName()\n" +
+                "shadow\t" + OtherShadowThing.class.getName() + "\tjava.lang.Object\n" +
+                "method\t" + OtherShadowThing.class.getName() + "\tgetName()\n" +
+                "method\t" + OtherShadowThing.class.getName() + "\tsetName(java.lang.String)\n"));
+
+        // only checked when a method or field is looked up, so binding doesn't mean looking at every shadow class
+        assertEquals("java.lang.Object", shadowIndex.getRealClassName(ShadowThing.class));
+        assertTrue(shadowIndex.mayDeclareMethod(ShadowThing.class, "whatever", new Class<?>[0]));
+        assertNull(shadowIndex.getRealObjectFieldNames(ShadowThing.class));
+
+        assertEquals("java.lang.Object", shadowIndex.getRealClassName(OtherShadowThing.class));
+        assertFalse(shadowIndex.mayDeclareMethod(OtherShadowThing.class, "whatever", new Class<?>[0]));
+    }
+
+    @Test
+    public void shouldKeepTheFirstEntryForAShadowClassIndexedTwice() throws Exception {
+        ShadowIndex shadowIndex = new ShadowIndex();
+        shadowIndex.read(new StringReader("shadow\t" + OtherShadowThing.class.getName() + "\tjava.lang.Object\n" +
+                "method\t" + OtherShadowThing.class.getName() + "\tgetName()\n" +
+                "method\t" + OtherShadowThing.class.getName() + "\tsetName(java.lang.String)\n"));
+        shadowIndex.read(new StringReader("shadow\t" + OtherShadowThing.class.getName() + "\tjava.lang.String\n" +
+                "method\t" + OtherShadowThing.class.getName() + "\textra()\n"));
+
+        assertEquals("java.lang.Object", shadowIndex.getRealClassName(OtherShadowThing.class));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static class ShadowThing {
+        public String getName() {
+            return null;
+        }
+
+        public void setName(String name) {
+        }
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static class OtherShadowThing {
+        public String getName() {
+            return null;
+        }
+
+        public void setName(String name) {
+        }
+    }
+}
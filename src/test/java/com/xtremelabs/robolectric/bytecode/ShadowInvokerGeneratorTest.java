@@ -0,0 +1,77 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ShadowInvokerGeneratorTest {
+    private ShadowInvokerGenerator shadowInvokerGenerator;
+
+    @Before public void setUp() throws Exception {
+        shadowInvokerGenerator = new ShadowInvokerGenerator();
+    }
+
+    @Test
+    public void whenMethodReturnsObject_shouldGenerateInvokeMethod() throws Exception {
+        String invokeMethod = shadowInvokerGenerator.generateInvokeMethod(String.class.getMethod("substring", int.class));
+        assertEquals("public Object invoke(Object shadow, Object[] params) throws Throwable {\n" +
+                "return ((java.lang.String) $1).substring(((java.lang.Integer) $2[0]).intValue());\n" +
+                "}\n", invokeMethod);
+    }
+
+    @Test
+    public void whenMethodReturnsPrimitive_shouldGenerateInvokeMethod() throws Exception {
+        String invokeMethod = shadowInvokerGenerator.generateInvokeMethod(String.class.getMethod("indexOf", String.class, int.class));
+        assertEquals("public Object invoke(Object shadow, Object[] params) throws Throwable {\n" +
+                "return java.lang.Integer.valueOf(((java.lang.String) $1).indexOf(((java.lang.String) $2[0]), ((java.lang.Integer) $2[1]).intValue()));\n" +
+                "}\n", invokeMethod);
+    }
+
+    @Test
+    public void whenMethodReturnsVoid_shouldGenerateInvokeMethod() throws Exception {
+        String invokeMethod = shadowInvokerGenerator.generateInvokeMethod(Object.class.getMethod("wait", long.class));
+        assertEquals("public Object invoke(Object shadow, Object[] params) throws Throwable {\n" +
+                "((java.lang.Object) $1).wait(((java.lang.Long) $2[0]).longValue());\n" +
+                "return null;\n" +
+                "}\n", invokeMethod);
+    }
+
+    @Test
+    public void whenMethodIsStatic_shouldGenerateInvokeMethod() throws Exception {
+        String invokeMethod = shadowInvokerGenerator.generateInvokeMethod(String.class.getMethod("valueOf", char[].class));
+        assertEquals("public Object invoke(Object shadow, Object[] params) throws Throwable {\n" +
+                "return java.lang.String.valueOf(((char[]) $2[0]));\n" +
+                "}\n", invokeMethod);
+    }
+
+    @Test
+    public void whenMethodTakesPrimitives_shouldGenerateSpecializedInvokeMethod() throws Exception {
+        String invokeMethod = shadowInvokerGenerator.generateSpecializedInvokeMethod(String.class.getMethod("charAt", int.class));
+        assertEquals("public Object invoke(Object shadow, int param1) throws Throwable {\n" +
+                "return java.lang.Character.valueOf(((java.lang.String) $1).charAt($2));\n" +
+                "}\n", invokeMethod);
+    }
+
+    @Test
+    public void whenClassWasNotLoadedByRobolectricClassLoader_shouldNotGenerateInvoker() throws Exception {
+        assertNull(shadowInvokerGenerator.generate(String.class.getMethod("length")));
+    }
+
+    @Test
+    public void shouldGenerateEachMethodsInvokerOnlyOnce() throws Exception {
+        RobolectricClassLoader classLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
+        Class<?> joinClass = classLoader.loadClass("com.xtremelabs.robolectric.util.Join");
+        Method join = joinClass.getMethod("join", String.class, Object[].class);
+
+        ShadowInvoker shadowInvoker = shadowInvokerGenerator.generate(join);
+        assertNotNull(shadowInvoker);
+        assertSame(shadowInvoker, shadowInvokerGenerator.generate(join));
+        assertSame(shadowInvoker, new ShadowInvokerGenerator().generate(joinClass.getMethod("join", String.class, Object[].class)));
+    }
+}
@@ -12,6 +12,10 @@ import org.junit.runner.RunWith;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.not;
@@ -106,6 +110,138 @@ public class ShadowWranglerTest {
         assertThat(shadowOf(textFoo), instanceOf(ShadowTextFoo.class));
     }
 
+    @Test
+    public void instrumentedClassesShouldExposeTheirShadowThroughShadowedObject() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+
+        Foo foo = new Foo(name);
+        assertTrue(foo instanceof ShadowedObject);
+        assertSame(Robolectric.shadowOf_(foo), ((ShadowedObject) foo).__getShadow__());
+    }
+
+    @Test
+    public void shouldCacheShadowMethodLookups() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        ShadowWrangler shadowWrangler = ShadowWrangler.getInstance();
+
+        Foo foo = new Foo(name);
+        foo.getName();
+        long misses = shadowWrangler.getDispatchCacheMisses();
+        long hits = shadowWrangler.getDispatchCacheHits();
+
+        assertSame(name, foo.getName());
+        assertEquals(misses, shadowWrangler.getDispatchCacheMisses());
+        assertEquals(hits + 1, shadowWrangler.getDispatchCacheHits());
+    }
+
+    @Test
+    public void bindingShadowClassShouldInvalidateDispatchCache() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        ShadowWrangler shadowWrangler = ShadowWrangler.getInstance();
+
+        Foo foo = new Foo(name);
+        foo.getName();
+        Robolectric.bindShadowClass(ShadowTextFoo.class);
+        long misses = shadowWrangler.getDispatchCacheMisses();
+
+        assertSame(name, foo.getName());
+        assertEquals(misses + 1, shadowWrangler.getDispatchCacheMisses());
+    }
+
+    @Test
+    public void shouldPassPrimitiveParamsToShadowMethods() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+
+        Foo foo = new Foo(name);
+        foo.findFooById(1234);
+        assertEquals(1234, shadowOf(foo).lastFooId);
+    }
+
+    @Test
+    public void primitiveShadowMethodCallsShouldNotAllocate() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+
+        Foo foo = new Foo(name);
+        for (int i = 0; i < 10000; i++) {
+            foo.findFooById(i);
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        for (int i = 0; i < 10000; i++) {
+            foo.findFooById(i);
+        }
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        assertTrue("allocated " + allocated + " bytes for 10000 calls", allocated < 10000);
+    }
+
+    private long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void bindingShadowClassShouldSetShadowGuardsOfRealClassAndSubclasses() throws Exception {
+        new TextFoo(name);
+        Field fooShadowGuard = Foo.class.getDeclaredField(AndroidTranslator.HAS_SHADOW_FIELD_NAME);
+        Field textFooShadowGuard = TextFoo.class.getDeclaredField(AndroidTranslator.HAS_SHADOW_FIELD_NAME);
+        assertFalse(fooShadowGuard.getBoolean(null));
+        assertFalse(textFooShadowGuard.getBoolean(null));
+
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        assertTrue(fooShadowGuard.getBoolean(null));
+        assertTrue(textFooShadowGuard.getBoolean(null));
+
+        ShadowWrangler.getInstance().beforeTest();
+        assertFalse(fooShadowGuard.getBoolean(null));
+        assertFalse(textFooShadowGuard.getBoolean(null));
+    }
+
+    @Test
+    public void defaultShadowClassesShouldOutliveTestsAndGiveWayToShadowClassesBoundByTheTest() throws Exception {
+        // default shadow classes stay bound for as long as their loader runs tests, so this test has a loader of its own
+        ShadowWrangler shadowWrangler = ShadowWrangler.getInstance();
+        RobolectricClassLoader classLoader = new RobolectricClassLoader(shadowWrangler);
+        try {
+            Class<?> barClass = classLoader.loadClass(Bar.class.getName());
+            Class<?> shadowBarClass = classLoader.loadClass(ShadowBar.class.getName());
+            Class<?> otherShadowBarClass = classLoader.loadClass(OtherShadowBar.class.getName());
+            shadowWrangler.bindDefaultShadowClasses(classLoader, Collections.<String, Class<?>>singletonMap(Bar.class.getName(), shadowBarClass));
+            assertEquals("shadow", getName(barClass));
+            assertEquals(Arrays.<Class<?>>asList(otherShadowBarClass),
+                    shadowWrangler.getUnboundDefaultShadowClasses(classLoader, Arrays.<Class<?>>asList(shadowBarClass, otherShadowBarClass)));
+
+            shadowWrangler.bindShadowClass(barClass, otherShadowBarClass);
+            assertEquals("other shadow", getName(barClass));
+
+            shadowWrangler.beforeTest(classLoader);
+            assertEquals("shadow", getName(barClass));
+
+            shadowWrangler.setDefaultShadowClassesEnabled(classLoader, false);
+            assertNull(getName(barClass));
+        } finally {
+            classLoader.release();
+            shadowWrangler.forgetLoader(classLoader);
+        }
+    }
+
+    private Object getName(Class<?> barClass) throws Exception {
+        return barClass.getMethod("getName").invoke(barClass.newInstance());
+    }
+
+    @Test
+    public void unshadowedClassesShouldStillHonorDirectlyOn() throws Exception {
+        Foo foo = new Foo(name);
+        assertNull(foo.getName());
+
+        try {
+            Robolectric.directlyOn(foo).getName();
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("stub!", e.getMessage());
+        }
+    }
+
     @Test
     public void testPrimitiveArrays() throws Exception {
         Class<?> objArrayClass = ShadowWrangler.loadClass("java.lang.Object[]", getClass().getClassLoader());
@@ -204,6 +340,29 @@ public class ShadowWranglerTest {
     public static class ShadowFoo_WithDefaultConstructorAndNoConstructorDelegate {
     }
 
+    @Instrument
+    public static class Bar {
+        public String getName() {
+            return "real";
+        }
+    }
+
+    @Implements(Bar.class)
+    public static class ShadowBar {
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getName() {
+            return "shadow";
+        }
+    }
+
+    @Implements(Bar.class)
+    public static class OtherShadowBar {
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getName() {
+            return "other shadow";
+        }
+    }
+
     @Implements(Foo.class)
     public static class ExceptionThrowingShadowFoo {
         @SuppressWarnings({"UnusedDeclaration"})
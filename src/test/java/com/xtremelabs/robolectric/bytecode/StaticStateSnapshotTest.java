@@ -0,0 +1,95 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StaticStateSnapshotTest {
+    private StaticStateSnapshot snapshot;
+
+    @Before public void setUp() throws Exception {
+        Statics.name = "original";
+        Statics.count = 1;
+        Statics.LIST.clear();
+        Statics.LIST.add("a");
+        Statics.map = new HashMap<String, String>();
+        Statics.map.put("k", "v");
+        snapshot = new StaticStateSnapshot();
+    }
+
+    @Test
+    public void shouldRestoreStaticFieldsToTheirValuesWhenTheSnapshotWasTaken() throws Exception {
+        snapshot.add(Statics.class);
+        assertFalse(snapshot.isTaken());
+        Statics.name = "before snapshot";
+        snapshot.take();
+
+        Statics.name = "changed";
+        Statics.count = 42;
+        snapshot.restore();
+
+        assertEquals("before snapshot", Statics.name);
+        assertEquals(1, Statics.count);
+    }
+
+    @Test
+    public void shouldRestoreTheContentsOfStaticCollectionsAndMaps() throws Exception {
+        snapshot.add(Statics.class);
+        snapshot.take();
+        Map<String, String> originalMap = Statics.map;
+
+        Statics.LIST.add("b");
+        Statics.map.put("k", "changed");
+        Statics.map = new HashMap<String, String>();
+        snapshot.restore();
+
+        assertEquals(Collections.singletonList("a"), Statics.LIST);
+        assertSame(originalMap, Statics.map);
+        assertEquals(Collections.singletonMap("k", "v"), Statics.map);
+    }
+
+    @Test
+    public void shouldCaptureClassesAddedAfterTheSnapshotImmediately() throws Exception {
+        snapshot.take();
+        snapshot.add(Statics.class);
+        assertEquals(1, snapshot.getCapturedClassCount());
+
+        Statics.name = "changed";
+        snapshot.restore();
+
+        assertEquals("original", Statics.name);
+    }
+
+    @Test
+    public void shouldLeaveShadowGuardsAndUnmodifiableCollectionsAlone() throws Exception {
+        snapshot.add(Statics.class);
+        snapshot.take();
+
+        Statics.__hasShadow__ = true;
+        snapshot.restore();
+
+        assertTrue(Statics.__hasShadow__);
+        assertEquals(Collections.singletonList("fixed"), Statics.FIXED);
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static class Statics {
+        public static boolean __hasShadow__;
+        public static String name;
+        public static int count;
+        public static final List<String> LIST = new ArrayList<String>();
+        public static final List<String> FIXED = Collections.singletonList("fixed");
+        public static Map<String, String> map;
+        public static final String CONSTANT = "constant";
+    }
+}
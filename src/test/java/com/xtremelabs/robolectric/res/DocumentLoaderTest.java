@@ -0,0 +1,74 @@
+package com.xtremelabs.robolectric.res;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class DocumentLoaderTest {
+    private File layoutDir;
+    private File landscapeLayoutDir;
+    private RecordingXmlLoader xmlLoader;
+
+    @Before public void setUp() throws Exception {
+        File resourceDir = new File("target/document-loader-test");
+        layoutDir = new File(resourceDir, "layout");
+        landscapeLayoutDir = new File(resourceDir, "layout-land");
+        layoutDir.mkdirs();
+        landscapeLayoutDir.mkdirs();
+        write(new File(layoutDir, "main.xml"), "<LinearLayout/>");
+        write(new File(layoutDir, "header.xml"), "<TextView/>");
+        write(new File(landscapeLayoutDir, "main.xml"), "<FrameLayout/>");
+
+        xmlLoader = new RecordingXmlLoader();
+    }
+
+    @Test
+    public void shouldLoadAllTheFilesInOrderOfName() throws Exception {
+        new DocumentLoader(xmlLoader).loadResourceXmlDirs(layoutDir, landscapeLayoutDir);
+        assertEquals(asList("layout/header.xml", "layout/main.xml", "layout-land/main.xml"), xmlLoader.processedFiles);
+    }
+
+    @Test
+    public void shouldOnlyParseADeferredFileWhenItsResourceIsAskedFor() throws Exception {
+        new DocumentLoader(xmlLoader).deferResourceXmlDirs(false, layoutDir, landscapeLayoutDir);
+        assertEquals(0, xmlLoader.processedFiles.size());
+
+        xmlLoader.loadDeferredResourceXml("layout/main");
+        xmlLoader.loadDeferredResourceXml("layout/main");
+        xmlLoader.loadDeferredResourceXml("layout/missing");
+
+        // the file that comes last wins, as it would if they were all loaded
+        assertEquals(asList("layout-land/main.xml"), xmlLoader.processedFiles);
+        assertEquals(asList("FrameLayout"), xmlLoader.rootElements);
+    }
+
+    private void write(File file, String contents) throws Exception {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" + contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class RecordingXmlLoader extends XmlLoader {
+        private final List<String> processedFiles = new ArrayList<String>();
+        private final List<String> rootElements = new ArrayList<String>();
+
+        RecordingXmlLoader() {
+            super(new ResourceExtractor());
+        }
+
+        @Override protected void processResourceXml(File xmlFile, XmlNode document, boolean isSystem) throws Exception {
+            processedFiles.add(xmlFile.getParentFile().getName() + "/" + xmlFile.getName());
+            rootElements.add(document.getChildren().get(0).getName());
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class ResourceExtractorTest {
     private ResourceExtractor resourceExtractor;
@@ -22,4 +23,40 @@ public class ResourceExtractorTest {
         assertThat(resourceExtractor.getLocalResourceId("id/textStyle"), equalTo(R.id.textStyle));
         assertThat(resourceExtractor.getLocalResourceId("styleable/TitleBar_textStyle"), CoreMatchers.<Object>nullValue());
     }
+
+    @Test
+    public void shouldShareTheSystemRClassBetweenExtractors() throws Exception {
+        resourceExtractor.addSystemRClass(SystemR.class);
+        ResourceExtractor otherResourceExtractor = new ResourceExtractor();
+        otherResourceExtractor.addSystemRClass(SystemR.class);
+        otherResourceExtractor.addLocalRClass(R.class);
+
+        for (ResourceExtractor extractor : new ResourceExtractor[] {resourceExtractor, otherResourceExtractor}) {
+            assertThat(extractor.getResourceId("string/ok", true), equalTo(SystemR.string.ok));
+            assertThat(extractor.getResourceName(SystemR.string.ok), equalTo("string/ok"));
+            assertThat(extractor.getResourceName(R.id.textStyle), equalTo("id/textStyle"));
+        }
+    }
+
+    @Test
+    public void shouldNotAllowASystemIdToBeUsedAgain() throws Exception {
+        try {
+            resourceExtractor.addSystemRClass(ClashingSystemR.class);
+            fail("expected the clash to be reported");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), equalTo(R.id.textStyle + " is already defined with name: id/textStyle can't also call it: string/clash"));
+        }
+    }
+
+    public static class SystemR {
+        public static final class string {
+            public static final int ok = 0x01040000;
+        }
+    }
+
+    public static class ClashingSystemR {
+        public static final class string {
+            public static final int clash = R.id.textStyle;
+        }
+    }
 }
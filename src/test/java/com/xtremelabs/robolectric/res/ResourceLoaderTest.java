@@ -1,16 +1,32 @@
 package com.xtremelabs.robolectric.res;
 
 
+import android.app.Activity;
+import android.preference.PreferenceScreen;
+import android.view.View;
+import android.widget.TextView;
 import com.xtremelabs.robolectric.R;
+import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import org.junit.After;
 import org.junit.Test;
+import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.io.FileWriter;
 
+import static com.xtremelabs.robolectric.util.TestUtil.assertInstanceOf;
 import static com.xtremelabs.robolectric.util.TestUtil.resourceFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+@RunWith(WithTestDefaultsRunner.class)
 public class ResourceLoaderTest {
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(ResourceLoader.LAZY_PROPERTY);
+    }
+
     @Test
     public void shouldUseFileSystemSeparatorWhenEvaluatingLayoutDirectories() throws Exception {
         assertTrue(ResourceLoader.isLayoutDirectory(File.separator + "layout"));
@@ -22,4 +38,72 @@ public class ResourceLoaderTest {
         String stringValue = resourceLoader.getStringValue(android.R.string.copy);
         assertEquals("Copy", stringValue);
     }
+
+    @Test
+    public void shouldNotParseAnyLayoutsForAStringWhenLazy() throws Exception {
+        File resourceDir = new File("target/resource-loader-test/res");
+        write(new File(resourceDir, "values/strings.xml"), "<resources><string name=\"hello\">Hello</string></resources>");
+        write(new File(resourceDir, "layout/main.xml"), "<LinearLayout>");
+        new File(resourceDir, "xml").mkdirs();
+
+        try {
+            new ResourceLoader(9, R.class, resourceDir, null).getStringValue(R.string.hello);
+            fail("expected the broken layout to be parsed");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        System.setProperty(ResourceLoader.LAZY_PROPERTY, "true");
+        assertEquals("Hello", new ResourceLoader(9, R.class, resourceDir, null).getStringValue(R.string.hello));
+    }
+
+    @Test
+    public void shouldInflateALayoutWithAnIncludeWhenLazy() throws Exception {
+        System.setProperty(ResourceLoader.LAZY_PROPERTY, "true");
+        ResourceLoader resourceLoader = new ResourceLoader(9, R.class, resourceFile("res"), resourceFile("assets"));
+        View mainView = resourceLoader.inflateView(new Activity(), R.layout.main, null);
+        assertInstanceOf(TextView.class, mainView.findViewById(R.id.snippet_text));
+    }
+
+    @Test
+    public void shouldInflatePreferencesWhenLazy() throws Exception {
+        System.setProperty(ResourceLoader.LAZY_PROPERTY, "true");
+        ResourceLoader resourceLoader = new ResourceLoader(9, R.class, resourceFile("res"), resourceFile("assets"));
+        PreferenceScreen screen = resourceLoader.inflatePreferences(new Activity(), R.xml.preferences);
+        assertEquals(6, screen.getPreferenceCount());
+    }
+
+    @Test
+    public void shouldPickTheSameLayoutFromTheLocalAndSystemOnesWhenLazy() throws Exception {
+        File projectDir = new File("target/resource-loader-test/project");
+        File resourceDir = new File(projectDir, "res");
+        write(new File(resourceDir, "values/strings.xml"), "<resources/>");
+        write(new File(resourceDir, "layout/main.xml"), "<LinearLayout/>");
+        new File(resourceDir, "xml").mkdirs();
+        File sdkDir = new File("target/resource-loader-test/sdk");
+        File systemResourceDir = new File(sdkDir, "platforms/android-9/data/res");
+        write(new File(systemResourceDir, "values/strings.xml"), "<resources/>");
+        write(new File(systemResourceDir, "layout/main.xml"), "<FrameLayout/>");
+        FileWriter writer = new FileWriter(new File(projectDir, "local.properties"));
+        try {
+            writer.write("sdk.dir=" + sdkDir.getAbsolutePath() + "\n");
+        } finally {
+            writer.close();
+        }
+
+        View eagerView = new ResourceLoader(9, R.class, resourceDir, null).inflateView(new Activity(), R.layout.main, null);
+        System.setProperty(ResourceLoader.LAZY_PROPERTY, "true");
+        View lazyView = new ResourceLoader(9, R.class, resourceDir, null).inflateView(new Activity(), R.layout.main, null);
+        assertEquals(eagerView.getClass(), lazyView.getClass());
+    }
+
+    private void write(File file, String contents) throws Exception {
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" + contents);
+        } finally {
+            writer.close();
+        }
+    }
 }
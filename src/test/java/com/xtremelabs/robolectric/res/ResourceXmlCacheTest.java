@@ -0,0 +1,115 @@
+package com.xtremelabs.robolectric.res;
+
+import com.xtremelabs.robolectric.R;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceXmlCacheTest {
+    private File valuesDir;
+    private File stringsFile;
+    private File cacheFile;
+    private ResourceExtractor resourceExtractor;
+
+    @Before public void setUp() throws Exception {
+        File dir = new File("target/resource-xml-cache-test");
+        valuesDir = new File(dir, "values");
+        valuesDir.mkdirs();
+        stringsFile = new File(valuesDir, "strings.xml");
+        cacheFile = new File(dir, "resources.cache");
+        cacheFile.delete();
+
+        writeStrings("<string name=\"hello\">Hello</string>\n" +
+                "<string name=\"greeting\">@string/howdy</string>\n" +
+                "<string name=\"howdy\">Howdy</string>\n" +
+                "<string name=\"some_html\"><b>Hello, <i>world</i></b>!</string>\n");
+
+        resourceExtractor = new ResourceExtractor();
+        resourceExtractor.addLocalRClass(R.class);
+    }
+
+    @Test
+    public void shouldLoadResourcesFromTheNodesCachedByAnEarlierRun() throws Exception {
+        ResourceXmlCache resourceXmlCache = new ResourceXmlCache(cacheFile);
+        new DocumentLoader(new XmlFileParser(resourceXmlCache, 1), new StringResourceLoader(resourceExtractor)).loadResourceXmlDir(valuesDir);
+        resourceXmlCache.save();
+
+        ResourceXmlCache nextRunsCache = new ResourceXmlCache(cacheFile);
+        XmlNode document = nextRunsCache.get(stringsFile, stringsFile.length(), stringsFile.lastModified());
+        assertNotNull(document);
+        XmlNode someHtml = document.select("/resources/string").get(3);
+        assertEquals("some_html", someHtml.getAttribute("name"));
+        assertEquals("Hello, world!", someHtml.getTextContent());
+
+        StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
+        new DocumentLoader(new XmlFileParser(nextRunsCache, 1), stringResourceLoader).loadResourceXmlDir(valuesDir);
+        assertEquals("Hello", stringResourceLoader.getValue(R.string.hello));
+        assertEquals("Howdy", stringResourceLoader.getValue(R.string.greeting));
+        assertEquals("Hello, world!", stringResourceLoader.getValue(R.string.some_html));
+    }
+
+    @Test
+    public void shouldParseFilesAgainOnceTheyHaveChanged() throws Exception {
+        ResourceXmlCache resourceXmlCache = new ResourceXmlCache(cacheFile);
+        new DocumentLoader(new XmlFileParser(resourceXmlCache, 1), new StringResourceLoader(resourceExtractor)).loadResourceXmlDir(valuesDir);
+        resourceXmlCache.save();
+
+        writeStrings("<string name=\"hello\">Hi there</string>\n");
+        stringsFile.setLastModified(stringsFile.lastModified() + 2000);
+
+        ResourceXmlCache nextRunsCache = new ResourceXmlCache(cacheFile);
+        assertNull(nextRunsCache.get(stringsFile, stringsFile.length(), stringsFile.lastModified()));
+
+        StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
+        new DocumentLoader(new XmlFileParser(nextRunsCache, 1), stringResourceLoader).loadResourceXmlDir(valuesDir);
+        assertEquals("Hi there", stringResourceLoader.getValue(R.string.hello));
+        assertNotNull(nextRunsCache.get(stringsFile, stringsFile.length(), stringsFile.lastModified()));
+    }
+
+    @Test
+    public void shouldKeepTheEntriesNotAskedForWhenSavingAndStayLoaded() throws Exception {
+        File colorsFile = new File(valuesDir, "colors.xml");
+        FileWriter writer = new FileWriter(colorsFile);
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources><color name=\"red\">#f00</color></resources>\n");
+        } finally {
+            writer.close();
+        }
+        ResourceXmlCache resourceXmlCache = new ResourceXmlCache(cacheFile);
+        new DocumentLoader(new XmlFileParser(resourceXmlCache, 1), new StringResourceLoader(resourceExtractor)).loadResourceXmlDir(valuesDir);
+        resourceXmlCache.save();
+
+        // only the colors are parsed again, so the strings are carried over without being decoded
+        colorsFile.setLastModified(colorsFile.lastModified() + 2000);
+        ResourceXmlCache nextRunsCache = new ResourceXmlCache(cacheFile);
+        new XmlFileParser(nextRunsCache, 1).parse(colorsFile);
+        nextRunsCache.save();
+
+        ResourceXmlCache lastRunsCache = new ResourceXmlCache(cacheFile);
+        assertEquals("#f00", lastRunsCache.get(colorsFile, colorsFile.length(), colorsFile.lastModified())
+                .select("/resources/color").get(0).getTextContent());
+        assertEquals("Hello, world!", lastRunsCache.get(stringsFile, stringsFile.length(), stringsFile.lastModified())
+                .select("/resources/string").get(3).getTextContent());
+
+        assertTrue(cacheFile.delete());
+        assertEquals("Hello, world!", nextRunsCache.get(stringsFile, stringsFile.length(), stringsFile.lastModified())
+                .select("/resources/string").get(3).getTextContent());
+        colorsFile.delete();
+    }
+
+    private void writeStrings(String strings) throws Exception {
+        FileWriter writer = new FileWriter(stringsFile);
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n" + strings + "</resources>\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
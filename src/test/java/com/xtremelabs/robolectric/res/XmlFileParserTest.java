@@ -0,0 +1,95 @@
+package com.xtremelabs.robolectric.res;
+
+import com.xtremelabs.robolectric.R;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class XmlFileParserTest {
+    private File valuesDir;
+    private File stringsFile;
+    private XmlFileParser xmlFileParser;
+    private ResourceExtractor resourceExtractor;
+
+    @Before public void setUp() throws Exception {
+        valuesDir = new File("target/xml-file-parser-test/values");
+        valuesDir.mkdirs();
+        stringsFile = new File(valuesDir, "strings.xml");
+        write(stringsFile, "<resources>\n" +
+                "<string name=\"hello\">Hello</string>\n" +
+                "<string name=\"howdy\">Howdy</string>\n" +
+                "</resources>\n");
+
+        xmlFileParser = new XmlFileParser(null, 4);
+        resourceExtractor = new ResourceExtractor();
+        resourceExtractor.addLocalRClass(R.class);
+    }
+
+    @After public void tearDown() throws Exception {
+        xmlFileParser.finish();
+    }
+
+    @Test
+    public void shouldParseEachFileOnceForAllItsLoaders() throws Exception {
+        xmlFileParser.parseAhead(Collections.singletonList(valuesDir));
+        XmlNode document = xmlFileParser.parse(stringsFile);
+        assertSame(document, xmlFileParser.parse(stringsFile));
+
+        StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
+        new DocumentLoader(xmlFileParser, stringResourceLoader).loadResourceXmlDir(valuesDir);
+        assertEquals("Hello", stringResourceLoader.getValue(R.string.hello));
+        assertEquals("Howdy", stringResourceLoader.getValue(R.string.howdy));
+    }
+
+    @Test
+    public void shouldNotKeepTheFilesItHandsOutWithASingleThread() throws Exception {
+        XmlFileParser singleThreadedParser = new XmlFileParser(null, 1);
+        assertNotSame(singleThreadedParser.parse(stringsFile), singleThreadedParser.parse(stringsFile));
+    }
+
+    @Test
+    public void shouldShareTheSystemResourcesBetweenParsers() throws Exception {
+        SystemResources systemResources = SystemResources.get(10, valuesDir.getParentFile());
+        assertSame(systemResources, SystemResources.get(10, valuesDir.getParentFile().getAbsoluteFile()));
+
+        XmlNode document = new XmlFileParser(null, 1, systemResources).parse(stringsFile);
+        assertSame(document, new XmlFileParser(null, 1, systemResources).parse(stringsFile));
+        assertSame(document, systemResources.getDocument(stringsFile));
+    }
+
+    @Test
+    public void shouldThrowTheParseErrorToTheLoaderThatAsksForTheFile() throws Exception {
+        File brokenFile = new File(valuesDir, "broken.xml");
+        write(brokenFile, "<resources><string name=\"hello\">");
+        try {
+            xmlFileParser.parseAhead(Collections.singletonList(valuesDir));
+            try {
+                xmlFileParser.parse(brokenFile);
+                fail("expected a parse error");
+            } catch (XMLStreamException e) {
+                // expected
+            }
+        } finally {
+            brokenFile.delete();
+        }
+    }
+
+    private void write(File file, String contents) throws Exception {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" + contents);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.xtremelabs.robolectric.res;
+
+import org.junit.Test;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlNodeTest {
+    @Test
+    public void shouldReadTheSameNodesFromAStreamAsFromADom() throws Exception {
+        File resourceDir = new File("src/test/resources/res");
+        for (String dirName : new String[] {"values", "layout", "menu", "xml"}) {
+            for (File xmlFile : XmlFileParser.listXmlFiles(new File(resourceDir, dirName))) {
+                assertSameNodes(xmlFile.toString(), fromDom(xmlFile), fromStream(xmlFile));
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepTheTextBetweenElements() throws Exception {
+        XMLStreamReader reader = newXmlInputFactory().createXMLStreamReader(new StringReader(
+                "<?xml version=\"1.0\"?>\n<!-- comment -->\n<resources xmlns:android=\"http://schemas.android.com/apk/res/android\">" +
+                "<string name=\"some_html\" android:id=\"1\"><b>Hello, <![CDATA[<i>]]>world<!-- comment --></b>!</string></resources>"));
+        XmlNode string = fromStreamReader(reader).select("resources/string").get(0);
+        assertEquals("some_html", string.getAttribute("name"));
+        assertEquals("1", string.getAttribute("android:id"));
+        assertEquals("Hello, <i>world!", string.getTextContent());
+        assertEquals(Arrays.asList("", "!"), Arrays.asList(string.getTexts()));
+        assertEquals("http://schemas.android.com/apk/res/android",
+                fromStreamReader(newXmlInputFactory().createXMLStreamReader(new StringReader(
+                        "<resources xmlns:android=\"http://schemas.android.com/apk/res/android\"/>")))
+                        .select("resources").get(0).getAttribute("xmlns:android"));
+    }
+
+    private void assertSameNodes(String path, XmlNode expected, XmlNode actual) {
+        assertEquals(path, expected.getName(), actual.getName());
+        assertEquals(path + " " + expected, expected.getAttributes(), actual.getAttributes());
+        assertEquals(path + " " + expected, Arrays.asList(expected.getTexts()), Arrays.asList(actual.getTexts()));
+        List<XmlNode> expectedChildren = expected.getChildren();
+        List<XmlNode> actualChildren = actual.getChildren();
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            assertSameNodes(path, expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    private XmlNode fromDom(File xmlFile) throws Exception {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilderFactory.setIgnoringComments(true);
+        return XmlNode.fromDocument(documentBuilderFactory.newDocumentBuilder().parse(xmlFile));
+    }
+
+    private XmlNode fromStream(File xmlFile) throws Exception {
+        InputStream inputStream = new FileInputStream(xmlFile);
+        try {
+            return fromStreamReader(newXmlInputFactory().createXMLStreamReader(inputStream));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private XmlNode fromStreamReader(XMLStreamReader reader) throws Exception {
+        try {
+            return XmlNode.fromStream(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return xmlInputFactory;
+    }
+}